@@ -0,0 +1,280 @@
+package codechicken.lib.render;
+
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.IIcon;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.biome.BiomeGenBase;
+import net.minecraftforge.common.util.ForgeDirection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import codechicken.lib.render.uv.IconTransformation;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.TransformationList;
+import codechicken.lib.vec.Translation;
+
+/**
+ * Renders models through CCRenderState.renderInstance into a PackedVertexSink, so no GL context or running game is
+ * needed. Each benchmark renders the whole model once with a typical op combination. The world used for lighting is a
+ * fixed pseudo random arrangement of two blocks with varying light.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderPipelineBenchmark {
+
+    /**
+     * icosahedron7: 80 smooth shaded quads from CCModelLibrary. box: a full block. boxes: 8 inset boxes, 192 vertices
+     */
+    @Param({ "icosahedron7", "box", "boxes" })
+    public String model;
+
+    @Param({ "false", "true" })
+    public boolean batching;
+
+    /**
+     * Elements in the TransformationList, counting back from a final translation: translation, rotation, scale,
+     * translation and so on, so that compact can't merge neighbours
+     */
+    @Param({ "1", "3", "8" })
+    public int listLength;
+
+    private CCRenderState state;
+    private PackedVertexSink sink;
+    private CCModel ccModel;
+
+    private TransformationList transform;
+    private ColourMultiplier colour;
+    private IconTransformation icon;
+    private BenchmarkWorld world;
+
+    @Setup
+    public void setup() {
+        if (model.equals("icosahedron7")) ccModel = CCModelLibrary.icosahedron7;
+        else if (model.equals("box")) ccModel = boxModel(1);
+        else ccModel = boxModel(2);
+
+        state = CCRenderState.instance();
+        sink = new PackedVertexSink();
+        state.sink = sink;
+        transform = transformList(listLength);
+        colour = new ColourMultiplier(0xFF8040FF);
+        icon = new IconTransformation(new BenchmarkIcon());
+        world = new BenchmarkWorld();
+    }
+
+    private static TransformationList transformList(int length) {
+        Transformation[] elements = new Transformation[length];
+        for (int i = 0; i < length; i++) {
+            int k = length - 1 - i;
+            switch (k % 3) {
+                case 0:
+                    elements[i] = new Translation(8, 64 + k, 8);
+                    break;
+                case 1:
+                    elements[i] = new Rotation(0.5 + k * 0.25, 0, 1, 0);
+                    break;
+                default:
+                    elements[i] = new Scale(0.5 + k * 0.125);
+                    break;
+            }
+        }
+        return new TransformationList(elements);
+    }
+
+    private static CCModel boxModel(int divisions) {
+        int boxes = divisions * divisions * divisions;
+        CCModel m = CCModel.quadModel(boxes * 24);
+        double size = 1D / divisions;
+        int i = 0;
+        for (int x = 0; x < divisions; x++) for (int y = 0; y < divisions; y++) for (int z = 0; z < divisions; z++) {
+            Cuboid6 box = new Cuboid6(x * size, y * size, z * size, (x + 1) * size, (y + 1) * size, (z + 1) * size);
+            if (divisions > 1) box.expand(-size / 8);
+            m.generateBlock(i, box);
+            i += 24;
+        }
+        return m.computeNormals().computeLightCoords();
+    }
+
+    private void begin() {
+        state.resetInstance();
+        state.useBatching = batching;
+        sink.startDrawing(7);
+    }
+
+    private int end() {
+        sink.draw();
+        return sink.vertexCount;
+    }
+
+    @Benchmark
+    public int transform() {
+        begin();
+        state.useNormals = true;
+        state.setPipelineInstance(ccModel, 0, ccModel.verts.length, transform);
+        state.renderInstance();
+        return end();
+    }
+
+    @Benchmark
+    public int transformColourIcon() {
+        begin();
+        state.useNormals = true;
+        state.setPipelineInstance(ccModel, 0, ccModel.verts.length, transform, icon, colour);
+        state.renderInstance();
+        return end();
+    }
+
+    @Benchmark
+    public int lightMatrix() {
+        begin();
+        state.computeLighting = true;
+        state.lightMatrix.locate(world, 8, 64, 8);
+        state.setPipelineInstance(ccModel, 0, ccModel.verts.length, transform, icon, state.lightMatrix);
+        state.renderInstance();
+        return end();
+    }
+
+    @Benchmark
+    public int lightMatrixColour() {
+        begin();
+        state.computeLighting = true;
+        state.lightMatrix.locate(world, 8, 64, 8);
+        state.setPipelineInstance(ccModel, 0, ccModel.verts.length, transform, icon, colour, state.lightMatrix);
+        state.renderInstance();
+        return end();
+    }
+
+    /**
+     * A 16x16 icon at (0.25, 0.5) in a 256x256 atlas, interpolating like TextureAtlasSprite
+     */
+    private static class BenchmarkIcon implements IIcon {
+
+        @Override
+        public int getIconWidth() {
+            return 16;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return 16;
+        }
+
+        @Override
+        public float getMinU() {
+            return 0.25F;
+        }
+
+        @Override
+        public float getMaxU() {
+            return 0.3125F;
+        }
+
+        @Override
+        public float getInterpolatedU(double u) {
+            return getMinU() + (getMaxU() - getMinU()) * ((float) u / 16F);
+        }
+
+        @Override
+        public float getMinV() {
+            return 0.5F;
+        }
+
+        @Override
+        public float getMaxV() {
+            return 0.5625F;
+        }
+
+        @Override
+        public float getInterpolatedV(double v) {
+            return getMinV() + (getMaxV() - getMinV()) * ((float) v / 16F);
+        }
+
+        @Override
+        public String getIconName() {
+            return "benchmark";
+        }
+    }
+
+    private static class BenchmarkWorld implements IBlockAccess {
+
+        private final Block solid = new Block(Material.rock) {};
+        private final Block air = new Block(Material.air) {};
+
+        private static int hash(int x, int y, int z) {
+            int h = x * 73856093 ^ y * 19349663 ^ z * 83492791;
+            return h ^ h >>> 13;
+        }
+
+        @Override
+        public Block getBlock(int x, int y, int z) {
+            return (hash(x, y, z) & 3) == 0 ? solid : air;
+        }
+
+        @Override
+        public TileEntity getTileEntity(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public int getLightBrightnessForSkyBlocks(int x, int y, int z, int lightValue) {
+            int h = hash(x, y, z);
+            return (h & 0xF0) << 16 | (h >> 8 & 0xF0);
+        }
+
+        @Override
+        public int getBlockMetadata(int x, int y, int z) {
+            return 0;
+        }
+
+        @Override
+        public int isBlockProvidingPowerTo(int x, int y, int z, int side) {
+            return 0;
+        }
+
+        @Override
+        public boolean isAirBlock(int x, int y, int z) {
+            return getBlock(x, y, z) == air;
+        }
+
+        @Override
+        public BiomeGenBase getBiomeGenForCoords(int x, int z) {
+            return null;
+        }
+
+        @Override
+        public int getHeight() {
+            return 256;
+        }
+
+        @Override
+        public boolean extendedLevelsInChunkCache() {
+            return false;
+        }
+
+        @Override
+        public boolean isSideSolid(int x, int y, int z, ForgeDirection side, boolean _default) {
+            return getBlock(x, y, z) == solid;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package codechicken.lib.vec;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import codechicken.lib.render.CCModel;
+import codechicken.lib.render.CCModelLibrary;
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.PackedVertexSink;
+
+/**
+ * Renders a model through a TransformationList of varying length, which applies its cached matrix when it has more
+ * than three elements, and through a transformation that applies the same elements one by one for each vertex.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformationListBenchmark {
+
+    /**
+     * box: a full block, 24 vertices. icosahedron7: 80 smooth shaded quads from CCModelLibrary
+     */
+    @Param({ "box", "icosahedron7" })
+    public String model;
+
+    @Param({ "1", "2", "3", "4", "8" })
+    public int length;
+
+    private CCRenderState state;
+    private PackedVertexSink sink;
+    private CCModel ccModel;
+
+    private TransformationList list;
+    private Sequential sequential;
+
+    @Setup
+    public void setup() {
+        ccModel = model.equals("box") ? CCModel.quadModel(24).generateBlock(0, Cuboid6.full).computeNormals()
+                : CCModelLibrary.icosahedron7;
+
+        state = CCRenderState.instance();
+        sink = new PackedVertexSink();
+        state.sink = sink;
+
+        // elements that compact() can't merge with their neighbours
+        Transformation[] elements = new Transformation[length];
+        for (int i = 0; i < length; i++) switch (i % 3) {
+            case 0:
+                elements[i] = new Translation(i + 1, 0.5, -i);
+                break;
+            case 1:
+                elements[i] = new Scale(1 + i * 0.125);
+                break;
+            default:
+                elements[i] = new Rotation(i * 0.3, 0, 1, 0);
+                break;
+        }
+        list = new TransformationList(elements);
+        sequential = new Sequential(elements);
+    }
+
+    private int render(Transformation t) {
+        state.resetInstance();
+        state.useNormals = true;
+        sink.startDrawing(7);
+        state.setPipelineInstance(ccModel, 0, ccModel.verts.length, t);
+        state.renderInstance();
+        sink.draw();
+        return sink.vertexCount;
+    }
+
+    @Benchmark
+    public int compiled() {
+        return render(list);
+    }
+
+    @Benchmark
+    public int sequential() {
+        return render(sequential);
+    }
+
+    /**
+     * Applies each element in turn, the behaviour of the pipeline before lists were compiled
+     */
+    private static class Sequential extends Transformation {
+
+        private final Transformation[] elements;
+
+        Sequential(Transformation[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public void apply(Vector3 vec) {
+            for (Transformation t : elements) t.apply(vec);
+        }
+
+        @Override
+        public void applyN(Vector3 normal) {
+            for (Transformation t : elements) t.applyN(normal);
+        }
+
+        @Override
+        public void apply(Matrix4 mat) {
+            for (int i = elements.length - 1; i >= 0; i--) elements[i].apply(mat);
+        }
+
+        @Override
+        public Transformation inverse() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void glApply() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -31,9 +31,15 @@ public class RedirectorTransformer implements IClassTransformer {
 
     private static final boolean DUMP_CLASSES = Boolean.parseBoolean(System.getProperty("ccl.dumpClass", "false"));
     private static final String RenderStateClass = "codechicken/lib/render/CCRenderState";
+    private static final String PlanarLightMatrixClass = "codechicken/lib/lighting/PlanarLightMatrix";
+    private static final String SimpleBrightnessModelClass = "codechicken/lib/lighting/SimpleBrightnessModel";
     private static final Set<String> redirectedFields = new HashSet<>();
     private static final Set<String> redirectedSimpleMethods = new HashSet<>();
     private static final Set<String> redirectedMethods = new HashSet<>();
+    /**
+     * Classes with a static instance field that is replaced by a thread local instance() method
+     */
+    private static final Set<String> redirectedInstanceOwners = new HashSet<>();
     private static final ClassConstantPoolParser cstPoolParser;
 
     static {
@@ -76,7 +82,12 @@ public class RedirectorTransformer implements IClassTransformer {
                 "setBrightness",
                 "startDrawing");
 
-        cstPoolParser = new ClassConstantPoolParser(RenderStateClass);
+        Collections.addAll(redirectedInstanceOwners, PlanarLightMatrixClass, SimpleBrightnessModelClass);
+
+        cstPoolParser = new ClassConstantPoolParser(
+                RenderStateClass,
+                PlanarLightMatrixClass,
+                SimpleBrightnessModelClass);
     }
 
     @Override
@@ -118,7 +129,17 @@ public class RedirectorTransformer implements IClassTransformer {
                                 fNode.setOpcode(Opcodes.PUTFIELD);
                                 changed = true;
 
-                            }
+                            } else if (node.getOpcode() == Opcodes.GETSTATIC && fNode.name.equals("instance")
+                                    && redirectedInstanceOwners.contains(fNode.owner)) {
+                                        mn.instructions.set(
+                                                fNode,
+                                                new MethodInsnNode(
+                                                        Opcodes.INVOKESTATIC,
+                                                        fNode.owner,
+                                                        "instance",
+                                                        "()" + fNode.desc));
+                                        changed = true;
+                                    }
                 } else if (node instanceof MethodInsnNode mNode) {
                     if (node.getOpcode() == Opcodes.INVOKESTATIC && redirectedSimpleMethods.contains(mNode.name)
                             && mNode.owner.equals(RenderStateClass)) {
@@ -0,0 +1,9 @@
+package codechicken.lib.lighting;
+
+/**
+ * A source of lightmap brightness for each of the 6 block sides
+ */
+public interface ISidedBrightness {
+
+    int brightness(int side);
+}
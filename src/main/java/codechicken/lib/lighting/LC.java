@@ -7,6 +7,25 @@ import codechicken.lib.vec.Vector3;
 
 public class LC implements Copyable<LC> {
 
+    /**
+     * Light coordinates are interned for vertices on a 1/GRID grid within the block
+     */
+    public static final int GRID = 16;
+    private static final int SIDE_STRIDE = (GRID + 1) * (GRID + 1);
+    private static final LC[] table = new LC[12 * SIDE_STRIDE + 1];
+
+    static {
+        for (int side = 0; side < 12; side++) {
+            Vector3 v1 = Rotation.axes[((side & 0xE) + 3) % 6];
+            Vector3 v2 = Rotation.axes[((side & 0xE) + 5) % 6];
+            for (int a = 0; a <= GRID; a++) for (int b = 0; b <= GRID; b++) {
+                Vector3 vec = v1.copy().multiply(a / (double) GRID).add(v2.copy().multiply(b / (double) GRID));
+                table[side * SIDE_STRIDE + a * (GRID + 1) + b] = new LC().computeO(vec, side);
+            }
+        }
+        table[12 * SIDE_STRIDE] = new LC(12, 1, 0, 0, 0);
+    }
+
     public int side;
     public float fa;
     public float fb;
@@ -45,6 +64,13 @@ public class LC implements Copyable<LC> {
     }
 
     public LC compute(Vector3 vec, int side) {
+        return computeO(vec, offsetSide(vec, side));
+    }
+
+    /**
+     * @return side if vec is on that face of the block, otherwise side + 6
+     */
+    private static int offsetSide(Vector3 vec, int side) {
         boolean offset = false;
         switch (side) {
             case 0:
@@ -66,8 +92,7 @@ public class LC implements Copyable<LC> {
                 offset = vec.x >= 1;
                 break;
         }
-        if (!offset) side += 6;
-        return computeO(vec, side);
+        return offset ? side : side + 6;
     }
 
     public LC computeO(Vector3 vec, int side) {
@@ -80,6 +105,47 @@ public class LC implements Copyable<LC> {
         return set(side, d2 * d4, d2 * d3, d1 * d4, d1 * d3);
     }
 
+    /**
+     * The interned form of {@link #compute(Vector3, Vector3)}
+     *
+     * @return An index for {@link #interned(int)}, or -1 if vec is not on the grid. Normals not along an axis give the
+     *         index of the side 12 coordinates, whatever vec is
+     */
+    public static int index(Vector3 vec, Vector3 normal) {
+        int side = CCModel.findSide(normal);
+        if (side < 0) return 12 * SIDE_STRIDE;
+        return index(vec, side);
+    }
+
+    /**
+     * The interned form of {@link #compute(Vector3, int)}
+     *
+     * @return An index for {@link #interned(int)}, or -1 if vec is not on the grid
+     */
+    public static int index(Vector3 vec, int side) {
+        side = offsetSide(vec, side);
+        int a = gridIndex((float) vec.scalarProject(Rotation.axes[((side & 0xE) + 3) % 6]));
+        int b = gridIndex((float) vec.scalarProject(Rotation.axes[((side & 0xE) + 5) % 6]));
+        if (a < 0 || b < 0) return -1;
+        return side * SIDE_STRIDE + a * (GRID + 1) + b;
+    }
+
+    /**
+     * computeO works on the float projection, so a projection exactly on the grid gives the same result as the table
+     */
+    private static int gridIndex(float d) {
+        int i = Math.round(d * GRID);
+        return i >= 0 && i <= GRID && i / (float) GRID == d ? i : -1;
+    }
+
+    /**
+     * @return The shared light coordinates for an index from {@link #index(Vector3, int)} or
+     *         {@link #index(Vector3, Vector3)}, which must not be modified
+     */
+    public static LC interned(int index) {
+        return table[index];
+    }
+
     @Override
     public LC copy() {
         return new LC(side, fa, fb, fc, fd);
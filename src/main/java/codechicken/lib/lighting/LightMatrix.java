@@ -1,5 +1,7 @@
 package codechicken.lib.lighting;
 
+import java.util.Arrays;
+
 import net.minecraft.block.Block;
 import net.minecraft.client.Minecraft;
 import net.minecraft.world.IBlockAccess;
@@ -17,16 +19,27 @@ public class LightMatrix implements CCRenderState.IVertexOperation {
     public static final int operationIndex = CCRenderState.registerOperation();
 
     public int computed = 0;
+    /**
+     * When set, the first side requested computes all sides at once with {@link #computeAll()}. Suits models that use
+     * most sides, such as full blocks
+     */
+    public boolean eager = false;
     public float[][] ao = new float[13][4];
     public int[][] brightness = new int[13][4];
 
     public IBlockAccess access;
     public BlockCoord pos = new BlockCoord();
+    /**
+     * Optional section wide sample cache, used for samples within its region when it has the same world access
+     */
+    public LightSampleCache sampleCache;
 
     private int sampled = 0;
     private float[] aSamples = new float[27];
     private int[] bSamples = new int[27];
 
+    private static final int ALL_SIDES = (1 << 13) - 1;
+
     /**
      * The 9 positions in the sample array for each side, sides >= 6 are centered on sample 13 (the block itself)
      */
@@ -42,6 +55,15 @@ public class LightMatrix implements CCRenderState.IVertexOperation {
             { 0, 1, 3, 4 }, { 5, 1, 2, 4 }, { 6, 7, 3, 4 }, { 5, 7, 8, 4 } };
     public static final float[] sideao = new float[] { 0.5F, 1F, 0.8F, 0.8F, 0.6F, 0.6F, 0.5F, 1F, 0.8F, 0.8F, 0.6F,
             0.6F, 1F };
+    /**
+     * ssamplem and qsamplem flattened, the 4 samples interpolated for corner q of side s start at (s * 4 + q) * 4
+     */
+    private static final int[] cornerSamples = new int[13 * 16];
+
+    static {
+        for (int s = 0; s < 13; s++) for (int q = 0; q < 4; q++)
+            for (int k = 0; k < 4; k++) cornerSamples[(s * 4 + q) * 4 + k] = ssamplem[s][qsamplem[q][k]];
+    }
 
     /*
      * static { int[][] os = new int[][]{ {0,-1,0}, {0, 1,0}, {0,0,-1}, {0,0, 1}, {-1,0,0}, { 1,0,0}}; for(int s = 0; s
@@ -63,13 +85,36 @@ public class LightMatrix implements CCRenderState.IVertexOperation {
             int x = pos.x + (i % 3) - 1;
             int y = pos.y + (i / 9) - 1;
             int z = pos.z + (i / 3 % 3) - 1;
-            Block b = access.getBlock(x, y, z);
-            bSamples[i] = access.getLightBrightnessForSkyBlocks(x, y, z, b.getLightValue(access, x, y, z));
-            aSamples[i] = b.getAmbientOcclusionLightValue();
+            LightSampleCache cache = sampleCache;
+            if (cache != null && cache.access == access && cache.contains(x, y, z)) {
+                int c = cache.sample(x, y, z);
+                bSamples[i] = cache.brightness(c);
+                aSamples[i] = cache.ao(c);
+            } else {
+                Block b = access.getBlock(x, y, z);
+                bSamples[i] = access.getLightBrightnessForSkyBlocks(x, y, z, b.getLightValue(access, x, y, z));
+                aSamples[i] = b.getAmbientOcclusionLightValue();
+            }
             sampled |= 1 << i;
         }
     }
 
+    /**
+     * @return The brightness of sample i, the block at offset (i % 3 - 1, i / 9 - 1, i / 3 % 3 - 1)
+     */
+    public int sampleBrightness(int i) {
+        sample(i);
+        return bSamples[i];
+    }
+
+    /**
+     * @return The ambient occlusion light value of sample i
+     */
+    public float sampleAO(int i) {
+        sample(i);
+        return aSamples[i];
+    }
+
     public int[] brightness(int side) {
         sideSample(side);
         return brightness[side];
@@ -82,10 +127,15 @@ public class LightMatrix implements CCRenderState.IVertexOperation {
 
     public void sideSample(int side) {
         if ((computed & 1 << side) == 0) {
+            if (eager) {
+                computeAll();
+                return;
+            }
             int[] ssample = ssamplem[side];
+            boolean aoEnabled = Minecraft.isAmbientOcclusionEnabled();
             for (int q = 0; q < 4; q++) {
                 int[] qsample = qsamplem[q];
-                if (Minecraft.isAmbientOcclusionEnabled())
+                if (aoEnabled)
                     interp(side, q, ssample[qsample[0]], ssample[qsample[1]], ssample[qsample[2]], ssample[qsample[3]]);
                 else interp(side, q, ssample[4], ssample[4], ssample[4], ssample[4]);
             }
@@ -93,6 +143,42 @@ public class LightMatrix implements CCRenderState.IVertexOperation {
         }
     }
 
+    /**
+     * Computes the ao and brightness of every corner of all 13 sides. Reads each needed sample once and then
+     * interpolates from the sample arrays, without the per side checks of {@link #sideSample(int)}
+     */
+    public void computeAll() {
+        if (computed == ALL_SIDES) return;
+
+        float[] aSamples = this.aSamples;
+        int[] bSamples = this.bSamples;
+        if (Minecraft.isAmbientOcclusionEnabled()) {
+            for (int i = 0; i < 27; i++) sample(i);
+            for (int s = 0; s < 13; s++) {
+                float[] sideAO = ao[s];
+                int[] sideBrightness = brightness[s];
+                float f = sideao[s];
+                for (int q = 0, k = s * 16; q < 4; q++, k += 4) {
+                    int a = cornerSamples[k], b = cornerSamples[k + 1], c = cornerSamples[k + 2],
+                            d = cornerSamples[k + 3];
+                    sideAO[q] = interpAO(aSamples[a], aSamples[b], aSamples[c], aSamples[d]) * f;
+                    sideBrightness[q] = interpBrightness(bSamples[a], bSamples[b], bSamples[c], bSamples[d]);
+                }
+            }
+        } else {
+            // every corner uses the center sample of the side
+            for (int s = 0; s < 13; s++) {
+                int c = ssamplem[s][4];
+                sample(c);
+                float a = interpAO(aSamples[c], aSamples[c], aSamples[c], aSamples[c]) * sideao[s];
+                int b = interpBrightness(bSamples[c], bSamples[c], bSamples[c], bSamples[c]);
+                Arrays.fill(ao[s], a);
+                Arrays.fill(brightness[s], b);
+            }
+        }
+        computed = ALL_SIDES;
+    }
+
     private void interp(int s, int q, int a, int b, int c, int d) {
         sample(a);
         sample(b);
@@ -1,6 +1,7 @@
 package codechicken.lib.lighting;
 
 import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 import codechicken.lib.vec.Rotation;
 import codechicken.lib.vec.Vector3;
 
@@ -57,24 +58,24 @@ public class LightModel implements CCRenderState.IVertexOperation {
      * @return The lighting applied colour
      */
     public int apply(int colour, Vector3 normal) {
-        Vector3 n_colour = ambient.copy();
+        double r = ambient.x, g = ambient.y, b = ambient.z;
         for (int l = 0; l < lightCount; l++) {
             Light light = lights[l];
             double n_l = light.position.dotProduct(normal);
             double f = n_l > 0 ? 1 : 0;
-            n_colour.x += light.ambient.x + f * light.diffuse.x * n_l;
-            n_colour.y += light.ambient.y + f * light.diffuse.y * n_l;
-            n_colour.z += light.ambient.z + f * light.diffuse.z * n_l;
+            r += light.ambient.x + f * light.diffuse.x * n_l;
+            g += light.ambient.y + f * light.diffuse.y * n_l;
+            b += light.ambient.z + f * light.diffuse.z * n_l;
         }
 
-        if (n_colour.x > 1) n_colour.x = 1;
-        if (n_colour.y > 1) n_colour.y = 1;
-        if (n_colour.z > 1) n_colour.z = 1;
+        if (r > 1) r = 1;
+        if (g > 1) g = 1;
+        if (b > 1) b = 1;
 
-        n_colour.multiply((colour >>> 24) / 255D, (colour >> 16 & 0xFF) / 255D, (colour >> 8 & 0xFF) / 255D);
-        return (int) (n_colour.x * 255) << 24 | (int) (n_colour.y * 255) << 16
-                | (int) (n_colour.z * 255) << 8
-                | colour & 0xFF;
+        r *= (colour >>> 24) / 255D;
+        g *= (colour >> 16 & 0xFF) / 255D;
+        b *= (colour >> 8 & 0xFF) / 255D;
+        return (int) (r * 255) << 24 | (int) (g * 255) << 16 | (int) (b * 255) << 8 | colour & 0xFF;
     }
 
     @Override
@@ -91,6 +92,14 @@ public class LightModel implements CCRenderState.IVertexOperation {
         state.setColourInstance(apply(state.colour, state.normal));
     }
 
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        Vector3 normal = batch.vec;
+        for (int i = 0; i < batch.count; i++)
+            batch.colour[i] = apply(batch.colour[i], normal.set(batch.nx[i], batch.ny[i], batch.nz[i]));
+        state.hasColour = true;
+    }
+
     @Override
     public int operationID() {
         return operationIndex;
@@ -0,0 +1,99 @@
+package codechicken.lib.lighting;
+
+import java.util.Arrays;
+
+import net.minecraft.block.Block;
+import net.minecraft.world.IBlockAccess;
+
+/**
+ * Caches the brightness and ambient occlusion samples used by LightMatrix for a 16x16x16 chunk section plus a one
+ * block border, so each block position is only queried once per rebuild instead of once for each of the up to 27
+ * neighbours that sample it.
+ * <p>
+ * Attach to a LightMatrix with {@link LightMatrix#sampleCache}. Call {@link #setRegion} at the start of each section
+ * rebuild with the world access used for that rebuild, and {@link #invalidate()} if the world changes during it. A
+ * cache is not thread safe, use one per rebuild thread.
+ */
+public class LightSampleCache {
+
+    public static final int SIZE = 18;
+    private static final int VOLUME = SIZE * SIZE * SIZE;
+
+    public IBlockAccess access;
+    /**
+     * The world coordinates of the first cell, one less than the section origin
+     */
+    public int minX;
+    public int minY;
+    public int minZ;
+
+    private final int[] bSamples = new int[VOLUME];
+    private final float[] aSamples = new float[VOLUME];
+    /**
+     * A cell is filled when its stamp equals the current generation, this makes invalidation free
+     */
+    private final int[] stamps = new int[VOLUME];
+    private int generation = 1;
+
+    /**
+     * Clears the cache and moves it to the section with the given minimum block coordinates
+     */
+    public LightSampleCache setRegion(IBlockAccess access, int sectionX, int sectionY, int sectionZ) {
+        this.access = access;
+        minX = sectionX - 1;
+        minY = sectionY - 1;
+        minZ = sectionZ - 1;
+        invalidate();
+        return this;
+    }
+
+    public void invalidate() {
+        if (++generation == 0) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @return True if the position is within the cached region
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && y >= minY && z >= minZ && x < minX + SIZE && y < minY + SIZE && z < minZ + SIZE;
+    }
+
+    /**
+     * Samples the position if it has not been sampled since the last invalidation. The position must be within the
+     * cached region
+     *
+     * @return The cell index to read with {@link #brightness(int)} and {@link #ao(int)}
+     */
+    public int sample(int x, int y, int z) {
+        int i = ((y - minY) * SIZE + z - minZ) * SIZE + x - minX;
+        if (stamps[i] != generation) sampleCell(i, x, y, z);
+        return i;
+    }
+
+    private void sampleCell(int i, int x, int y, int z) {
+        Block b = access.getBlock(x, y, z);
+        bSamples[i] = access.getLightBrightnessForSkyBlocks(x, y, z, b.getLightValue(access, x, y, z));
+        aSamples[i] = b.getAmbientOcclusionLightValue();
+        stamps[i] = generation;
+    }
+
+    /**
+     * Samples every cell in the region that isn't already sampled
+     */
+    public void fill() {
+        int i = 0;
+        for (int y = 0; y < SIZE; y++) for (int z = 0; z < SIZE; z++) for (int x = 0; x < SIZE; x++, i++)
+            if (stamps[i] != generation) sampleCell(i, minX + x, minY + y, minZ + z);
+    }
+
+    public int brightness(int cell) {
+        return bSamples[cell];
+    }
+
+    public float ao(int cell) {
+        return aSamples[cell];
+    }
+}
@@ -6,11 +6,22 @@ import net.minecraft.world.IBlockAccess;
 import codechicken.lib.render.CCRenderState;
 import codechicken.lib.vec.BlockCoord;
 
-public class PlanarLightMatrix extends PlanarLightModel {
+public class PlanarLightMatrix extends PlanarLightModel implements ISidedBrightness {
 
     public static final int operationIndex = CCRenderState.registerOperation();
+    private static final ThreadLocal<PlanarLightMatrix> instances = ThreadLocal.withInitial(PlanarLightMatrix::new);
+
+    /**
+     * @deprecated Shared between all threads, use {@link #instance()}. Legacy reads of this field are redirected to
+     *             instance() by RedirectorTransformer
+     */
+    @Deprecated
     public static PlanarLightMatrix instance = new PlanarLightMatrix();
 
+    public static PlanarLightMatrix instance() {
+        return instances.get();
+    }
+
     public IBlockAccess access;
     public BlockCoord pos = new BlockCoord();
 
@@ -28,6 +39,7 @@ public class PlanarLightMatrix extends PlanarLightModel {
         return this;
     }
 
+    @Override
     public int brightness(int side) {
         if ((sampled & 1 << side) == 0) {
             Block b = access.getBlock(pos.x, pos.y, pos.z);
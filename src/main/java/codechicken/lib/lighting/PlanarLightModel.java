@@ -2,6 +2,7 @@ package codechicken.lib.lighting;
 
 import codechicken.lib.colour.ColourRGBA;
 import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 
 /**
  * Faster precomputed version of LightModel that only works for axis planar sides
@@ -30,6 +31,14 @@ public class PlanarLightModel implements CCRenderState.IVertexOperation {
         state.setColourInstance(ColourRGBA.multiply(state.colour, colours[state.side]));
     }
 
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        int[] colour = batch.colour;
+        int[] side = batch.side;
+        for (int i = 0; i < batch.count; i++) colour[i] = ColourRGBA.multiply(colour[i], colours[side[i]]);
+        state.hasColour = true;
+    }
+
     @Override
     public int operationID() {
         return LightModel.operationIndex;
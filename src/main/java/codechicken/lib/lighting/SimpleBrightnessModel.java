@@ -7,24 +7,43 @@ import codechicken.lib.render.CCRenderState;
 import codechicken.lib.vec.BlockCoord;
 
 /**
- * Faster precomputed version of LightModel that only works for axis planar sides
+ * Faster precomputed version of LightModel that only works for axis planar sides. The brightness is looked up once per
+ * face, for the side of its first vertex, and reused for the other vertices of the face on the same side.
  */
-public class SimpleBrightnessModel implements CCRenderState.IVertexOperation {
+public class SimpleBrightnessModel implements CCRenderState.IFaceOperation, ISidedBrightness {
 
     public static final int operationIndex = CCRenderState.registerOperation();
+    private static final ThreadLocal<SimpleBrightnessModel> instances = ThreadLocal
+            .withInitial(SimpleBrightnessModel::new);
+
+    /**
+     * @deprecated Shared between all threads, use {@link #instance()}. Legacy reads of this field are redirected to
+     *             instance() by RedirectorTransformer
+     */
+    @Deprecated
     public static SimpleBrightnessModel instance = new SimpleBrightnessModel();
 
+    public static SimpleBrightnessModel instance() {
+        return instances.get();
+    }
+
     public IBlockAccess access;
     public BlockCoord pos = new BlockCoord();
 
     private int sampled = 0;
     private final int[] samples = new int[6];
     private final BlockCoord c = new BlockCoord();
+    /**
+     * The side and brightness of the current face, -1 if none since locate
+     */
+    private int faceSide = -1;
+    private int faceBrightness;
 
     public void locate(IBlockAccess a, int x, int y, int z) {
         access = a;
         pos.set(x, y, z);
         sampled = 0;
+        faceSide = -1;
     }
 
     public int sample(int side) {
@@ -38,15 +57,28 @@ public class SimpleBrightnessModel implements CCRenderState.IVertexOperation {
         return samples[side];
     }
 
+    @Override
+    public int brightness(int side) {
+        return sample(side);
+    }
+
     @Override
     public boolean load(CCRenderState state) {
         state.pipeline.addDependency(CCRenderState.sideAttrib);
         return true;
     }
 
+    @Override
+    public boolean operateFace(CCRenderState state) {
+        faceBrightness = sample(state.side);
+        faceSide = state.side;
+        return true;
+    }
+
     @Override
     public void operate(CCRenderState state) {
-        state.setBrightnessInstance(sample(state.side));
+        int side = state.side;
+        state.setBrightnessInstance(side == faceSide ? faceBrightness : sample(side));
     }
 
     @Override
@@ -0,0 +1,126 @@
+package codechicken.lib.render;
+
+import codechicken.lib.lighting.ISidedBrightness;
+import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.IVertexSink;
+import codechicken.lib.render.CCRenderState.IVertexSource;
+
+/**
+ * The output of a pipeline run once over a whole model. Rendering a baked model only adds an offset and brightness to
+ * each vertex, so it suits static models rendered with the same transformation, uv transformation and colour ops at
+ * many positions.
+ * <p>
+ * Brightness set by the baked pipeline is discarded, it is supplied again at render time.
+ */
+public class BakedModel {
+
+    /**
+     * Floats per vertex in data: x, y, z, u, v, nx, ny, nz
+     */
+    public static final int STRIDE = 8;
+
+    public final int vertexCount;
+    public final float[] data;
+    /**
+     * Vertex colours, or null if the pipeline did not set colour
+     */
+    public final int[] colours;
+    /**
+     * The side of each vertex used for brightness lookups. Vertices without a side use the top face
+     */
+    public final byte[] sides;
+    public final boolean hasNormals;
+
+    public BakedModel(int vertexCount, float[] data, int[] colours, byte[] sides, boolean hasNormals) {
+        this.vertexCount = vertexCount;
+        this.data = data;
+        this.colours = colours;
+        this.sides = sides;
+        this.hasNormals = hasNormals;
+    }
+
+    /**
+     * Runs the pipeline over every vertex of the model with the current context of the render state (baseColour,
+     * useNormals, computeLighting etc) and stores the result. Replaces the model and pipeline of the render state.
+     * Whether the baked model has colours and normals depends only on this run, the hasColour and hasNormal flags of
+     * the render state are restored afterwards.
+     */
+    public static BakedModel bake(CCRenderState state, IVertexSource model, IVertexOperation... ops) {
+        int n = model.getVertexCount();
+        state.setPipelineInstance(model, 0, n, ops);
+        boolean sided = CCRenderState.sideAttrib.isActive(state);
+        boolean prevColour = state.hasColour, prevNormal = state.hasNormal;
+        state.hasColour = state.hasNormal = false;
+
+        float[] data = new float[n * STRIDE];
+        int[] colours = new int[n];
+        byte[] sides = new byte[n];
+        for (int i = 0; i < n; i++) {
+            state.vertexIndex = i;
+            model.prepareVertex(state);
+            model.loadVertex(state, i);
+            state.runPipelineInstance();
+
+            int k = i * STRIDE;
+            data[k] = (float) state.vert.vec.x;
+            data[k + 1] = (float) state.vert.vec.y;
+            data[k + 2] = (float) state.vert.vec.z;
+            data[k + 3] = (float) state.vert.uv.u;
+            data[k + 4] = (float) state.vert.uv.v;
+            data[k + 5] = (float) state.normal.x;
+            data[k + 6] = (float) state.normal.y;
+            data[k + 7] = (float) state.normal.z;
+            colours[i] = state.colour;
+
+            int side = sided ? state.side : state.hasNormal ? CCModel.findSide(state.normal) : -1;
+            sides[i] = (byte) (side < 0 ? 1 : side);
+        }
+        BakedModel baked = new BakedModel(n, data, state.hasColour ? colours : null, sides, state.hasNormal);
+        state.hasColour = prevColour;
+        state.hasNormal = prevNormal;
+        return baked;
+    }
+
+    /**
+     * Writes the model to the sink of the render state at the given offset with a single brightness
+     */
+    public void render(CCRenderState state, double x, double y, double z, int brightness) {
+        IVertexSink sink = state.sink;
+        sink.setBrightness(brightness);
+        for (int i = 0; i < vertexCount; i++) writeVert(state, sink, i, x, y, z);
+        if (PipelineProfiler.ENABLED) state.pipeline.recorder.addModel(this, vertexCount);
+    }
+
+    /**
+     * Writes the model to the sink of the render state at the given offset, taking the brightness of each vertex from
+     * its side
+     */
+    public void render(CCRenderState state, double x, double y, double z, ISidedBrightness brightness) {
+        IVertexSink sink = state.sink;
+        int lastSide = -1;
+        for (int i = 0; i < vertexCount; i++) {
+            int side = sides[i];
+            if (side != lastSide) {
+                sink.setBrightness(brightness.brightness(side));
+                lastSide = side;
+            }
+            writeVert(state, sink, i, x, y, z);
+        }
+        if (PipelineProfiler.ENABLED) state.pipeline.recorder.addModel(this, vertexCount);
+    }
+
+    private void writeVert(CCRenderState state, IVertexSink sink, int i, double x, double y, double z) {
+        float[] data = this.data;
+        int k = i * STRIDE;
+        if (hasNormals) sink.setNormal(data[k + 5], data[k + 6], data[k + 7]);
+        if (colours != null) {
+            int colour = colours[i];
+            sink.setColour(
+                    colour >>> 24,
+                    colour >> 16 & 0xFF,
+                    colour >> 8 & 0xFF,
+                    state.alphaOverride >= 0 ? state.alphaOverride : colour & 0xFF);
+        }
+        sink.addVertex(data[k] + x, data[k + 1] + y, data[k + 2] + z, data[k + 3], data[k + 4]);
+    }
+}
@@ -0,0 +1,288 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import net.minecraft.client.renderer.texture.IIconRegister;
+
+import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.IVertexSource;
+import codechicken.lib.render.uv.IconTransformation;
+import codechicken.lib.render.uv.UV;
+import codechicken.lib.render.uv.UVRotation;
+import codechicken.lib.render.uv.UVScale;
+import codechicken.lib.render.uv.UVTransformation;
+import codechicken.lib.render.uv.UVTranslation;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Bounded LRU cache of baked models, keyed by model, ops and the colour context of the render state. The cache is
+ * cleared whenever a texture atlas is stitched, as icon uvs may have moved.
+ * <p>
+ * Models are compared by identity and must not be modified after baking. Ops that are usually created per render call
+ * are compared by value when the key is made: affine Transformations (including lists) by what they do to positions
+ * and normals, ColourMultipliers by colour, and UVTranslation, UVScale, UVRotation and IconTransformation by what they
+ * do to uvs. Changing such an op after the call doesn't affect the cached entry, so the shared instances returned by
+ * ColourMultiplier.instance are fine. All other ops (light models, MultiIconTransformation, UVTransformationList,
+ * custom ops) are compared by identity, so they must be stable instances kept in a field, not created per call.
+ * <p>
+ * Only ops that are the same wherever the model is rendered belong in the key. The position is passed to
+ * {@link BakedModel#render}, a Translation to it in the key would bake a new model for every block.
+ *
+ * <pre>
+ * static final IVertexOperation light = PlanarLightModel.standardLightModel; // stable, compared by identity
+ *
+ * Transformation t = Rotation.sideRotations[side].at(Vector3.center); // model local, compared by value
+ * BakedModel baked = BakedModelCache.instance.get(state, model, light, t, new IconTransformation(icon),
+ *         ColourMultiplier.instance(colour)); // compared by value
+ * baked.render(state, x, y, z, brightness);
+ * </pre>
+ * <p>
+ * Caches are cleared on stitching through one icon registrar per atlas shared by all caches, which holds them weakly.
+ */
+public class BakedModelCache {
+
+    /**
+     * Every cache, cleared when an atlas is stitched. Weak so caches that are no longer used can be collected
+     */
+    private static final Set<BakedModelCache> caches = Collections.newSetFromMap(new WeakHashMap<>());
+
+    static {
+        registerInvalidation(0);
+        registerInvalidation(1);
+    }
+
+    private static void registerInvalidation(final int atlas) {
+        TextureUtils.addIconRegistrar(new TextureUtils.IIconSelfRegister() {
+
+            @Override
+            public void registerIcons(IIconRegister register) {
+                BakedModelCache[] all;
+                synchronized (caches) {
+                    all = caches.toArray(new BakedModelCache[0]);
+                }
+                for (BakedModelCache cache : all) cache.clear();
+            }
+
+            @Override
+            public int atlasIndex() {
+                return atlas;
+            }
+        });
+    }
+
+    public static final BakedModelCache instance = new BakedModelCache(2048);
+
+    private static final class Key {
+
+        private final IVertexSource model;
+        /**
+         * An OpValue or the op itself for each op, see {@link #opKey}
+         */
+        private final Object[] ops;
+        private final int baseColour;
+        private final int flags;
+        private final int hash;
+
+        private Key(IVertexSource model, IVertexOperation[] ops, CCRenderState state) {
+            this.model = model;
+            this.ops = new Object[ops.length];
+            for (int i = 0; i < ops.length; i++) this.ops[i] = opKey(ops[i]);
+            baseColour = state.baseColour;
+            flags = (state.useNormals ? 1 : 0) | (state.useColour ? 2 : 0) | (state.computeLighting ? 4 : 0);
+
+            hash = ((System.identityHashCode(model) * 31 + baseColour) * 31 + flags) * 31 + Arrays.hashCode(this.ops);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+
+            Key k = (Key) obj;
+            return k.hash == hash && k.model == model
+                    && k.baseColour == baseColour
+                    && k.flags == flags
+                    && Arrays.equals(k.ops, ops);
+        }
+    }
+
+    /**
+     * A snapshot of what an op does. The type keeps values of different kinds of op apart
+     */
+    private static final class OpValue {
+
+        private static final int TRANSFORMATION = 0, UV_TRANSFORMATION = 1, COLOUR_MULTIPLIER = 2;
+
+        private final int type;
+        private final double[] values;
+        private final int hash;
+
+        private OpValue(int type, double[] values) {
+            this.type = type;
+            this.values = values;
+            hash = type * 31 + Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof OpValue)) return false;
+
+            OpValue v = (OpValue) obj;
+            return v.hash == hash && v.type == type && Arrays.equals(v.values, values);
+        }
+    }
+
+    private static final double EPSILON = 1E-9;
+    private static final Vector3 probe = new Vector3(0.3125, -0.71, 1.37);
+    private static final UV uvProbe = new UV(0.3125, 0.71);
+
+    /**
+     * @return An OpValue for ops that can be compared by value, otherwise the op itself, compared by identity
+     */
+    private static Object opKey(IVertexOperation op) {
+        if (op instanceof ColourMultiplier) return new OpValue(
+                OpValue.COLOUR_MULTIPLIER,
+                new double[] { ((ColourMultiplier) op).colour });
+
+        if (op instanceof Transformation) {
+            double[] values = transformationValues((Transformation) op);
+            return values != null ? new OpValue(OpValue.TRANSFORMATION, values) : op;
+        }
+
+        Class<?> c = op.getClass();
+        if (c == UVTranslation.class || c == UVScale.class || c == UVRotation.class || c == IconTransformation.class) {
+            double[] values = uvTransformationValues((UVTransformation) op);
+            return values != null ? new OpValue(OpValue.UV_TRANSFORMATION, values) : op;
+        }
+
+        return op;
+    }
+
+    /**
+     * Probes t with the origin and unit axes like the TransformationList pipeline compiler.
+     *
+     * @return The affine position matrix and the transformed normals of the axes and a probe, or null if t isn't affine
+     */
+    private static double[] transformationValues(Transformation t) {
+        double[] values = new double[24];
+        Vector3 o = new Vector3();
+        t.apply(o);
+        values[9] = o.x;
+        values[10] = o.y;
+        values[11] = o.z;
+        for (int c = 0; c < 3; c++) {
+            Vector3 v = axis(c);
+            t.apply(v);
+            values[c * 3] = v.x - o.x;
+            values[c * 3 + 1] = v.y - o.y;
+            values[c * 3 + 2] = v.z - o.z;
+
+            v = axis(c);
+            t.applyN(v);
+            values[12 + c * 3] = v.x;
+            values[12 + c * 3 + 1] = v.y;
+            values[12 + c * 3 + 2] = v.z;
+        }
+
+        Vector3 p = probe.copy();
+        t.apply(p);
+        if (!near(p.x, o.x + probe.x * values[0] + probe.y * values[3] + probe.z * values[6])
+                || !near(p.y, o.y + probe.x * values[1] + probe.y * values[4] + probe.z * values[7])
+                || !near(p.z, o.z + probe.x * values[2] + probe.y * values[5] + probe.z * values[8]))
+            return null;
+
+        p = probe.copy();
+        t.applyN(p);
+        values[21] = p.x;
+        values[22] = p.y;
+        values[23] = p.z;
+        return values;
+    }
+
+    /**
+     * @return The affine uv matrix and the tex index of the origin, or null if t isn't affine
+     */
+    private static double[] uvTransformationValues(UVTransformation t) {
+        UV o = new UV();
+        t.apply(o);
+        UV u = new UV(1, 0);
+        t.apply(u);
+        UV v = new UV(0, 1);
+        t.apply(v);
+        double[] values = new double[] { u.u - o.u, v.u - o.u, o.u, u.v - o.v, v.v - o.v, o.v, o.tex };
+
+        UV p = uvProbe.copy();
+        t.apply(p);
+        if (!near(p.u, values[0] * uvProbe.u + values[1] * uvProbe.v + values[2])
+                || !near(p.v, values[3] * uvProbe.u + values[4] * uvProbe.v + values[5]))
+            return null;
+        return values;
+    }
+
+    private static Vector3 axis(int c) {
+        return new Vector3(c == 0 ? 1 : 0, c == 1 ? 1 : 0, c == 2 ? 1 : 0);
+    }
+
+    private static boolean near(double a, double b) {
+        return Math.abs(a - b) <= EPSILON * Math.max(1, Math.abs(b));
+    }
+
+    private final LinkedHashMap<Key, BakedModel> cache;
+
+    public BakedModelCache(final int maxSize) {
+        cache = new LinkedHashMap<Key, BakedModel>(16, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, BakedModel> eldest) {
+                return size() > maxSize;
+            }
+        };
+        synchronized (caches) {
+            caches.add(this);
+        }
+    }
+
+    /**
+     * Gets the baked model for the given model and ops, baking it with the render state if not already cached
+     */
+    public BakedModel get(CCRenderState state, IVertexSource model, IVertexOperation... ops) {
+        Key key = new Key(model, ops, state);
+        synchronized (cache) {
+            BakedModel baked = cache.get(key);
+            if (baked != null) return baked;
+        }
+
+        BakedModel baked = BakedModel.bake(state, model, ops);
+        synchronized (cache) {
+            cache.put(key, baked);
+        }
+        return baked;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
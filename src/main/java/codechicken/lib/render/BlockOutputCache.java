@@ -0,0 +1,302 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import net.minecraft.block.Block;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.texture.IIconRegister;
+import net.minecraftforge.client.ForgeHooksClient;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.world.WorldEvent;
+
+import codechicken.lib.lighting.LightMatrix;
+import codechicken.lib.render.CCRenderState.IVertexSink;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+
+/**
+ * Bounded LRU cache of the vertices written by world block renderers, so a chunk section rebuilt for a single block
+ * change doesn't run the pipeline again for every unchanged block in it.
+ * <p>
+ * Each entry stores the vertices written for a position and render pass, with a signature of the inputs that were used
+ * to produce them: the block, the metadata, the 27 light samples of the LightMatrix, the ambient occlusion setting,
+ * the colour context of the render state and a caller key. A later render of the same position replays the stored
+ * vertices if the signature is equal. The caller key must cover every other input of the renderer, such as tile
+ * entity state or connected textures. Renderers whose output depends on neighbours beyond their light samples (face
+ * culling against neighbours for example) should include that in the key too.
+ * <p>
+ * Positions are stored relative to the block, so replays keep full float precision at large coordinates. Entries are
+ * keyed by position only, so every cache is cleared when a client world is loaded or unloaded, and whenever a texture
+ * atlas is stitched, as icon uvs may have moved.
+ * <p>
+ * Entries are spread over {@value #SEGMENTS} segments by position, each an LRU map with its own lock, so chunk
+ * rebuilds on different threads rarely wait for each other.
+ */
+public class BlockOutputCache {
+
+    /**
+     * Every cache, cleared on world changes and stitching. Weak so caches that are no longer used can be collected
+     */
+    private static final Set<BlockOutputCache> caches = Collections.newSetFromMap(new WeakHashMap<>());
+
+    static {
+        registerInvalidation(0);
+        registerInvalidation(1);
+        MinecraftForge.EVENT_BUS.register(new WorldEventHandler());
+    }
+
+    public static final BlockOutputCache instance = new BlockOutputCache(8192);
+
+    private static final int SIGNATURE_LENGTH = 27 * 2 + 5;
+    private static final int SEGMENTS = 16;
+
+    private static final class Entry {
+
+        private final Block block;
+        private final Object key;
+        private final int[] signature;
+        private final int[] data;
+        private final int vertexCount;
+        /**
+         * The first vertex recorded after the renderer set a normal, colour or brightness, or vertexCount if it never
+         * did. Earlier vertices are replayed with the state the sink already had, like a render without the cache
+         */
+        private final int normalStart, colourStart, brightnessStart;
+
+        private Entry(Block block, Object key, int[] signature, Recorder recorder) {
+            this.block = block;
+            this.key = key;
+            this.signature = signature;
+            data = Arrays.copyOf(recorder.buffer, recorder.size());
+            vertexCount = recorder.vertexCount;
+            normalStart = recorder.hasNormals ? recorder.normalStart : vertexCount;
+            colourStart = recorder.hasColour ? recorder.colourStart : vertexCount;
+            brightnessStart = recorder.hasBrightness ? recorder.brightnessStart : vertexCount;
+        }
+
+        private boolean matches(Block block, Object key, int[] signature) {
+            return this.block == block && (this.key == null ? key == null : this.key.equals(key))
+                    && Arrays.equals(this.signature, signature);
+        }
+    }
+
+    /**
+     * Records the vertex at which the normal, colour and brightness are first set
+     */
+    private static final class Recorder extends PackedVertexSink {
+
+        private int normalStart, colourStart, brightnessStart;
+
+        @Override
+        public void setNormal(float x, float y, float z) {
+            if (!hasNormals) normalStart = vertexCount;
+            super.setNormal(x, y, z);
+        }
+
+        @Override
+        public void setColour(int r, int g, int b, int a) {
+            if (!hasColour) colourStart = vertexCount;
+            super.setColour(r, g, b, a);
+        }
+
+        @Override
+        public void setBrightness(int brightness) {
+            if (!hasBrightness) brightnessStart = vertexCount;
+            super.setBrightness(brightness);
+        }
+    }
+
+    private static final ThreadLocal<Recorder> recorders = ThreadLocal.withInitial(Recorder::new);
+
+    /**
+     * An LRU map of entries, locked on itself
+     */
+    private static final class Segment extends LinkedHashMap<Long, Entry> {
+
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75F, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param maxSize The maximum number of entries, shared evenly between the segments
+     */
+    public BlockOutputCache(int maxSize) {
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS));
+        synchronized (caches) {
+            caches.add(this);
+        }
+        PipelineProfiler.label(this, "BlockOutputCache replays");
+    }
+
+    private static void registerInvalidation(final int atlas) {
+        TextureUtils.addIconRegistrar(new TextureUtils.IIconSelfRegister() {
+
+            @Override
+            public void registerIcons(IIconRegister register) {
+                clearAll();
+            }
+
+            @Override
+            public int atlasIndex() {
+                return atlas;
+            }
+        });
+    }
+
+    public static class WorldEventHandler {
+
+        @SubscribeEvent
+        public void onWorldLoad(WorldEvent.Load event) {
+            if (event.world.isRemote) clearAll();
+        }
+
+        @SubscribeEvent
+        public void onWorldUnload(WorldEvent.Unload event) {
+            if (event.world.isRemote) clearAll();
+        }
+    }
+
+    /**
+     * Clears every cache
+     */
+    public static void clearAll() {
+        BlockOutputCache[] all;
+        synchronized (caches) {
+            all = caches.toArray(new BlockOutputCache[0]);
+        }
+        for (BlockOutputCache cache : all) cache.clear();
+    }
+
+    private Segment segment(long pos) {
+        return segments[Long.hashCode(pos) * 0x9E3779B9 >>> 28];
+    }
+
+    /**
+     * Renders a block through the cache. If the signature of the block matches the stored entry for its position, the
+     * stored vertices are written to the sink of the render state. Otherwise the renderer is run with a recording sink,
+     * and the result is stored and then written to the sink.
+     *
+     * @param lightMatrix A light matrix located at the block, used for the light samples and position
+     * @param metadata    The metadata of the block
+     * @param key         Any other inputs of the renderer, compared with equals. May be null
+     * @param renderer    Renders the block to the sink of the render state with the lighting of lightMatrix
+     * @return True if any vertices were written
+     */
+    public boolean render(CCRenderState state, LightMatrix lightMatrix, int metadata, Object key, Runnable renderer) {
+        int x = lightMatrix.pos.x, y = lightMatrix.pos.y, z = lightMatrix.pos.z;
+        Block block = lightMatrix.access.getBlock(x, y, z);
+        int[] signature = signature(state, lightMatrix, metadata);
+        Long pos = key(x, y, z, ForgeHooksClient.getWorldRenderPass());
+        Segment segment = segment(pos);
+
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(pos);
+        }
+        if (entry == null || !entry.matches(block, key, signature)) {
+            Recorder recorder = recorders.get();
+            recorder.startDrawing(7);
+            recorder.setTranslation(-x, -y, -z);
+            IVertexSink sink = state.sink;
+            state.sink = recorder;
+            try {
+                renderer.run();
+            } finally {
+                state.sink = sink;
+                recorder.drawing = false;
+            }
+
+            entry = new Entry(block, key, signature, recorder);
+            synchronized (segment) {
+                segment.put(pos, entry);
+            }
+        }
+
+        replay(state.sink, entry, x, y, z);
+        if (PipelineProfiler.ENABLED) state.pipeline.recorder.addModel(this, entry.vertexCount);
+        return entry.vertexCount > 0;
+    }
+
+    private static int[] signature(CCRenderState state, LightMatrix lightMatrix, int metadata) {
+        int[] signature = new int[SIGNATURE_LENGTH];
+        for (int i = 0; i < 27; i++) {
+            signature[i * 2] = lightMatrix.sampleBrightness(i);
+            signature[i * 2 + 1] = Float.floatToIntBits(lightMatrix.sampleAO(i));
+        }
+        int k = 27 * 2;
+        signature[k] = metadata;
+        signature[k + 1] = Minecraft.isAmbientOcclusionEnabled() ? 1 : 0;
+        signature[k + 2] = state.baseColour;
+        signature[k + 3] = state.alphaOverride;
+        signature[k + 4] = (state.useNormals ? 1 : 0) | (state.useColour ? 2 : 0) | (state.computeLighting ? 4 : 0);
+        return signature;
+    }
+
+    private static Long key(int x, int y, int z, int pass) {
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (y & 0xFF) << 4 | pass & 0xF;
+    }
+
+    private static void replay(IVertexSink sink, Entry entry, int x, int y, int z) {
+        int[] data = entry.data;
+        for (int v = 0, i = 0; v < entry.vertexCount; v++, i += PackedVertexSink.STRIDE) {
+            if (v >= entry.normalStart) {
+                int normal = data[i + 6];
+                sink.setNormal(
+                        unpackNormal((byte) normal),
+                        unpackNormal((byte) (normal >> 8)),
+                        unpackNormal((byte) (normal >> 16)));
+            }
+            if (v >= entry.colourStart) {
+                int colour = data[i + 5];
+                sink.setColour(colour & 0xFF, colour >> 8 & 0xFF, colour >> 16 & 0xFF, colour >>> 24);
+            }
+            if (v >= entry.brightnessStart) sink.setBrightness(data[i + 7]);
+            sink.addVertex(
+                    Float.intBitsToFloat(data[i]) + x,
+                    Float.intBitsToFloat(data[i + 1]) + y,
+                    Float.intBitsToFloat(data[i + 2]) + z,
+                    Float.intBitsToFloat(data[i + 3]),
+                    Float.intBitsToFloat(data[i + 4]));
+        }
+    }
+
+    /**
+     * Rounds away from zero by half a step, so packing the result again with (int) (f * 127) gives back b
+     */
+    private static float unpackNormal(byte b) {
+        return b == 0 ? 0 : (b + (b > 0 ? 0.5F : -0.5F)) / 127F;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+}
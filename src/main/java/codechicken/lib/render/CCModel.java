@@ -11,15 +11,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.util.ResourceLocation;
 
+import org.lwjgl.opengl.GL11;
+
+import codechicken.lib.colour.ColourRGBA;
 import codechicken.lib.lighting.LC;
 import codechicken.lib.lighting.LightModel;
 import codechicken.lib.render.uv.UV;
@@ -27,30 +32,97 @@ import codechicken.lib.render.uv.UVTransformation;
 import codechicken.lib.render.uv.UVTranslation;
 import codechicken.lib.util.Copyable;
 import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Matrix4;
 import codechicken.lib.vec.RedundantTransformation;
 import codechicken.lib.vec.Transformation;
 import codechicken.lib.vec.TransformationList;
+import codechicken.lib.vec.Translation;
 import codechicken.lib.vec.Vector3;
+import cpw.mods.fml.relauncher.Side;
+import cpw.mods.fml.relauncher.SideOnly;
 
 @SuppressWarnings("ForLoopReplaceableByForEach")
 public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
 
-    private static class PositionNormalEntry {
+    /**
+     * Groups vertex positions for smoothNormals. An open addressing table of group ids keyed by position, or by grid
+     * cell when merging positions within an epsilon. A vertex joins the first group (in vertex order) whose first
+     * position is equal, or within epsilon on every axis.
+     */
+    private static class PositionGroups {
+
+        private final Vertex5[] verts;
+        private final double epsilon;
+        private final int[] table;
+        private final int mask;
+        /**
+         * The first vertex of each group
+         */
+        private final int[] groupVerts;
+        public int groupCount;
+
+        public PositionGroups(Vertex5[] verts, double epsilon) {
+            this.verts = verts;
+            this.epsilon = epsilon;
+            int size = Integer.highestOneBit(Math.max(verts.length, 1) * 2 - 1) << 1;
+            table = new int[size];
+            Arrays.fill(table, -1);
+            mask = size - 1;
+            groupVerts = new int[verts.length];
+        }
 
-        public Vector3 pos;
-        public LinkedList<Vector3> normals = new LinkedList<Vector3>();
+        private double cell(double d) {
+            // + 0.0 so -0.0 and 0.0 hash the same, they compare equal. Math.floor keeps the sign of -0.0
+            return (epsilon > 0 ? Math.floor(d / epsilon) : d) + 0.0;
+        }
 
-        public PositionNormalEntry(Vector3 position) {
-            pos = position;
+        private static int hash(double x, double y, double z) {
+            long h = Double.doubleToLongBits(x);
+            h = h * 31 + Double.doubleToLongBits(y);
+            h = h * 31 + Double.doubleToLongBits(z);
+            h ^= h >>> 32;
+            return (int) (h ^ h >>> 16) * 0x9E3779B9;
         }
 
-        public boolean positionEqual(Vector3 v) {
-            return pos.x == v.x && pos.y == v.y && pos.z == v.z;
+        private boolean matches(Vector3 a, Vector3 b) {
+            if (epsilon > 0) return Math.abs(a.x - b.x) <= epsilon && Math.abs(a.y - b.y) <= epsilon
+                    && Math.abs(a.z - b.z) <= epsilon;
+
+            return a.x == b.x && a.y == b.y && a.z == b.z;
         }
 
-        public PositionNormalEntry addNormal(Vector3 normal) {
-            normals.add(normal);
-            return this;
+        /**
+         * @return The lowest matching group id in the table bucket for the given cell, or Integer.MAX_VALUE
+         */
+        private int find(Vector3 vec, double cx, double cy, double cz, int best) {
+            for (int i = hash(cx, cy, cz) & mask; table[i] >= 0; i = i + 1 & mask) {
+                int g = table[i];
+                if (g < best && matches(verts[groupVerts[g]].vec, vec)) best = g;
+            }
+            return best;
+        }
+
+        /**
+         * @return The group id for vertex k, adding a new group if none match
+         */
+        public int add(int k) {
+            Vector3 vec = verts[k].vec;
+            double cx = cell(vec.x), cy = cell(vec.y), cz = cell(vec.z);
+            int best = Integer.MAX_VALUE;
+            if (epsilon > 0) {
+                for (int dx = -1; dx <= 1; dx++) for (int dy = -1; dy <= 1; dy++)
+                    for (int dz = -1; dz <= 1; dz++) best = find(vec, cx + dx, cy + dy, cz + dz, best);
+            } else {
+                best = find(vec, cx, cy, cz, best);
+            }
+            if (best != Integer.MAX_VALUE) return best;
+
+            int g = groupCount++;
+            groupVerts[g] = k;
+            int i = hash(cx, cy, cz) & mask;
+            while (table[i] >= 0) i = i + 1 & mask;
+            table[i] = g;
+            return g;
         }
     }
 
@@ -76,6 +148,21 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         return verts;
     }
 
+    @Override
+    public int getVertexCount() {
+        return verts.length;
+    }
+
+    @Override
+    public void loadVertex(CCRenderState state, int index) {
+        state.vert.set(verts[index]);
+    }
+
+    @Override
+    public int getVertsPerFace() {
+        return vp;
+    }
+
     @Override
     public <T> T getAttributes(CCRenderState.VertexAttribute<T> attr) {
         if (attr.attributeIndex < attributes.size()) return (T) attributes.get(attr.attributeIndex);
@@ -369,33 +456,104 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
     }
 
     /**
-     * Averages all normals at the same position to produce a smooth lighting effect.
-     * 
+     * Computes the minecraft lighting coordinates as indices into the interned table of LC, which takes 2 bytes per
+     * vertex instead of an LC object. Falls back to {@link #computeLightCoords()} if any vertex is not on the 1/16 grid
+     * of the block.
+     *
      * @return The model
      */
-    public CCModel smoothNormals() {
-        ArrayList<PositionNormalEntry> map = new ArrayList<PositionNormalEntry>();
+    public CCModel computeLightCoordIndices() {
+        short[] indices = new short[verts.length];
         Vector3[] normals = normals();
-        nextvert: for (int k = 0; k < verts.length; k++) {
-            Vector3 vec = verts[k].vec;
-            for (PositionNormalEntry e : map) if (e.positionEqual(vec)) {
-                e.addNormal(normals[k]);
-                continue nextvert;
-            }
-
-            map.add(new PositionNormalEntry(vec).addNormal(normals[k]));
+        for (int i = 0; i < verts.length; i++) {
+            int index = LC.index(verts[i].vec, normals[i]);
+            if (index < 0) return computeLightCoords();
+            indices[i] = (short) index;
         }
 
-        for (PositionNormalEntry e : map) {
-            if (e.normals.size() <= 1) continue;
+        System.arraycopy(indices, 0, getOrAllocate(CCRenderState.lightCoordIndexAttrib), 0, indices.length);
+        // LC arrays take precedence in the pipeline
+        if (hasAttribute(CCRenderState.lightCoordAttrib))
+            attributes.set(CCRenderState.lightCoordAttrib.attributeIndex, null);
+        return this;
+    }
 
+    /**
+     * Averages all normals at the same position to produce a smooth lighting effect.
+     * 
+     * @return The model
+     */
+    public CCModel smoothNormals() {
+        return smoothNormals(0, 180);
+    }
+
+    /**
+     * Averages the normals of vertices at the same position to produce a smooth lighting effect.
+     *
+     * @param epsilon  Positions within this distance on every axis are treated as the same. 0 for exact matches
+     * @param maxAngle Normals are only averaged with normals within this angle in degrees, so sharper edges stay hard.
+     *                 180 averages all normals at a position
+     * @return The model
+     */
+    public CCModel smoothNormals(double epsilon, double maxAngle) {
+        Vector3[] normals = normals();
+        int n = verts.length;
+        PositionGroups groups = new PositionGroups(verts, epsilon);
+        int[] groupOf = new int[n];
+        for (int k = 0; k < n; k++) groupOf[k] = groups.add(k);
+
+        // members of each group in vertex order
+        int[] start = new int[groups.groupCount + 1];
+        for (int k = 0; k < n; k++) start[groupOf[k] + 1]++;
+        for (int g = 0; g < groups.groupCount; g++) start[g + 1] += start[g];
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, groups.groupCount);
+        for (int k = 0; k < n; k++) members[fill[groupOf[k]]++] = k;
+
+        if (maxAngle >= 180) {
             Vector3 new_n = new Vector3();
-            for (Vector3 n : e.normals) new_n.add(n);
+            for (int g = 0; g < groups.groupCount; g++) {
+                if (start[g + 1] - start[g] <= 1) continue;
+
+                new_n.set(0, 0, 0);
+                for (int i = start[g]; i < start[g + 1]; i++) new_n.add(normals[members[i]]);
 
-            new_n.normalize();
-            for (Vector3 n : e.normals) n.set(new_n);
+                new_n.normalize();
+                for (int i = start[g]; i < start[g + 1]; i++) normals[members[i]].set(new_n);
+            }
+            return this;
         }
 
+        double cosMax = Math.cos(Math.toRadians(maxAngle));
+        double[] orig = new double[n * 3];
+        for (int k = 0; k < n; k++) {
+            orig[k * 3] = normals[k].x;
+            orig[k * 3 + 1] = normals[k].y;
+            orig[k * 3 + 2] = normals[k].z;
+        }
+        for (int g = 0; g < groups.groupCount; g++) {
+            if (start[g + 1] - start[g] <= 1) continue;
+
+            for (int i = start[g]; i < start[g + 1]; i++) {
+                int a = members[i];
+                double ax = orig[a * 3], ay = orig[a * 3 + 1], az = orig[a * 3 + 2];
+                double amag = Math.sqrt(ax * ax + ay * ay + az * az);
+                double sx = 0, sy = 0, sz = 0;
+                int count = 0;
+                for (int j = start[g]; j < start[g + 1]; j++) {
+                    int b = members[j];
+                    double bx = orig[b * 3], by = orig[b * 3 + 1], bz = orig[b * 3 + 2];
+                    if (b != a && ax * bx + ay * by + az * bz < cosMax * amag * Math.sqrt(bx * bx + by * by + bz * bz))
+                        continue;
+
+                    sx += bx;
+                    sy += by;
+                    sz += bz;
+                    count++;
+                }
+                if (count > 1) normals[a].set(sx, sy, sz).normalize();
+            }
+        }
         return this;
     }
 
@@ -428,27 +586,52 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
     }
 
     public void render(CCRenderState state, double x, double y, double z, double u, double v) {
-        render(state, new Vector3(x, y, z).translation(), new UVTranslation(u, v));
+        render(state, translation(state, x, y, z), uvTranslation(state, u, v));
     }
 
     public void render(double x, double y, double z, double u, double v) {
-        render(CCRenderState.instance(), new Vector3(x, y, z).translation(), new UVTranslation(u, v));
+        render(CCRenderState.instance(), x, y, z, u, v);
     }
 
     public void render(CCRenderState state, double x, double y, double z, UVTransformation u) {
-        render(state, new Vector3(x, y, z).translation(), u);
+        render(state, translation(state, x, y, z), u);
     }
 
     public void render(double x, double y, double z, UVTransformation u) {
-        render(CCRenderState.instance(), new Vector3(x, y, z).translation(), u);
+        render(CCRenderState.instance(), x, y, z, u);
     }
 
     public void render(CCRenderState state, Transformation t, double u, double v) {
-        render(state, t, new UVTranslation(u, v));
+        render(state, t, uvTranslation(state, u, v));
     }
 
     public void render(Transformation t, double u, double v) {
-        render(CCRenderState.instance(), t, new UVTranslation(u, v));
+        render(CCRenderState.instance(), t, u, v);
+    }
+
+    /**
+     * Renders with two operations without allocating a varargs array
+     */
+    public void render(CCRenderState state, CCRenderState.IVertexOperation op1, CCRenderState.IVertexOperation op2) {
+        CCRenderState.IVertexOperation[] ops = state.opPair;
+        ops[0] = op1;
+        ops[1] = op2;
+        state.setPipelineInstance(this, 0, verts.length, ops);
+        ops[0] = ops[1] = null;
+        state.renderInstance();
+    }
+
+    private static Translation translation(CCRenderState state, double x, double y, double z) {
+        Translation t = state.translation;
+        t.vec.set(x, y, z);
+        return t;
+    }
+
+    private static UVTranslation uvTranslation(CCRenderState state, double u, double v) {
+        UVTranslation t = state.uvTranslation;
+        t.du = u;
+        t.dv = v;
+        return t;
     }
 
     public void render(CCRenderState state, CCRenderState.IVertexOperation... ops) {
@@ -475,6 +658,121 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         render(CCRenderState.instance(), start, end, ops);
     }
 
+    /**
+     * Renders the model once per instance, resolving the pipeline only once. Each instance is offset by its position
+     * after any Transformation in ops and multiplied by its colour in addition to any ColourMultiplier in ops.
+     *
+     * @param positions  x, y, z per instance
+     * @param colours    Colour per instance, or null
+     * @param brightness Brightness set before each instance, or null. Lighting operations in ops override it
+     * @param count      The number of instances
+     * @param ops        Operations to apply to every instance
+     */
+    public void renderInstances(CCRenderState state, double[] positions, int[] colours, int[] brightness, int count,
+            CCRenderState.IVertexOperation... ops) {
+        if (count == 0) return;
+
+        InstanceTransformation transform = new InstanceTransformation();
+        ColourMultiplier multiplier = colours != null ? new ColourMultiplier(0) : null;
+        int baseColour = -1;
+        boolean hasTransform = false, hasMultiplier = false;
+
+        CCRenderState.IVertexOperation[] instanceOps = Arrays.copyOf(ops, ops.length + 2);
+        int n = ops.length;
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] instanceof Transformation) {
+                transform.base = (Transformation) ops[i];
+                instanceOps[i] = transform;
+                hasTransform = true;
+            } else if (multiplier != null && ops[i] instanceof ColourMultiplier) {
+                baseColour = ((ColourMultiplier) ops[i]).colour;
+                instanceOps[i] = multiplier;
+                hasMultiplier = true;
+            }
+        }
+        if (!hasTransform) instanceOps[n++] = transform;
+        if (multiplier != null && !hasMultiplier) instanceOps[n++] = multiplier;
+
+        // neither op is redundant before the first instance is set, so both stay in the pipeline
+        state.setPipelineInstance(this, 0, verts.length, Arrays.copyOf(instanceOps, n));
+        final int colourBase = baseColour;
+        state.renderInstances(count, i -> {
+            transform.offset.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            if (multiplier != null) multiplier.colour = ColourRGBA.multiply(colourBase, colours[i]);
+            if (brightness != null) state.setBrightnessInstance(brightness[i]);
+        });
+    }
+
+    public void renderInstances(double[] positions, int[] colours, int[] brightness, int count,
+            CCRenderState.IVertexOperation... ops) {
+        renderInstances(CCRenderState.instance(), positions, colours, brightness, count, ops);
+    }
+
+    /**
+     * A transformation followed by a mutable translation, shares the Transformation operation id so it takes the
+     * place of the transformation it wraps in the pipeline. The wrapped transformation is loaded and operated as its
+     * own pipeline operation, so a TransformationList keeps its compiled form
+     */
+    private static class InstanceTransformation extends Transformation {
+
+        public Transformation base;
+        public final Vector3 offset = new Vector3();
+
+        @Override
+        public boolean load(CCRenderState state) {
+            super.load(state);
+            if (base != null) base.load(state);
+            return true;
+        }
+
+        @Override
+        public void operate(CCRenderState state) {
+            if (base != null) base.operate(state);
+            state.vert.vec.add(offset);
+        }
+
+        @Override
+        public void operateBatch(CCRenderState state, VertexBatch batch) {
+            if (base != null) base.operateBatch(state, batch);
+            double x = offset.x, y = offset.y, z = offset.z;
+            for (int i = 0; i < batch.count; i++) {
+                batch.x[i] += x;
+                batch.y[i] += y;
+                batch.z[i] += z;
+            }
+        }
+
+        @Override
+        public void apply(Vector3 vec) {
+            if (base != null) base.apply(vec);
+            vec.add(offset);
+        }
+
+        @Override
+        public void applyN(Vector3 normal) {
+            if (base != null) base.applyN(normal);
+        }
+
+        @Override
+        public void apply(Matrix4 mat) {
+            mat.translate(offset);
+            if (base != null) base.apply(mat);
+        }
+
+        @Override
+        @SideOnly(Side.CLIENT)
+        public void glApply() {
+            GL11.glTranslated(offset.x, offset.y, offset.z);
+            if (base != null) base.glApply();
+        }
+
+        @Override
+        public Transformation inverse() {
+            Translation inv = new Translation(-offset.x, -offset.y, -offset.z);
+            return base != null ? new TransformationList(inv, base.inverse()) : inv;
+        }
+    }
+
     public static CCModel quadModel(int numVerts) {
         return newModel(7, numVerts);
     }
@@ -509,13 +807,180 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         illegalAssert(m.matches(), "Malformed line: " + s);
     }
 
+    /**
+     * The whitespace separated tokens of a line from an obj file. Tokenizes in place with no regex or splitting so it
+     * can be used by many threads at once. Parsing and validation match the old regex based parser exactly.
+     */
+    private static class ObjLine {
+
+        private static final double[] POW10 = new double[23];
+
+        static {
+            POW10[0] = 1;
+            for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+        }
+
+        private String line;
+        private int[] tokStart = new int[16];
+        private int[] tokEnd = new int[16];
+        public int count;
+
+        private static boolean isSpace(char c) {
+            // the characters matched by \s
+            return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+        }
+
+        /**
+         * Splits the line into tokens, ignoring leading and trailing characters <= ' ' as String.trim does
+         */
+        public void set(String line) {
+            this.line = line;
+            count = 0;
+            int start = 0, end = line.length();
+            while (start < end && line.charAt(start) <= ' ') start++;
+            while (end > start && line.charAt(end - 1) <= ' ') end--;
+
+            int i = start;
+            while (i < end) {
+                int t = i;
+                while (i < end && !isSpace(line.charAt(i))) i++;
+                if (count == tokStart.length) {
+                    tokStart = Arrays.copyOf(tokStart, count * 2);
+                    tokEnd = Arrays.copyOf(tokEnd, count * 2);
+                }
+                tokStart[count] = t;
+                tokEnd[count++] = i;
+                while (i < end && isSpace(line.charAt(i))) i++;
+            }
+        }
+
+        /**
+         * @return True if the line has a first token equal to keyword followed by at least one more token
+         */
+        public boolean is(String keyword) {
+            return count > 1 && tokEnd[0] - tokStart[0] == keyword.length()
+                    && line.startsWith(keyword, tokStart[0]);
+        }
+
+        public boolean isComment() {
+            return count > 0 && line.charAt(tokStart[0]) == '#';
+        }
+
+        /**
+         * @return The tokens from index first onwards joined by single spaces
+         */
+        public String join(int first) {
+            StringBuilder sb = new StringBuilder();
+            for (int t = first; t < count; t++) {
+                if (t > first) sb.append(' ');
+                sb.append(line, tokStart[t], tokEnd[t]);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Throws unless every token after the keyword only contains the allowed characters, with at most maxSlashes
+         * '/' characters
+         */
+        public void assertTokens(String allowed, int maxSlashes) {
+            for (int t = 1; t < count; t++) {
+                int slashes = 0;
+                for (int i = tokStart[t]; i < tokEnd[t]; i++) {
+                    char c = line.charAt(i);
+                    if (c == '/' && ++slashes <= maxSlashes) continue;
+                    if (c >= '0' && c <= '9' || allowed.indexOf(c) >= 0) continue;
+
+                    throw new IllegalArgumentException("Malformed line: " + join(0));
+                }
+            }
+        }
+
+        /**
+         * Parses each token after the keyword as a double
+         */
+        public double[] parseDoubles() {
+            double[] values = new double[count - 1];
+            for (int t = 1; t < count; t++) values[t - 1] = parseDouble(tokStart[t], tokEnd[t]);
+            return values;
+        }
+
+        /**
+         * Exact fast path for plain decimals with at most 15 significant digits, where the digits and power of ten are
+         * both exact doubles and a single division is correctly rounded. Anything else goes to Double.parseDouble.
+         */
+        private double parseDouble(int start, int end) {
+            int i = start;
+            boolean neg = false;
+            char c = line.charAt(i);
+            if (c == '+' || c == '-') {
+                neg = c == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int significant = 0, fraction = 0, digits = 0;
+            boolean dot = false;
+            for (; i < end; i++) {
+                c = line.charAt(i);
+                if (c == '.' && !dot) {
+                    dot = true;
+                    continue;
+                }
+                if (c < '0' || c > '9') return Double.parseDouble(line.substring(start, end));
+
+                digits++;
+                if (dot) fraction++;
+                if (mantissa != 0 || c != '0') significant++;
+                mantissa = mantissa * 10 + (c - '0');
+                if (significant > 15 || fraction >= POW10.length)
+                    return Double.parseDouble(line.substring(start, end));
+            }
+            if (digits == 0) return Double.parseDouble(line.substring(start, end));
+
+            double d = mantissa / POW10[fraction];
+            return neg ? -d : d;
+        }
+
+        /**
+         * Parses a face vertex token of the form v, v/vt, v//vn or v/vt/vn. Missing indices are 0
+         */
+        public int[] parseFaceVertex(int t) {
+            int[] indices = new int[3];
+            int p = 0, partStart = tokStart[t];
+            for (int i = tokStart[t]; i <= tokEnd[t]; i++) {
+                if (i < tokEnd[t] && line.charAt(i) != '/') continue;
+
+                if (i > partStart) indices[p] = parseInt(partStart, i);
+                p++;
+                partStart = i + 1;
+            }
+            return indices;
+        }
+
+        private int parseInt(int start, int end) {
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                value = value * 10 + (line.charAt(i) - '0');
+                if (value > Integer.MAX_VALUE) return Integer.parseInt(line.substring(start, end));
+            }
+            return (int) value;
+        }
+    }
+
     private static final Pattern vertPattern = Pattern.compile("v(?: ([\\d\\.+-]+))+");
     private static final Pattern uvwPattern = Pattern.compile("vt(?: ([\\d\\.+-]+))+");
     private static final Pattern normalPattern = Pattern.compile("vn(?: ([\\d\\.+-]+))+");
     private static final Pattern polyPattern = Pattern.compile("f(?: ((?:\\d*)(?:/\\d*)?(?:/\\d*)?))+");
+    /**
+     * @deprecated Shared between threads, no longer used by parseObjModels
+     */
+    @Deprecated
     public static final Matcher vertMatcher = vertPattern.matcher("");
+    @Deprecated
     public static final Matcher uvwMatcher = uvwPattern.matcher("");
+    @Deprecated
     public static final Matcher normalMatcher = normalPattern.matcher("");
+    @Deprecated
     public static final Matcher polyMatcher = polyPattern.matcher("");
 
     /**
@@ -540,56 +1005,52 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         String modelName = "unnamed";
 
         BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+        ObjLine line = new ObjLine();
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            line = line.replaceAll("\\s+", " ").trim();
-            if (line.startsWith("#") || line.length() == 0) continue;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line.set(text);
+            if (line.count == 0 || line.isComment()) continue;
 
-            if (line.startsWith("v ")) {
-                assertMatch(vertMatcher, line);
-                double[] values = parseDoubles(line.substring(2), " ");
+            if (line.is("v")) {
+                line.assertTokens(".+-", 0);
+                double[] values = line.parseDoubles();
                 illegalAssert(values.length >= 3, "Vertices must have x, y and z components");
                 Vector3 vert = new Vector3(values[0], values[1], values[2]);
                 coordSystem.apply(vert);
                 verts.add(vert);
                 continue;
             }
-            if (line.startsWith("vt ")) {
-                assertMatch(uvwMatcher, line);
-                double[] values = parseDoubles(line.substring(3), " ");
+            if (line.is("vt")) {
+                line.assertTokens(".+-", 0);
+                double[] values = line.parseDoubles();
                 illegalAssert(values.length >= 2, "Tex Coords must have u, and v components");
                 uvs.add(new Vector3(values[0], 1 - values[1], 0));
                 continue;
             }
-            if (line.startsWith("vn ")) {
-                assertMatch(normalMatcher, line);
-                double[] values = parseDoubles(line.substring(3), " ");
+            if (line.is("vn")) {
+                line.assertTokens(".+-", 0);
+                double[] values = line.parseDoubles();
                 illegalAssert(values.length >= 3, "Normals must have x, y and z components");
                 Vector3 norm = new Vector3(values[0], values[1], values[2]).normalize();
                 coordSystem.applyN(norm);
                 normals.add(norm);
                 continue;
             }
-            if (line.startsWith("f ")) {
-                assertMatch(polyMatcher, line);
-                String[] av = line.substring(2).split(" ");
-                illegalAssert(av.length >= 3, "Polygons must have at least 3 vertices");
-                int[][] polyVerts = new int[av.length][3];
-                for (int i = 0; i < av.length; i++) {
-                    String[] as = av[i].split("/");
-                    for (int p = 0; p < as.length; p++)
-                        if (as[p].length() > 0) polyVerts[i][p] = Integer.parseInt(as[p]);
-                }
+            if (line.is("f")) {
+                line.assertTokens("", 2);
+                illegalAssert(line.count - 1 >= 3, "Polygons must have at least 3 vertices");
+                int[][] polyVerts = new int[line.count - 1][];
+                for (int i = 0; i < polyVerts.length; i++) polyVerts[i] = line.parseFaceVertex(i + 1);
                 if (vp == 3) triangulate(polys, polyVerts);
                 else quadulate(polys, polyVerts);
             }
-            if (line.startsWith("g ")) {
+            if (line.is("g")) {
                 if (!polys.isEmpty()) {
                     modelMap.put(modelName, createModel(verts, uvs, normals, vertexMode, polys));
                     polys.clear();
                 }
-                modelName = line.substring(2);
+                modelName = line.join(1);
             }
         }
 
@@ -670,6 +1131,28 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         }
     }
 
+    /**
+     * Parses many obj files in parallel on the common ForkJoinPool, for use during loading
+     *
+     * @param resources   The resources for the obj files
+     * @param vertexMode  The vertex mode to create the models for (GL_TRIANGLES or GL_QUADS)
+     * @param coordSystem The cooridnate system transformation to apply, shared between threads
+     * @return A map of each resource to its map of group names to models, in the iteration order of resources
+     */
+    public static Map<ResourceLocation, Map<String, CCModel>> parseObjModels(Collection<ResourceLocation> resources,
+            int vertexMode, Transformation coordSystem) {
+        ArrayList<ResourceLocation> list = new ArrayList<>(resources);
+        ArrayList<ForkJoinTask<Map<String, CCModel>>> tasks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            ResourceLocation res = list.get(i);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> parseObjModels(res, vertexMode, coordSystem)));
+        }
+
+        LinkedHashMap<ResourceLocation, Map<String, CCModel>> models = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i++) models.put(list.get(i), tasks.get(i).join());
+        return models;
+    }
+
     public static CCModel createModel(List<Vector3> verts, List<Vector3> uvs, List<Vector3> normals, int vertexMode,
             List<int[]> polys) {
         int vp = vertexMode == 7 ? 4 : 3;
@@ -791,6 +1274,15 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         return copy().apply(new TransformationList(sideRotations[side1].inverse(), sideRotations[side2]).at(point));
     }
 
+    /**
+     * Like {@link #sidedCopy} but shares the arrays of this model, see {@link ModelVariant}
+     */
+    public ModelVariant sidedVariant(int side1, int side2, Vector3 point) {
+        return new ModelVariant(
+                this,
+                new TransformationList(sideRotations[side1].inverse(), sideRotations[side2]).at(point));
+    }
+
     /**
      * Copies length vertices and normals
      */
@@ -806,7 +1298,8 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
     }
 
     /**
-     * Generate models rotated to the other 5 sides of the block
+     * Generate models rotated to the other 5 sides of the block. Each is a full copy, see
+     * {@link #generateSidedVariants} for models that share the arrays of this one
      * 
      * @param models An array of 6 models
      * @param side   The side of this model
@@ -821,7 +1314,8 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
     }
 
     /**
-     * Generate models rotated to the other 3 horizontal of the block
+     * Generate models rotated to the other 3 horizontal of the block. Each is a full copy, see
+     * {@link #generateSidedVariantsH} for models that share the arrays of this one
      * 
      * @param models An array of 4 models
      * @param side   The side of this model
@@ -835,6 +1329,39 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         }
     }
 
+    /**
+     * Like {@link #generateSidedModels}, but the other 5 sides are {@link ModelVariant}s of the model at side
+     *
+     * @param models An array of 6 models, with a CCModel at side
+     * @param side   The side of the model
+     * @param point  The rotation point
+     */
+    public static void generateSidedVariants(CCRenderState.IVertexSource[] models, int side, Vector3 point) {
+        CCModel model = (CCModel) models[side];
+        for (int s = 0; s < 6; s++) {
+            if (s == side) continue;
+
+            models[s] = model.sidedVariant(side, s, point);
+        }
+    }
+
+    /**
+     * Like {@link #generateSidedModelsH}, but the other 3 horizontal sides are {@link ModelVariant}s of the model at
+     * side
+     *
+     * @param models An array of 6 models, with a CCModel at side
+     * @param side   The side of the model
+     * @param point  The rotation point
+     */
+    public static void generateSidedVariantsH(CCRenderState.IVertexSource[] models, int side, Vector3 point) {
+        CCModel model = (CCModel) models[side];
+        for (int s = 2; s < 6; s++) {
+            if (s == side) continue;
+
+            models[s] = model.sidedVariant(side, s, point);
+        }
+    }
+
     public CCModel backfacedCopy() {
         return generateBackface(this, 0, copy(), 0, verts.length);
     }
@@ -958,12 +1485,26 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         return generateBackface(model, 0, model, verts.length, verts.length);
     }
 
+    /**
+     * Like {@link #twoFacedCopy} but shares the arrays of this model, see {@link ModelVariant}
+     */
+    public ModelVariant twoFacedVariant() {
+        return new ModelVariant(this, new RedundantTransformation(), true);
+    }
+
     public CCModel copy() {
         CCModel model = newModel(vertexMode, verts.length);
         copy(this, 0, model, 0, verts.length);
         return model;
     }
 
+    /**
+     * Like {@link #copy} but shares the arrays of this model, see {@link ModelVariant}
+     */
+    public ModelVariant variant() {
+        return new ModelVariant(this);
+    }
+
     /**
      * @return The average of all vertices, for bones.
      */
@@ -0,0 +1,169 @@
+package codechicken.lib.render;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.util.ResourceLocation;
+
+import org.apache.logging.log4j.LogManager;
+
+import codechicken.lib.vec.RedundantTransformation;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * On-disk cache of parsed and post-processed obj models in the {@link CCModelSerializer} format. Entries are keyed by
+ * a SHA-1 of the resource bytes, vertex mode, coordinate system and processing flags, so a changed resource or
+ * different processing simply misses and is parsed again. Hits are memory mapped and skip parsing and processing.
+ * <p>
+ * The coordinate system is identified by its effect on the origin and the unit axes, which is exact for affine
+ * transformations.
+ */
+public class CCModelCache {
+
+    public static final int COMPUTE_NORMALS = 1;
+    /**
+     * Applied after COMPUTE_NORMALS
+     */
+    public static final int SMOOTH_NORMALS = 2;
+    public static final int COMPUTE_LIGHT_COORDS = 4;
+
+    private static CCModelCache instance;
+
+    public final File dir;
+
+    public CCModelCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return A cache in the cache/ccl_models folder of the minecraft directory
+     */
+    public static synchronized CCModelCache instance() {
+        if (instance == null)
+            instance = new CCModelCache(new File(Minecraft.getMinecraft().mcDataDir, "cache/ccl_models"));
+        return instance;
+    }
+
+    /**
+     * Parses and processes a WaveFront Obj file, or loads the result of a previous launch from the cache
+     *
+     * @param res         The resource for the obj file
+     * @param vertexMode  The vertex mode to create the model for (GL_TRIANGLES or GL_QUADS)
+     * @param coordSystem The cooridnate system transformation to apply
+     * @param flags       A combination of COMPUTE_NORMALS, SMOOTH_NORMALS and COMPUTE_LIGHT_COORDS
+     * @return A map of group names to models
+     */
+    public Map<String, CCModel> parseObjModels(ResourceLocation res, int vertexMode, Transformation coordSystem,
+            int flags) {
+        try (InputStream in = Minecraft.getMinecraft().getResourceManager().getResource(res).getInputStream()) {
+            return parseObjModels(CCModelSerializer.readFully(in), vertexMode, coordSystem, flags);
+        } catch (Exception e) {
+            throw new RuntimeException("failed to load model: " + res, e);
+        }
+    }
+
+    public Map<String, CCModel> parseObjModels(byte[] data, int vertexMode, Transformation coordSystem, int flags)
+            throws IOException {
+        File file = new File(dir, key(data, vertexMode, coordSystem, flags) + ".ccm");
+        if (file.isFile()) {
+            try {
+                return CCModelSerializer.readModels(file);
+            } catch (IOException e) {
+                LogManager.getLogger("CodeChickenLib").warn("Discarding invalid model cache entry: " + file, e);
+            }
+        }
+
+        Map<String, CCModel> models = CCModel.parseObjModels(new ByteArrayInputStream(data), vertexMode, coordSystem);
+        process(models, flags);
+        try {
+            write(file, models);
+        } catch (IOException e) {
+            LogManager.getLogger("CodeChickenLib").warn("Failed to write model cache entry: " + file, e);
+        }
+        return models;
+    }
+
+    public static void process(Map<String, CCModel> models, int flags) {
+        for (CCModel m : models.values()) {
+            if ((flags & COMPUTE_NORMALS) != 0) m.computeNormals();
+            if ((flags & SMOOTH_NORMALS) != 0) m.smoothNormals();
+            if ((flags & COMPUTE_LIGHT_COORDS) != 0) m.computeLightCoords();
+        }
+    }
+
+    /**
+     * Writes to a temporary file first so concurrent loads never see a partial entry
+     */
+    private void write(File file, Map<String, CCModel> models) throws IOException {
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) throw new IOException("Failed to create " + dir);
+
+        File tmp = File.createTempFile("model", ".tmp", dir);
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                CCModelSerializer.writeModels(models, out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    public static String key(byte[] data, int vertexMode, Transformation coordSystem, int flags) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (coordSystem == null) coordSystem = new RedundantTransformation();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        try {
+            dout.writeInt(CCModelSerializer.VERSION);
+            dout.writeInt(vertexMode);
+            dout.writeInt(flags);
+            Vector3 vec = new Vector3();
+            coordSystem.apply(vec);
+            writeVector(dout, vec);
+            for (int i = 0; i < 3; i++) {
+                coordSystem.apply(vec = axis(i));
+                writeVector(dout, vec);
+                coordSystem.applyN(vec = axis(i));
+                writeVector(dout, vec);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(data);
+        digest.update(bout.toByteArray());
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) sb.append(Character.forDigit(b >> 4 & 0xF, 16))
+                .append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    private static Vector3 axis(int i) {
+        return new Vector3(i == 0 ? 1 : 0, i == 1 ? 1 : 0, i == 2 ? 1 : 0);
+    }
+
+    private static void writeVector(DataOutputStream dout, Vector3 vec) throws IOException {
+        dout.writeDouble(vec.x);
+        dout.writeDouble(vec.y);
+        dout.writeDouble(vec.z);
+    }
+}
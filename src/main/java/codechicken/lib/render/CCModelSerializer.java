@@ -0,0 +1,286 @@
+package codechicken.lib.render;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import codechicken.lib.lighting.LC;
+import codechicken.lib.render.CCRenderState.VertexAttribute;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Compact binary form of a map of named CCModels, including vertices and all attribute slots. Files are written
+ * big-endian with a DataOutputStream and read back from a ByteBuffer, so they can be memory mapped with
+ * {@link #readModels(File)}.
+ * <p>
+ * Layout: magic, version, model count, then per model the name, vertex mode, vertex count, a flag byte, x, y, z, u, v
+ * doubles per vertex, UV.tex per vertex if any is non zero, and the non null attribute slots. Each slot records its
+ * position in {@link #attributes} and array type. Only the attributes of CCRenderState in that list can be written, as
+ * the index of any other attribute depends on the order mods register them in.
+ */
+@SuppressWarnings("ForLoopReplaceableByForEach")
+public class CCModelSerializer {
+
+    public static final int MAGIC = 0x43434D42; // CCMB
+    public static final int VERSION = 2;
+
+    private static final int FLAG_TEXTURES = 1;
+
+    private static final int TYPE_VECTOR3 = 1;
+    private static final int TYPE_LC = 2;
+    private static final int TYPE_INT = 3;
+    private static final int TYPE_SHORT = 4;
+
+    /**
+     * The attributes that can be written, a slot is identified by its position in this array. Only append to it
+     */
+    private static final VertexAttribute<?>[] attributes = new VertexAttribute<?>[] { CCRenderState.normalAttrib,
+            CCRenderState.colourAttrib, CCRenderState.lightingAttrib, CCRenderState.sideAttrib,
+            CCRenderState.lightCoordAttrib, CCRenderState.lightCoordIndexAttrib };
+
+    public static void writeModels(Map<String, CCModel> models, OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC);
+        dout.writeInt(VERSION);
+        dout.writeInt(models.size());
+        for (Map.Entry<String, CCModel> e : models.entrySet()) {
+            byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+            dout.writeInt(name.length);
+            dout.write(name);
+            writeModel(e.getValue(), dout);
+        }
+        dout.flush();
+    }
+
+    public static byte[] writeModels(Map<String, CCModel> models) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try {
+            writeModels(models, bout);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bout.toByteArray();
+    }
+
+    private static void writeModel(CCModel model, DataOutputStream dout) throws IOException {
+        Vertex5[] verts = model.verts;
+        int n = verts.length;
+        boolean textures = false;
+        for (int i = 0; i < n; i++) if (verts[i].uv.tex != 0) {
+            textures = true;
+            break;
+        }
+
+        dout.writeByte(model.vertexMode);
+        dout.writeInt(n);
+        dout.writeByte(textures ? FLAG_TEXTURES : 0);
+        for (int i = 0; i < n; i++) {
+            Vertex5 vert = verts[i];
+            dout.writeDouble(vert.vec.x);
+            dout.writeDouble(vert.vec.y);
+            dout.writeDouble(vert.vec.z);
+            dout.writeDouble(vert.uv.u);
+            dout.writeDouble(vert.uv.v);
+        }
+        if (textures) for (int i = 0; i < n; i++) dout.writeInt(verts[i].uv.tex);
+
+        int slots = 0;
+        for (int a = 0; a < model.attributes.size(); a++) if (model.attributes.get(a) != null) slots++;
+        dout.writeInt(slots);
+
+        for (int a = 0; a < model.attributes.size(); a++) {
+            Object array = model.attributes.get(a);
+            if (array == null) continue;
+
+            int id = attributeId(a);
+            if (id < 0) throw new IllegalArgumentException(
+                    "Unsupported attribute " + a + ", only attributes of CCRenderState can be written");
+            dout.writeInt(id);
+            if (array instanceof Vector3[]) {
+                Vector3[] vecs = (Vector3[]) array;
+                dout.writeByte(TYPE_VECTOR3);
+                writePresence(vecs, n, dout);
+                for (int i = 0; i < n; i++) if (vecs[i] != null) {
+                    dout.writeDouble(vecs[i].x);
+                    dout.writeDouble(vecs[i].y);
+                    dout.writeDouble(vecs[i].z);
+                }
+            } else if (array instanceof LC[]) {
+                LC[] lcs = (LC[]) array;
+                dout.writeByte(TYPE_LC);
+                writePresence(lcs, n, dout);
+                for (int i = 0; i < n; i++) if (lcs[i] != null) {
+                    dout.writeByte(lcs[i].side);
+                    dout.writeFloat(lcs[i].fa);
+                    dout.writeFloat(lcs[i].fb);
+                    dout.writeFloat(lcs[i].fc);
+                    dout.writeFloat(lcs[i].fd);
+                }
+            } else if (array instanceof int[]) {
+                int[] ints = (int[]) array;
+                dout.writeByte(TYPE_INT);
+                for (int i = 0; i < n; i++) dout.writeInt(ints[i]);
+            } else if (array instanceof short[]) {
+                short[] shorts = (short[]) array;
+                dout.writeByte(TYPE_SHORT);
+                for (int i = 0; i < n; i++) dout.writeShort(shorts[i]);
+            } else throw new IllegalArgumentException(
+                    "Unsupported attribute array type: " + array.getClass().getSimpleName() + " for attribute " + a);
+        }
+    }
+
+    private static int attributeId(int attributeIndex) {
+        for (int i = 0; i < attributes.length; i++) if (attributes[i].attributeIndex == attributeIndex) return i;
+        return -1;
+    }
+
+    /**
+     * Writes a byte, 1 if the array contains nulls followed by a byte per element which is 1 for non null elements
+     */
+    private static void writePresence(Object[] array, int n, DataOutputStream dout) throws IOException {
+        boolean nulls = false;
+        for (int i = 0; i < n; i++) if (array[i] == null) {
+            nulls = true;
+            break;
+        }
+
+        dout.writeByte(nulls ? 1 : 0);
+        if (nulls) for (int i = 0; i < n; i++) dout.writeByte(array[i] != null ? 1 : 0);
+    }
+
+    /**
+     * Reads a map of models from the remaining bytes of the buffer, which must be big-endian
+     *
+     * @return A map of names to models in the order they were written
+     * @throws IOException If the data is not a valid model file
+     */
+    public static Map<String, CCModel> readModels(ByteBuffer buf) throws IOException {
+        try {
+            if (buf.getInt() != MAGIC) throw new IOException("Not a CCModel file");
+            int version = buf.getInt();
+            if (version != VERSION) throw new IOException("Unsupported CCModel file version: " + version);
+
+            int count = buf.getInt();
+            LinkedHashMap<String, CCModel> models = new LinkedHashMap<>();
+            for (int m = 0; m < count; m++) {
+                byte[] name = new byte[buf.getInt()];
+                buf.get(name);
+                models.put(new String(name, StandardCharsets.UTF_8), readModel(buf));
+            }
+            return models;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt CCModel file", e);
+        }
+    }
+
+    /**
+     * Memory maps the file and reads a map of models from it
+     */
+    public static Map<String, CCModel> readModels(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readModels(buf);
+        }
+    }
+
+    public static Map<String, CCModel> readModels(InputStream in) throws IOException {
+        return readModels(ByteBuffer.wrap(readFully(in)));
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] b = new byte[8192];
+        int read;
+        while ((read = in.read(b)) > 0) bout.write(b, 0, read);
+        return bout.toByteArray();
+    }
+
+    private static CCModel readModel(ByteBuffer buf) throws IOException {
+        int vertexMode = buf.get();
+        int n = buf.getInt();
+        int flags = buf.get();
+        if (vertexMode != 4 && vertexMode != 7) throw new IOException("Invalid vertex mode: " + vertexMode);
+        if (n < 0 || n * 40L > buf.remaining()) throw new IOException("Invalid vertex count: " + n);
+
+        double[] data = new double[n * 5];
+        buf.asDoubleBuffer().get(data);
+        buf.position(buf.position() + data.length * 8);
+
+        int[] textures = null;
+        if ((flags & FLAG_TEXTURES) != 0) {
+            textures = new int[n];
+            buf.asIntBuffer().get(textures);
+            buf.position(buf.position() + n * 4);
+        }
+
+        CCModel model = CCModel.newModel(vertexMode, n);
+        for (int i = 0; i < n; i++) {
+            int k = i * 5;
+            model.verts[i] = new Vertex5(
+                    data[k],
+                    data[k + 1],
+                    data[k + 2],
+                    data[k + 3],
+                    data[k + 4],
+                    textures != null ? textures[i] : 0);
+        }
+
+        int slots = buf.getInt();
+        for (int s = 0; s < slots; s++) {
+            int id = buf.getInt();
+            int type = buf.get();
+            if (id < 0 || id >= attributes.length) throw new IOException("Unknown attribute: " + id);
+
+            Object array = model.getOrAllocate((VertexAttribute<Object>) attributes[id]);
+            if (type != typeOf(array)) throw new IOException("Mismatched type for attribute " + id);
+
+            if (type == TYPE_VECTOR3) {
+                Vector3[] vecs = (Vector3[]) array;
+                boolean[] present = readPresence(buf, n);
+                for (int i = 0; i < n; i++) if (present == null || present[i])
+                    vecs[i] = new Vector3(buf.getDouble(), buf.getDouble(), buf.getDouble());
+            } else if (type == TYPE_LC) {
+                LC[] lcs = (LC[]) array;
+                boolean[] present = readPresence(buf, n);
+                for (int i = 0; i < n; i++) if (present == null || present[i])
+                    lcs[i] = new LC(buf.get(), buf.getFloat(), buf.getFloat(), buf.getFloat(), buf.getFloat());
+            } else if (type == TYPE_INT) {
+                buf.asIntBuffer().get((int[]) array);
+                buf.position(buf.position() + n * 4);
+            } else {
+                buf.asShortBuffer().get((short[]) array);
+                buf.position(buf.position() + n * 2);
+            }
+        }
+        return model;
+    }
+
+    private static int typeOf(Object array) {
+        if (array instanceof Vector3[]) return TYPE_VECTOR3;
+        if (array instanceof LC[]) return TYPE_LC;
+        if (array instanceof int[]) return TYPE_INT;
+        if (array instanceof short[]) return TYPE_SHORT;
+        return 0;
+    }
+
+    /**
+     * @return null if all elements are present
+     */
+    private static boolean[] readPresence(ByteBuffer buf, int n) {
+        if (buf.get() == 0) return null;
+
+        boolean[] present = new boolean[n];
+        for (int i = 0; i < n; i++) present[i] = buf.get() != 0;
+        return present;
+    }
+}
@@ -1,9 +1,13 @@
 package codechicken.lib.render;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.IVertexSource;
 import codechicken.lib.render.CCRenderState.VertexAttribute;
 
 @SuppressWarnings("ForLoopReplaceableByForEach")
@@ -72,8 +76,124 @@ public class CCRenderPipeline {
     private final ArrayList<IVertexOperation> ops = new ArrayList<>();
     private final ArrayList<PipelineNode> nodes = new ArrayList<>();
     private final ArrayList<IVertexOperation> sorted = new ArrayList<>();
+    /**
+     * Parallels sorted, true for each IFaceOperation
+     */
+    private boolean[] faceOps = new boolean[0];
+    private boolean hasFaceOps;
     private PipelineNode loading;
 
+    /**
+     * Per pipeline attribute slots, indexed by VertexAttribute.attributeIndex. Holds the active flag and the array
+     * bound from the current model so the shared attribute instances carry no render state.
+     */
+    private boolean[] activeAttribs = new boolean[0];
+    private Object[] attribRefs = new Object[0];
+
+    /**
+     * Set to false to resolve the dependencies of every pipeline from scratch.
+     */
+    public boolean useCache = true;
+    private final PipelineCache cache = new PipelineCache();
+    private final PipelineKey lookupKey = new PipelineKey();
+    /**
+     * True while the requested ops are loaded for the cache key. Dependencies requested by them are recorded in
+     * loadLog instead of being added, so a miss can add them without loading the ops again
+     */
+    private boolean replaying;
+    private boolean[] loadResults = new boolean[0];
+    /**
+     * The dependency calls of each requested op while replaying, from loadLogStart[i] to loadLogStart[i + 1]. Entries
+     * are the operation id or attribute index shifted left 2, or'd with LOG_REQUIREMENT, LOG_DEPENDENCY or
+     * LOG_ATTRIBUTE
+     */
+    private int[] loadLog = new int[16];
+    private int[] loadLogStart = new int[1];
+    private int loadLogLength;
+    private static final int LOG_REQUIREMENT = 0, LOG_DEPENDENCY = 1, LOG_ATTRIBUTE = 2;
+
+    /**
+     * Null unless {@link PipelineProfiler#ENABLED}. opCounters parallels sorted
+     */
+    final PipelineProfiler.Recorder recorder = PipelineProfiler.ENABLED ? PipelineProfiler.register() : null;
+    private PipelineProfiler.OpCounter[] opCounters = new PipelineProfiler.OpCounter[0];
+
+    /**
+     * Identifies a resolved pipeline by the operation ids and load results of the requested ops, the state flags and
+     * the attributes provided by the model. Mutable so lookups don't allocate, keys stored in the cache are copies.
+     */
+    private static final class PipelineKey {
+
+        private int[] data = new int[16];
+        private int length;
+        private int hash;
+
+        public void clear() {
+            length = 0;
+            hash = 1;
+        }
+
+        public void add(int i) {
+            if (length == data.length) data = Arrays.copyOf(data, length * 2);
+            data[length++] = i;
+            hash = 31 * hash + i;
+        }
+
+        public PipelineKey copy() {
+            PipelineKey key = new PipelineKey();
+            key.data = Arrays.copyOf(data, length);
+            key.length = length;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PipelineKey)) return false;
+            PipelineKey key = (PipelineKey) obj;
+            if (key.length != length || key.hash != hash) return false;
+            for (int i = 0; i < length; i++) if (key.data[i] != data[i]) return false;
+            return true;
+        }
+    }
+
+    /**
+     * The sorted op list of a resolved pipeline. Entries >= 0 index the requested ops, entries < 0 are attributes
+     * added as dependencies, encoded as -(attributeIndex + 1)
+     */
+    private static final class CompiledPipeline {
+
+        private final int[] order;
+        private final int[] attribs;
+
+        public CompiledPipeline(int[] order, int[] attribs) {
+            this.order = order;
+            this.attribs = attribs;
+        }
+    }
+
+    /**
+     * Resolved pipelines by key, evicting the least recently used beyond {@link #SIZE}
+     */
+    private static final class PipelineCache extends LinkedHashMap<PipelineKey, CompiledPipeline> {
+
+        private static final int SIZE = 256;
+
+        private PipelineCache() {
+            super(16, 0.75F, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PipelineKey, CompiledPipeline> eldest) {
+            return size() > SIZE;
+        }
+    }
+
     public void setPipeline(IVertexOperation... ops) {
         this.ops.clear();
         for (int i = 0; i < ops.length; i++) this.ops.add(ops[i]);
@@ -86,9 +206,14 @@ public class CCRenderPipeline {
     }
 
     private void unbuild() {
-        for (int i = 0; i < attribs.size(); i++) attribs.get(i).active = false;
+        for (int i = 0; i < attribs.size(); i++) {
+            VertexAttribute attrib = attribs.get(i);
+            activeAttribs[attrib.attributeIndex] = false;
+            attribRefs[attrib.attributeIndex] = null;
+        }
         attribs.clear();
         sorted.clear();
+        hasFaceOps = false;
     }
 
     public void rebuild() {
@@ -96,43 +221,259 @@ public class CCRenderPipeline {
 
         // ensure enough nodes for all ops
         while (nodes.size() < this.renderState.operationCount()) nodes.add(new PipelineNode());
+        // and slots for all attributes
+        if (activeAttribs.length < CCRenderState.attributeCount()) {
+            activeAttribs = Arrays.copyOf(activeAttribs, CCRenderState.attributeCount());
+            attribRefs = Arrays.copyOf(attribRefs, CCRenderState.attributeCount());
+        }
         unbuild();
+        if (PipelineProfiler.ENABLED) recorder.rebuilds++;
+
+        int numOps = ops.size();
+        if (useCache && loadCached(numOps)) {
+            findFaceOps();
+            if (PipelineProfiler.ENABLED) {
+                recorder.cachedRebuilds++;
+                bindCounters();
+            }
+            return;
+        }
 
         if (this.renderState.useNormals) addAttribute(this.renderState.normalAttrib);
         if (this.renderState.useColour) addAttribute(this.renderState.colourAttrib);
         if (this.renderState.computeLighting) addAttribute(this.renderState.lightingAttrib);
 
+        boolean loadedForKey = useCache;
         for (int i = 0; i < ops.size(); i++) {
             IVertexOperation op = ops.get(i);
             loading = nodes.get(op.operationID());
-            boolean loaded = op.load(renderState);
+            boolean loaded;
+            if (loadedForKey && i < numOps) {
+                loaded = loadResults[i];
+                replayLoad(i);
+            } else loaded = op.load(renderState);
             if (loaded) loading.op = op;
 
             if (op instanceof VertexAttribute) if (loaded) attribs.add((VertexAttribute) op);
-            else((VertexAttribute) op).active = false;
+            else setActive((VertexAttribute) op, false);
         }
 
         for (int i = 0; i < nodes.size(); i++) nodes.get(i).add();
+        findFaceOps();
+        if (PipelineProfiler.ENABLED) bindCounters();
+
+        // drop the attributes appended as dependencies so the next rebuild starts from the requested ops
+        while (ops.size() > numOps) ops.remove(ops.size() - 1);
+        if (useCache) cache.put(lookupKey.copy(), compile(numOps));
+    }
+
+    /**
+     * Loads the requested ops once, recording their load results and dependencies, and if a pipeline with the same key
+     * has been resolved before, binds the attributes and restores its op order. Attributes that were not requested are
+     * loaded once more to bind their arrays. On a miss, rebuild resolves the pipeline from the recorded loads. This
+     * assumes operations with the same id request the same dependencies for the same load result, model attributes
+     * and state flags.
+     *
+     * @return false if the pipeline needs to be resolved
+     */
+    private boolean loadCached(int numOps) {
+        PipelineKey key = lookupKey;
+        key.clear();
+        key.add((renderState.useNormals ? 1 : 0) | (renderState.useColour ? 2 : 0)
+                | (renderState.computeLighting ? 4 : 0));
+        IVertexSource model = renderState.model;
+        for (int i = 0; i < CCRenderState.attributeCount(); i++) {
+            VertexAttribute<?> attrib = CCRenderState.getAttribute(i);
+            key.add((model.hasAttribute(attrib) ? 1 : 0) | (model.getAttributes(attrib) != null ? 2 : 0));
+        }
+
+        if (loadResults.length < numOps) {
+            loadResults = new boolean[numOps];
+            loadLogStart = new int[numOps + 1];
+        }
+        loadLogLength = 0;
+        replaying = true;
+        try {
+            for (int i = 0; i < numOps; i++) {
+                IVertexOperation op = ops.get(i);
+                loadLogStart[i] = loadLogLength;
+                boolean loaded = loadResults[i] = op.load(renderState);
+                key.add(op.operationID() << 1 | (loaded ? 1 : 0));
+            }
+            loadLogStart[numOps] = loadLogLength;
+
+            CompiledPipeline compiled = cache.get(key);
+            if (compiled == null) return false;
+
+            for (int i = 0; i < compiled.attribs.length; i++) {
+                VertexAttribute attrib = CCRenderState.getAttribute(compiled.attribs[i]);
+                setActive(attrib, true);
+                attribs.add(attrib);
+                if (!requested(attrib, numOps)) attrib.load(renderState);
+            }
+            for (int i = 0; i < compiled.order.length; i++) {
+                int j = compiled.order[i];
+                sorted.add(j >= 0 ? ops.get(j) : CCRenderState.getAttribute(-j - 1));
+            }
+            return true;
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private boolean requested(IVertexOperation op, int numOps) {
+        for (int i = 0; i < numOps; i++) if (ops.get(i) == op) return true;
+        return false;
+    }
+
+    private void log(int entry) {
+        if (loadLogLength == loadLog.length) loadLog = Arrays.copyOf(loadLog, loadLogLength * 2);
+        loadLog[loadLogLength++] = entry;
+    }
+
+    /**
+     * Adds the dependencies recorded when requested op i was loaded by loadCached
+     */
+    private void replayLoad(int i) {
+        for (int k = loadLogStart[i]; k < loadLogStart[i + 1]; k++) {
+            int entry = loadLog[k], index = entry >> 2;
+            switch (entry & 3) {
+                case LOG_REQUIREMENT:
+                    addRequirement(index);
+                    break;
+                case LOG_DEPENDENCY:
+                    addDependency(CCRenderState.getAttribute(index));
+                    break;
+                default:
+                    addAttribute(CCRenderState.getAttribute(index));
+            }
+        }
+    }
+
+    /**
+     * Marks the face operations in sorted. They keep their place in the dependency order
+     */
+    private void findFaceOps() {
+        if (faceOps.length < sorted.size()) faceOps = new boolean[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++)
+            hasFaceOps |= faceOps[i] = sorted.get(i) instanceof CCRenderState.IFaceOperation;
+    }
+
+    private void bindCounters() {
+        if (opCounters.length < sorted.size()) opCounters = new PipelineProfiler.OpCounter[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) opCounters[i] = recorder.counter(sorted.get(i));
+    }
+
+    private CompiledPipeline compile(int numOps) {
+        int[] order = new int[sorted.size()];
+        for (int i = 0; i < order.length; i++) {
+            IVertexOperation op = sorted.get(i);
+            int j = numOps - 1;
+            while (j >= 0 && ops.get(j) != op) j--;
+            order[i] = j >= 0 ? j : -((VertexAttribute) op).attributeIndex - 1;
+        }
+        int[] attribIndices = new int[attribs.size()];
+        for (int i = 0; i < attribIndices.length; i++) attribIndices[i] = attribs.get(i).attributeIndex;
+        return new CompiledPipeline(order, attribIndices);
     }
 
     public void addRequirement(int opRef) {
+        if (replaying) {
+            log(opRef << 2 | LOG_REQUIREMENT);
+            return;
+        }
         loading.deps.add(nodes.get(opRef));
     }
 
     public void addDependency(VertexAttribute attrib) {
+        if (replaying) {
+            log(attrib.attributeIndex << 2 | LOG_DEPENDENCY);
+            return;
+        }
         loading.deps.add(nodes.get(attrib.operationID()));
         addAttribute(attrib);
     }
 
     public void addAttribute(VertexAttribute attrib) {
-        if (!attrib.active) {
+        if (replaying) {
+            log(attrib.attributeIndex << 2 | LOG_ATTRIBUTE);
+            return;
+        }
+        if (!isActive(attrib)) {
             ops.add(attrib);
-            attrib.active = true;
+            setActive(attrib, true);
         }
     }
 
+    private void setActive(VertexAttribute<?> attrib, boolean active) {
+        activeAttribs[attrib.attributeIndex] = active;
+    }
+
+    /**
+     * @return True if the attribute is part of this pipeline
+     */
+    public boolean isActive(VertexAttribute<?> attrib) {
+        return attrib.attributeIndex < activeAttribs.length && activeAttribs[attrib.attributeIndex];
+    }
+
+    /**
+     * Stores the array an attribute loaded from the current model. Should only be called from VertexAttribute.load
+     */
+    public <T> T bindAttributeRef(VertexAttribute<T> attrib, T ref) {
+        attribRefs[attrib.attributeIndex] = ref;
+        return ref;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getAttributeRef(VertexAttribute<T> attrib) {
+        return (T) attribRefs[attrib.attributeIndex];
+    }
+
     public void operate() {
-        for (int i = 0; i < sorted.size(); i++) sorted.get(i).operate(renderState);
+        operate(0, sorted.size());
+    }
+
+    private void operate(int start, int end) {
+        if (PipelineProfiler.ENABLED) {
+            for (int i = start; i < end; i++) opCounters[i].operate(sorted.get(i), renderState);
+            return;
+        }
+        for (int i = start; i < end; i++) sorted.get(i).operate(renderState);
+    }
+
+    /**
+     * @return True if the pipeline contains an IFaceOperation
+     */
+    public boolean hasFaceOperations() {
+        return hasFaceOps;
+    }
+
+    /**
+     * Runs the operations on the first vertex of a face. The face stage of each face operation runs just before its
+     * operate, after the operations sorted before it
+     *
+     * @return false if a face operation culled the face, the operations after it are not run
+     */
+    public boolean operateFirstVertex() {
+        for (int i = 0; i < sorted.size(); i++) {
+            IVertexOperation op = sorted.get(i);
+            if (faceOps[i] && !((CCRenderState.IFaceOperation) op).operateFace(renderState)) return false;
+
+            if (PipelineProfiler.ENABLED) opCounters[i].operate(op, renderState);
+            else op.operate(renderState);
+        }
+        return true;
+    }
+
+    /**
+     * Runs each operation in turn over the whole batch
+     */
+    public void operateBatch(VertexBatch batch) {
+        if (PipelineProfiler.ENABLED) {
+            for (int i = 0; i < sorted.size(); i++) opCounters[i].operateBatch(sorted.get(i), renderState, batch);
+            return;
+        }
+        for (int i = 0; i < sorted.size(); i++) sorted.get(i).operateBatch(renderState, batch);
     }
 
     public PipelineBuilder builder() {
@@ -1,19 +1,23 @@
 package codechicken.lib.render;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.OpenGlHelper;
-import net.minecraft.client.renderer.Tessellator;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.IBlockAccess;
 
 import codechicken.lib.colour.ColourRGBA;
 import codechicken.lib.lighting.LC;
 import codechicken.lib.lighting.LightMatrix;
+import codechicken.lib.render.uv.UVTranslation;
 import codechicken.lib.util.Copyable;
 import codechicken.lib.vec.Rotation;
 import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Translation;
 import codechicken.lib.vec.Vector3;
 
 /**
@@ -79,6 +83,19 @@ public class CCRenderState {
             operate();
         }
 
+        /**
+         * Perform the operation on every vertex in a batch. The default implementation unpacks each vertex into the
+         * render state, calls operate and packs the result back. Override with a loop over the batch arrays for
+         * operations that are run over large models
+         */
+        default void operateBatch(CCRenderState state, VertexBatch batch) {
+            for (int i = 0; i < batch.count; i++) {
+                batch.unpack(i, state);
+                operate(state);
+                batch.pack(i, state);
+            }
+        }
+
         /**
          * Get the unique id representing this type of operation. Duplicate operation IDs within the pipeline may have
          * unexpected results. ID shoulld be obtained from CCRenderState.registerOperation() and stored in a static
@@ -87,6 +104,23 @@ public class CCRenderState {
         int operationID();
     }
 
+    /**
+     * An operation that also runs once per face. Face operations keep their place in the dependency order of the
+     * pipeline. When a pipeline contains one, vertices are rendered a face at a time, and for the first vertex of each
+     * face {@link #operateFace(CCRenderState)} is called just before operate, so it sees the operations it depends on
+     * and those after it see its result. Batching is not used, and runPipelineInstance skips the face stage.
+     */
+    public interface IFaceOperation extends IVertexOperation {
+
+        /**
+         * Called once per face with the state of the first vertex of the face after the operations sorted before this
+         * one
+         *
+         * @return false to cull the face, none of its vertices are written
+         */
+        boolean operateFace(CCRenderState state);
+    }
+
     private static ArrayList<VertexAttribute<?>> vertexAttributes = new ArrayList<>();
 
     private static int registerVertexAttribute(VertexAttribute<?> attr) {
@@ -98,6 +132,10 @@ public class CCRenderState {
         return vertexAttributes.get(index);
     }
 
+    public static int attributeCount() {
+        return vertexAttributes.size();
+    }
+
     /**
      * Management class for a vertex attrute such as colour, normal etc This class should handle the loading of the
      * attrute from an array provided by IVertexSource.getAttributes or the computation of this attrute from others
@@ -109,9 +147,12 @@ public class CCRenderState {
         public final int attributeIndex = registerVertexAttribute(this);
         private final int operationIndex = registerOperation();
         /**
-         * Set to true when the attrute is part of the pipeline. Should only be managed by CCRenderState when
-         * constructing the pipeline
+         * No longer written or read, it is always false. Kept for binary compatibility
+         *
+         * @deprecated Whether an attribute is part of a pipeline depends on the render state, use
+         *             {@link #isActive(CCRenderState)}
          */
+        @Deprecated
         public boolean active = false;
 
         /**
@@ -119,6 +160,29 @@ public class CCRenderState {
          */
         public abstract T newArray(int length);
 
+        /**
+         * @return True if this attrute is part of the pipeline of the given render state
+         */
+        public boolean isActive(CCRenderState state) {
+            return state.pipeline.isActive(this);
+        }
+
+        /**
+         * Fetches the attrute array from the current model and stores it in the attrute slot of the render state
+         *
+         * @return The array, or null if not provided by the model
+         */
+        protected T bindRef(CCRenderState state) {
+            return state.pipeline.bindAttributeRef(this, state.model.getAttributes(this));
+        }
+
+        /**
+         * @return The attrute array bound by the last call to {@link #bindRef(CCRenderState)} on this render state
+         */
+        protected T getRef(CCRenderState state) {
+            return state.pipeline.getAttributeRef(this);
+        }
+
         @Override
         public int operationID() {
             return operationIndex;
@@ -136,14 +200,35 @@ public class CCRenderState {
 
     public static <T> T copyOf(VertexAttribute<T> attr, T src, int length) {
         T dst = attr.newArray(length);
-        arrayCopy(src, 0, dst, 0, ((Object[]) src).length);
+        arrayCopy(src, 0, dst, 0, Array.getLength(src));
         return dst;
     }
 
     public interface IVertexSource {
 
+        /**
+         * May return null if {@link #getVertexCount()} and {@link #loadVertex(CCRenderState, int)} are overridden
+         */
         Vertex5[] getVertices();
 
+        default int getVertexCount() {
+            return getVertices().length;
+        }
+
+        /**
+         * Sets the position and uv of the current vertex in the render state from vertex index
+         */
+        default void loadVertex(CCRenderState state, int index) {
+            state.vert.set(getVertices()[index]);
+        }
+
+        /**
+         * @return The number of vertices in each face, 4 for quads and 3 for triangles. Used to run face operations
+         */
+        default int getVertsPerFace() {
+            return 4;
+        }
+
         /**
          * Gets an array of vertex attrutes
          * 
@@ -155,7 +240,8 @@ public class CCRenderState {
 
         /**
          * @return True if the specified attrute is provided by this model, either by returning an array from
-         *         getAttributes or by setting the state in prepareVertex
+         *         getAttributes or by setting the state in prepareVertex. Normals and light coordinates set in
+         *         prepareVertex are treated as part of the pipeline, so transformations are still applied to them
          */
         boolean hasAttribute(VertexAttribute<?> attr);
 
@@ -169,9 +255,26 @@ public class CCRenderState {
         }
     }
 
-    public static VertexAttribute<Vector3[]> normalAttrib = new VertexAttribute<>() {
+    /**
+     * Destination for the vertices written by CCRenderState. Mirrors the subset of Tessellator used by the pipeline so
+     * vertices can be written to buffers other than Tessellator.instance
+     */
+    public interface IVertexSink {
+
+        void startDrawing(int mode);
+
+        void setNormal(float x, float y, float z);
+
+        void setColour(int r, int g, int b, int a);
 
-        private Vector3[] normalRef;
+        void setBrightness(int brightness);
+
+        void addVertex(double x, double y, double z, double u, double v);
+
+        void draw();
+    }
+
+    public static VertexAttribute<Vector3[]> normalAttrib = new VertexAttribute<>() {
 
         @Override
         public Vector3[] newArray(int length) {
@@ -180,8 +283,12 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            normalRef = state.model.getAttributes(this);
-            if (state.model.hasAttribute(this)) return normalRef != null;
+            Vector3[] normalRef = bindRef(state);
+            state.preparedNormals = false;
+            if (state.model.hasAttribute(this)) {
+                state.preparedNormals = normalRef == null;
+                return true;
+            }
 
             if (state.model.hasAttribute(sideAttrib)) {
                 state.pipeline.addDependency(sideAttrib);
@@ -193,14 +300,30 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
+            Vector3[] normalRef = getRef(state);
             if (normalRef != null) state.setNormalInstance(normalRef[state.vertexIndex]);
+            else if (state.preparedNormals) state.hasNormal = true;
             else state.setNormalInstance(Rotation.axes[state.side]);
         }
+
+        @Override
+        public void operateBatch(CCRenderState state, VertexBatch batch) {
+            Vector3[] normalRef = getRef(state);
+            if (normalRef == null && state.preparedNormals) {
+                state.hasNormal = true;
+                return;
+            }
+            for (int i = 0; i < batch.count; i++) {
+                Vector3 n = normalRef != null ? normalRef[batch.start + i] : Rotation.axes[batch.side[i]];
+                batch.nx[i] = n.x;
+                batch.ny[i] = n.y;
+                batch.nz[i] = n.z;
+            }
+            state.hasNormal = true;
+        }
     };
     public static VertexAttribute<int[]> colourAttrib = new VertexAttribute<>() {
 
-        private int[] colourRef;
-
         @Override
         public int[] newArray(int length) {
             return new int[length];
@@ -208,21 +331,33 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            colourRef = state.model.getAttributes(this);
+            int[] colourRef = bindRef(state);
             return colourRef != null || !state.model.hasAttribute(this);
         }
 
         @Override
         public void operate(CCRenderState state) {
+            int[] colourRef = getRef(state);
             if (colourRef != null)
                 state.setColourInstance(ColourRGBA.multiply(state.baseColour, colourRef[state.vertexIndex]));
             else state.setColourInstance(state.baseColour);
         }
+
+        @Override
+        public void operateBatch(CCRenderState state, VertexBatch batch) {
+            int[] colourRef = getRef(state);
+            int[] colour = batch.colour;
+            if (colourRef != null) {
+                for (int i = 0; i < batch.count; i++)
+                    colour[i] = ColourRGBA.multiply(state.baseColour, colourRef[batch.start + i]);
+            } else {
+                Arrays.fill(colour, 0, batch.count, state.baseColour);
+            }
+            state.hasColour = true;
+        }
     };
     public static VertexAttribute<int[]> lightingAttrib = new VertexAttribute<>() {
 
-        private int[] colourRef;
-
         @Override
         public int[] newArray(int length) {
             return new int[length];
@@ -232,7 +367,7 @@ public class CCRenderState {
         public boolean load(CCRenderState state) {
             if (!state.computeLighting || !state.useColour || !state.model.hasAttribute(this)) return false;
 
-            colourRef = state.model.getAttributes(this);
+            int[] colourRef = bindRef(state);
             if (colourRef != null) {
                 state.pipeline.addDependency(colourAttrib);
                 return true;
@@ -242,13 +377,21 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
+            int[] colourRef = getRef(state);
             state.setColourInstance(ColourRGBA.multiply(state.colour, colourRef[state.vertexIndex]));
         }
+
+        @Override
+        public void operateBatch(CCRenderState state, VertexBatch batch) {
+            int[] colourRef = getRef(state);
+            int[] colour = batch.colour;
+            for (int i = 0; i < batch.count; i++)
+                colour[i] = ColourRGBA.multiply(colour[i], colourRef[batch.start + i]);
+            state.hasColour = true;
+        }
     };
     public static VertexAttribute<int[]> sideAttrib = new VertexAttribute<>() {
 
-        private int[] sideRef;
-
         @Override
         public int[] newArray(int length) {
             return new int[length];
@@ -256,7 +399,7 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            sideRef = state.model.getAttributes(this);
+            int[] sideRef = bindRef(state);
             if (state.model.hasAttribute(this)) return sideRef != null;
 
             state.pipeline.addDependency(normalAttrib);
@@ -265,19 +408,28 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
+            int[] sideRef = getRef(state);
             if (sideRef != null) state.side = sideRef[state.vertexIndex];
             else state.side = CCModel.findSide(state.normal);
         }
+
+        @Override
+        public void operateBatch(CCRenderState state, VertexBatch batch) {
+            int[] sideRef = getRef(state);
+            if (sideRef != null) {
+                System.arraycopy(sideRef, batch.start, batch.side, 0, batch.count);
+                return;
+            }
+            Vector3 n = batch.vec;
+            for (int i = 0; i < batch.count; i++)
+                batch.side[i] = CCModel.findSide(n.set(batch.nx[i], batch.ny[i], batch.nz[i]));
+        }
     };
     /**
      * Uses the position of the lightmatrix to compute LC if not provided
      */
     public static VertexAttribute<LC[]> lightCoordAttrib = new VertexAttribute<>() {
 
-        private LC[] lcRef;
-        private final Vector3 vec = new Vector3(); // for computation
-        private final Vector3 pos = new Vector3();
-
         @Override
         public LC[] newArray(int length) {
             return new LC[length];
@@ -285,10 +437,20 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            lcRef = state.model.getAttributes(this);
-            if (state.model.hasAttribute(this)) return lcRef != null;
+            LC[] lcRef = bindRef(state);
+            state.preparedLightCoords = false;
+            if (state.model.hasAttribute(this)) {
+                state.preparedLightCoords = lcRef == null;
+                return true;
+            }
+            if (state.model.hasAttribute(lightCoordIndexAttrib)) {
+                // set by lightCoordIndexAttrib
+                state.preparedLightCoords = true;
+                state.pipeline.addDependency(lightCoordIndexAttrib);
+                return true;
+            }
 
-            pos.set(state.lightMatrix.pos.x, state.lightMatrix.pos.y, state.lightMatrix.pos.z);
+            state.lcOrigin.set(state.lightMatrix.pos.x, state.lightMatrix.pos.y, state.lightMatrix.pos.z);
             state.pipeline.addDependency(sideAttrib);
             state.pipeline.addRequirement(Transformation.operationIndex);
             return true;
@@ -296,8 +458,66 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
+            LC[] lcRef = getRef(state);
             if (lcRef != null) state.lc.set(lcRef[state.vertexIndex]);
-            else state.lc.compute(vec.set(state.vert.vec).sub(pos), state.side);
+            else if (!state.preparedLightCoords)
+                state.lc.compute(state.lcVec.set(state.vert.vec).sub(state.lcOrigin), state.side);
+        }
+
+        @Override
+        public void operateBatch(CCRenderState state, VertexBatch batch) {
+            LC[] lcRef = getRef(state);
+            if (lcRef == null && state.preparedLightCoords) return;
+
+            Vector3 origin = state.lcOrigin;
+            LC lc = state.lc;
+            for (int i = 0; i < batch.count; i++) {
+                if (lcRef != null) lc.set(lcRef[batch.start + i]);
+                else lc.compute(
+                        batch.vec.set(batch.x[i] - origin.x, batch.y[i] - origin.y, batch.z[i] - origin.z),
+                        batch.side[i]);
+                batch.lcSide[i] = lc.side;
+                batch.lcA[i] = lc.fa;
+                batch.lcB[i] = lc.fb;
+                batch.lcC[i] = lc.fc;
+                batch.lcD[i] = lc.fd;
+            }
+        }
+    };
+
+    /**
+     * Light coordinates as indices into the interned table of LC, see {@link CCModel#computeLightCoordIndices()}. Used
+     * by lightCoordAttrib when the model has no LC array.
+     */
+    public static VertexAttribute<short[]> lightCoordIndexAttrib = new VertexAttribute<>() {
+
+        @Override
+        public short[] newArray(int length) {
+            return new short[length];
+        }
+
+        @Override
+        public boolean load(CCRenderState state) {
+            return bindRef(state) != null;
+        }
+
+        @Override
+        public void operate(CCRenderState state) {
+            short[] indexRef = getRef(state);
+            state.lc.set(LC.interned(indexRef[state.vertexIndex]));
+        }
+
+        @Override
+        public void operateBatch(CCRenderState state, VertexBatch batch) {
+            short[] indexRef = getRef(state);
+            for (int i = 0; i < batch.count; i++) {
+                LC lc = LC.interned(indexRef[batch.start + i]);
+                batch.lcSide[i] = lc.side;
+                batch.lcA[i] = lc.fa;
+                batch.lcB[i] = lc.fb;
+                batch.lcC[i] = lc.fc;
+                batch.lcD[i] = lc.fd;
+            }
         }
     };
 
@@ -314,7 +534,15 @@ public class CCRenderState {
     public boolean useNormals;
     public boolean computeLighting;
     public boolean useColour;
+    /**
+     * Run the pipeline one operation at a time over blocks of vertices, see {@link VertexBatch}
+     */
+    public boolean useBatching;
     public LightMatrix lightMatrix = new LightMatrix();
+    /**
+     * Where vertices are written. Not cleared by reset so a thread can keep its own buffer
+     */
+    public IVertexSink sink = TessellatorVertexSink.instance;
 
     // vertex outputs
     public Vertex5 vert = new Vertex5();
@@ -331,6 +559,32 @@ public class CCRenderState {
     public int side;
     public LC lc = new LC();
 
+    // lightCoordAttrib scratch, kept per state so chunk batching threads don't share it
+    private final Vector3 lcVec = new Vector3();
+    private final Vector3 lcOrigin = new Vector3();
+    // set when the model provides the attribute in prepareVertex rather than as an array
+    private boolean preparedNormals;
+    private boolean preparedLightCoords;
+    private VertexBatch batch;
+    // emitVertInstance state, the values last set on the sink in the current render call
+    private static final int EMITTED_NORMAL = 1;
+    private static final int EMITTED_COLOUR = 2;
+    private static final int EMITTED_BRIGHTNESS = 4;
+    private int emitted;
+    private int emittedNX, emittedNY, emittedNZ;
+    private int emittedColour;
+    private int emittedBrightness;
+    private PackedVertexSink packedSink;
+    /**
+     * The sink vertices are written to between beginEmit and endEmit, the sink or tessellatorWriter
+     */
+    private IVertexSink emitSink;
+    private TessellatorWriter tessellatorWriter;
+    // scratch for the allocation free CCModel.render overloads, overwritten by each call
+    final Translation translation = new Translation(new Vector3());
+    final UVTranslation uvTranslation = new UVTranslation(0, 0);
+    final IVertexOperation[] opPair = new IVertexOperation[2];
+
     public static void reset() {
         instance().resetInstance();
     }
@@ -338,7 +592,7 @@ public class CCRenderState {
     public void resetInstance() {
         model = null;
         pipeline.reset();
-        useNormals = hasNormal = hasBrightness = hasColour = false;
+        useNormals = useBatching = hasNormal = hasBrightness = hasColour = false;
         useColour = computeLighting = true;
         baseColour = alphaOverride = -1;
     }
@@ -376,7 +630,7 @@ public class CCRenderState {
     }
 
     public void setModelInstance(IVertexSource source) {
-        setModelInstance(source, 0, source.getVertices().length);
+        setModelInstance(source, 0, source.getVertexCount());
     }
 
     @Deprecated
@@ -415,12 +669,58 @@ public class CCRenderState {
     }
 
     public void renderInstance() {
-        Vertex5[] verts = model.getVertices();
+        if (PipelineProfiler.ENABLED) {
+            long vertices = pipeline.recorder.vertices;
+            renderModelInstance();
+            pipeline.recorder.addModel(model, pipeline.recorder.vertices - vertices);
+            return;
+        }
+        renderModelInstance();
+    }
+
+    /**
+     * Renders the current model and pipeline once for each of count instances, calling before with the index of each
+     * instance first. The sink is prepared once for all of them, so this is cheaper than calling
+     * {@link #renderInstance()} count times. before may change the state of operations in the pipeline, but not the
+     * pipeline itself.
+     */
+    public void renderInstances(int count, IntConsumer before) {
+        long vertices = PipelineProfiler.ENABLED ? pipeline.recorder.vertices : 0;
+        beginEmit((lastVertexIndex - firstVertexIndex) * count);
+        try {
+            for (int i = 0; i < count; i++) {
+                before.accept(i);
+                renderVertices();
+            }
+        } finally {
+            endEmit();
+        }
+        if (PipelineProfiler.ENABLED) pipeline.recorder.addModel(model, pipeline.recorder.vertices - vertices);
+    }
+
+    private void renderModelInstance() {
+        beginEmit(lastVertexIndex - firstVertexIndex);
+        try {
+            renderVertices();
+        } finally {
+            endEmit();
+        }
+    }
+
+    private void renderVertices() {
+        if (pipeline.hasFaceOperations()) {
+            renderFacesInstance();
+            return;
+        }
+        if (useBatching) {
+            renderBatched();
+            return;
+        }
         for (vertexIndex = firstVertexIndex; vertexIndex < lastVertexIndex; vertexIndex++) {
             model.prepareVertex(this);
-            vert.set(verts[vertexIndex]);
+            model.loadVertex(this, vertexIndex);
             runPipelineInstance();
-            writeVertInstance();
+            emitVertInstance();
         }
     }
 
@@ -429,6 +729,58 @@ public class CCRenderState {
         instance().renderInstance();
     }
 
+    /**
+     * Renders the current vertex range in blocks of {@link VertexBatch#SIZE}. Each block is loaded from the model, run
+     * through the pipeline one operation at a time and then written out.
+     */
+    public void renderBatchedInstance() {
+        beginEmit(lastVertexIndex - firstVertexIndex);
+        try {
+            renderBatched();
+        } finally {
+            endEmit();
+        }
+    }
+
+    private void renderBatched() {
+        if (batch == null) batch = new VertexBatch();
+        for (int start = firstVertexIndex; start < lastVertexIndex; start += VertexBatch.SIZE) {
+            batch.start = start;
+            batch.count = Math.min(VertexBatch.SIZE, lastVertexIndex - start);
+            for (int i = 0; i < batch.count; i++) {
+                vertexIndex = start + i;
+                model.prepareVertex(this);
+                model.loadVertex(this, vertexIndex);
+                batch.pack(i, this);
+            }
+            pipeline.operateBatch(batch);
+            for (int i = 0; i < batch.count; i++) {
+                batch.unpack(i, this);
+                emitVertInstance();
+            }
+        }
+        vertexIndex = lastVertexIndex;
+    }
+
+    /**
+     * Renders the current vertex range a face at a time, see {@link IFaceOperation}. Batching is not used
+     */
+    private void renderFacesInstance() {
+        int vp = model.getVertsPerFace();
+        for (int face = firstVertexIndex; face < lastVertexIndex; face += vp) {
+            int end = Math.min(face + vp, lastVertexIndex);
+            for (vertexIndex = face; vertexIndex < end; vertexIndex++) {
+                model.prepareVertex(this);
+                model.loadVertex(this, vertexIndex);
+                if (vertexIndex != face) runPipelineInstance();
+                else if (!pipeline.operateFirstVertex()) break;
+
+                emitVertInstance();
+            }
+        }
+        vertexIndex = lastVertexIndex;
+    }
+
     public void runPipelineInstance() {
         pipeline.operate();
     }
@@ -439,14 +791,81 @@ public class CCRenderState {
     }
 
     public void writeVertInstance() {
-        if (hasNormal) Tessellator.instance.setNormal((float) normal.x, (float) normal.y, (float) normal.z);
-        if (hasColour) Tessellator.instance.setColorRGBA(
+        if (hasNormal) sink.setNormal((float) normal.x, (float) normal.y, (float) normal.z);
+        if (hasColour) sink.setColour(
                 colour >>> 24,
                 colour >> 16 & 0xFF,
                 colour >> 8 & 0xFF,
                 alphaOverride >= 0 ? alphaOverride : colour & 0xFF);
-        if (hasBrightness) Tessellator.instance.setBrightness(brightness);
-        Tessellator.instance.addVertexWithUV(vert.vec.x, vert.vec.y, vert.vec.z, vert.uv.u, vert.uv.v);
+        if (hasBrightness) sink.setBrightness(brightness);
+        sink.addVertex(vert.vec.x, vert.vec.y, vert.vec.z, vert.uv.u, vert.uv.v);
+        if (PipelineProfiler.ENABLED) pipeline.recorder.vertices++;
+    }
+
+    /**
+     * Starts writing the given number of vertices with {@link #emitVertInstance()}. Grows a PackedVertexSink, or the
+     * Tessellator raw buffer when writing to {@link TessellatorVertexSink#instance}, once for all of them, and
+     * forgets the values last set on the sink, as other code may have used it since. Must be followed by
+     * {@link #endEmit()}.
+     */
+    private void beginEmit(int vertices) {
+        emitted = 0;
+        emitSink = sink;
+        packedSink = sink instanceof PackedVertexSink ? (PackedVertexSink) sink : null;
+        if (packedSink != null) packedSink.ensureCapacity(vertices);
+        else if (sink == TessellatorVertexSink.instance) {
+            if (tessellatorWriter == null) tessellatorWriter = new TessellatorWriter();
+            if (tessellatorWriter.begin(vertices)) emitSink = tessellatorWriter;
+        }
+    }
+
+    /**
+     * Stores the vertices written directly to the Tessellator raw buffer, see {@link TessellatorWriter}
+     */
+    private void endEmit() {
+        if (tessellatorWriter != null && emitSink == tessellatorWriter) tessellatorWriter.end();
+        emitSink = null;
+    }
+
+    /**
+     * Same output as {@link #writeVertInstance()}, but skips setting the normal, colour or brightness on the sink when
+     * it is equal to the value set for the previous vertex. The comparisons are exact so every sink sees the same state
+     * when a vertex is added. Only valid between vertices of one render call, see {@link #beginEmit(int)}.
+     */
+    private void emitVertInstance() {
+        IVertexSink sink = emitSink;
+        if (hasNormal) {
+            float x = (float) normal.x, y = (float) normal.y, z = (float) normal.z;
+            int bx = Float.floatToRawIntBits(x), by = Float.floatToRawIntBits(y), bz = Float.floatToRawIntBits(z);
+            if ((emitted & EMITTED_NORMAL) == 0 || bx != emittedNX || by != emittedNY || bz != emittedNZ) {
+                sink.setNormal(x, y, z);
+                emittedNX = bx;
+                emittedNY = by;
+                emittedNZ = bz;
+                emitted |= EMITTED_NORMAL;
+            }
+        }
+        if (hasColour) {
+            int c = alphaOverride >= 0 ? colour & 0xFFFFFF00 | alphaOverride & 0xFF : colour;
+            if ((emitted & EMITTED_COLOUR) == 0 || c != emittedColour || alphaOverride > 0xFF) {
+                sink.setColour(
+                        colour >>> 24,
+                        colour >> 16 & 0xFF,
+                        colour >> 8 & 0xFF,
+                        alphaOverride >= 0 ? alphaOverride : colour & 0xFF);
+                emittedColour = c;
+                emitted |= EMITTED_COLOUR;
+            }
+        }
+        if (hasBrightness && ((emitted & EMITTED_BRIGHTNESS) == 0 || brightness != emittedBrightness)) {
+            sink.setBrightness(brightness);
+            emittedBrightness = brightness;
+            emitted |= EMITTED_BRIGHTNESS;
+        }
+        // grown for the whole range in beginEmit
+        if (packedSink != null) packedSink.addVertexUnchecked(vert.vec.x, vert.vec.y, vert.vec.z, vert.uv.u, vert.uv.v);
+        else sink.addVertex(vert.vec.x, vert.vec.y, vert.vec.z, vert.uv.u, vert.uv.v);
+        if (PipelineProfiler.ENABLED) pipeline.recorder.vertices++;
     }
 
     @Deprecated
@@ -549,13 +968,13 @@ public class CCRenderState {
     }
 
     public void startDrawingInstance(int mode) {
-        Tessellator.instance.startDrawing(mode);
-        if (hasColour) Tessellator.instance.setColorRGBA(
+        sink.startDrawing(mode);
+        if (hasColour) sink.setColour(
                 colour >>> 24,
                 colour >> 16 & 0xFF,
                 colour >> 8 & 0xFF,
                 alphaOverride >= 0 ? alphaOverride : colour & 0xFF);
-        if (hasBrightness) Tessellator.instance.setBrightness(brightness);
+        if (hasBrightness) sink.setBrightness(brightness);
     }
 
     @Deprecated
@@ -563,11 +982,12 @@ public class CCRenderState {
         instance().startDrawingInstance(mode);
     }
 
+    @Deprecated
     public static void draw() {
-        Tessellator.instance.draw();
+        instance().drawInstance();
     }
 
     public void drawInstance() {
-        Tessellator.instance.draw();
+        sink.draw();
     }
 }
@@ -36,6 +36,13 @@ public class ColourMultiplier implements CCRenderState.IVertexOperation {
         state.setColourInstance(ColourRGBA.multiply(state.colour, colour));
     }
 
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        int[] colours = batch.colour;
+        for (int i = 0; i < batch.count; i++) colours[i] = ColourRGBA.multiply(colours[i], colour);
+        state.hasColour = true;
+    }
+
     @Override
     public int operationID() {
         return operationIndex;
@@ -0,0 +1,73 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+
+/**
+ * A model with simplified variants for rendering further from the camera. Levels are added in order of increasing
+ * distance, and {@link #select} returns the model of the furthest level the distance has reached, or the base model.
+ * <p>
+ * Distances are in blocks from the camera. In a TileEntitySpecialRenderer the x, y, z passed to renderTileEntityAt
+ * are already relative to the camera and can be passed to {@link #select(double, double, double)} directly.
+ */
+public class LODModel {
+
+    /**
+     * Multiplies all level distances, for a detail setting
+     */
+    public static double distanceScale = 1;
+
+    public final CCModel base;
+    private CCModel[] models = new CCModel[0];
+    private double[] distances = new double[0];
+
+    public LODModel(CCModel base) {
+        this.base = base;
+    }
+
+    /**
+     * Adds a level simplified from the base model with {@link ModelSimplifier#simplify(CCModel, double)}
+     *
+     * @param distance The distance from which this level is used
+     * @param ratio    The fraction of the triangles of the base model to keep
+     */
+    public LODModel addLevel(double distance, double ratio) {
+        return addLevel(distance, ModelSimplifier.simplify(base, ratio));
+    }
+
+    public LODModel addLevel(double distance, CCModel model) {
+        int n = models.length;
+        if (n > 0 && distance <= distances[n - 1])
+            throw new IllegalArgumentException("Levels must be added in order of increasing distance");
+
+        models = Arrays.copyOf(models, n + 1);
+        distances = Arrays.copyOf(distances, n + 1);
+        models[n] = model;
+        distances[n] = distance;
+        return this;
+    }
+
+    public int levelCount() {
+        return models.length;
+    }
+
+    public CCModel level(int i) {
+        return models[i];
+    }
+
+    /**
+     * @param distSq The squared distance from the camera
+     */
+    public CCModel select(double distSq) {
+        double scaleSq = distanceScale * distanceScale;
+        for (int i = models.length - 1; i >= 0; i--)
+            if (distSq >= distances[i] * distances[i] * scaleSq) return models[i];
+        return base;
+    }
+
+    /**
+     * The position of the model relative to the camera, see the class comment
+     */
+    public CCModel select(double x, double y, double z) {
+        return select(x * x + y * y + z * z);
+    }
+}
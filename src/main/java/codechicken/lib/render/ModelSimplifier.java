@@ -0,0 +1,469 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Reduces the triangle count of a CCModel by edge collapse, for distant level of detail variants, see
+ * {@link LODModel}.
+ * <p>
+ * Faces are split into triangles and vertices are welded by position, uv and normal. Each collapse moves one position
+ * onto a neighbouring one, so no new positions, uvs or normals are created, and collapses are made in order of the
+ * quadric error they add to the surface. Positions on uv or normal seams and on open or non manifold edges are never
+ * moved, which keeps the texture mapping and hard edges intact. Collapses that would change the topology or fold a
+ * triangle over are skipped.
+ * <p>
+ * The result has the vertex mode of the input. For quad models, quads that were not changed are kept and the remaining
+ * triangles are written as degenerate quads. Positions, uvs and normals are kept and light coordinates are computed
+ * again if the input had them. Other attributes are dropped.
+ */
+@SuppressWarnings("ForLoopReplaceableByForEach")
+public class ModelSimplifier {
+
+    /**
+     * Minimum cosine between the normal of a triangle in the input and after a collapse
+     */
+    private static final double FLIP_COS = 0.5;
+
+    /**
+     * @param ratio The fraction of triangles to keep, between 0 and 1
+     */
+    public static CCModel simplify(CCModel model, double ratio) {
+        int triangles = model.verts.length / model.vp * (model.vp - 2);
+        return simplify(model, (int) Math.ceil(triangles * ratio), Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param targetTriangles Stop once the model has this many triangles
+     * @param maxError        Stop before a collapse with a quadric error (squared distance weighted by area) above this
+     */
+    public static CCModel simplify(CCModel model, int targetTriangles, double maxError) {
+        return new ModelSimplifier(model).run(targetTriangles, maxError);
+    }
+
+    private static final class Collapse implements Comparable<Collapse> {
+
+        private final double cost;
+        private final int from;
+        private final int to;
+        private final int version;
+
+        private Collapse(double cost, int from, int to, int version) {
+            this.cost = cost;
+            this.from = from;
+            this.to = to;
+            this.version = version;
+        }
+
+        @Override
+        public int compareTo(Collapse o) {
+            return Double.compare(cost, o.cost);
+        }
+    }
+
+    private static final class Key {
+
+        private final double[] values;
+        private final int tex;
+        private final int hash;
+
+        private Key(double[] values, int tex) {
+            // + 0.0 so -0.0 and 0.0 are equal
+            for (int i = 0; i < values.length; i++) values[i] += 0.0;
+            this.values = values;
+            this.tex = tex;
+            hash = Arrays.hashCode(values) * 31 + tex;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).tex == tex && Arrays.equals(((Key) obj).values, values);
+        }
+    }
+
+    private final CCModel model;
+    private final Vector3[] normals;
+
+    /**
+     * For each welded vertex, a vertex of the model with its attributes, and its position
+     */
+    private int[] vertexRep;
+    private int[] vertexPos;
+    private int vertexCount;
+
+    private Vector3[] positions;
+    private int positionCount;
+    private boolean[] locked;
+    private boolean[] removed;
+    private int[] version;
+    private double[] quadrics;
+    /**
+     * The triangles using each position, may include dead triangles
+     */
+    private int[][] posTris;
+    private int[] posTriCount;
+
+    /**
+     * 3 welded vertices per triangle
+     */
+    private int[] tris;
+    private boolean[] dead;
+    /**
+     * The unit normal of each triangle in the input, so small rotations can't add up over many collapses
+     */
+    private Vector3[] triNormals;
+    /**
+     * Set on the first of two triangles split from the same quad, so they can be joined again if both remain
+     */
+    private boolean[] joinNext;
+    private int triCount;
+    private int liveTris;
+
+    private final PriorityQueue<Collapse> queue = new PriorityQueue<>();
+
+    // scratch for the link condition
+    private int[] linkA = new int[16];
+    private int[] linkB = new int[16];
+
+    private ModelSimplifier(CCModel model) {
+        this.model = model;
+        normals = model.normals();
+        weld();
+        buildTopology();
+    }
+
+    private void weld() {
+        Vertex5[] verts = model.verts;
+        int n = verts.length;
+        vertexRep = new int[n];
+        vertexPos = new int[n];
+        positions = new Vector3[n];
+        int[] vertexOf = new int[n];
+        HashMap<Key, Integer> vertices = new HashMap<>();
+        HashMap<Key, Integer> posIds = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Vertex5 v = verts[i];
+            Key posKey = new Key(new double[] { v.vec.x, v.vec.y, v.vec.z }, 0);
+            Integer pos = posIds.get(posKey);
+            if (pos == null) {
+                posIds.put(posKey, pos = positionCount);
+                positions[positionCount++] = v.vec.copy();
+            }
+
+            double[] values = normals != null
+                    ? new double[] { v.vec.x, v.vec.y, v.vec.z, v.uv.u, v.uv.v, normals[i].x, normals[i].y,
+                            normals[i].z }
+                    : new double[] { v.vec.x, v.vec.y, v.vec.z, v.uv.u, v.uv.v };
+            Key key = new Key(values, v.uv.tex);
+            Integer vertex = vertices.get(key);
+            if (vertex == null) {
+                vertices.put(key, vertex = vertexCount);
+                vertexRep[vertexCount] = i;
+                vertexPos[vertexCount++] = pos;
+            }
+            vertexOf[i] = vertex;
+        }
+
+        int vp = model.vp;
+        tris = new int[n / vp * (vp - 2) * 3];
+        joinNext = new boolean[n / vp * (vp - 2)];
+        for (int f = 0; f + vp <= n; f += vp) {
+            int first = triCount;
+            for (int k = 2; k < vp; k++) {
+                int a = vertexOf[f], b = vertexOf[f + k - 1], c = vertexOf[f + k];
+                if (vertexPos[a] == vertexPos[b] || vertexPos[b] == vertexPos[c] || vertexPos[a] == vertexPos[c])
+                    continue;
+                tris[triCount * 3] = a;
+                tris[triCount * 3 + 1] = b;
+                tris[triCount * 3 + 2] = c;
+                triCount++;
+            }
+            if (vp == 4 && triCount == first + 2) joinNext[first] = true;
+        }
+        dead = new boolean[triCount];
+        liveTris = triCount;
+    }
+
+    private void buildTopology() {
+        int p = positionCount;
+        locked = new boolean[p];
+        removed = new boolean[p];
+        version = new int[p];
+        quadrics = new double[p * 10];
+        posTriCount = new int[p];
+        posTris = new int[p][];
+        triNormals = new Vector3[triCount];
+
+        // positions with more than one welded vertex are on a seam
+        int[] firstVertex = new int[p];
+        Arrays.fill(firstVertex, -1);
+        for (int v = 0; v < vertexCount; v++) {
+            int pos = vertexPos[v];
+            if (firstVertex[pos] < 0) firstVertex[pos] = v;
+            else locked[pos] = true;
+        }
+
+        // edges not shared by exactly two triangles are open or non manifold
+        HashMap<Long, Integer> edges = new HashMap<>();
+        for (int t = 0; t < triCount; t++) for (int k = 0; k < 3; k++) {
+            long key = edgeKey(pos(t, k), pos(t, (k + 1) % 3));
+            edges.merge(key, 1, Integer::sum);
+        }
+        for (Map.Entry<Long, Integer> e : edges.entrySet()) if (e.getValue() != 2) {
+            locked[(int) (e.getKey() >>> 32)] = true;
+            locked[(int) (long) e.getKey()] = true;
+        }
+
+        for (int t = 0; t < triCount; t++) {
+            for (int k = 0; k < 3; k++) addTri(pos(t, k), t);
+            addQuadric(t);
+        }
+    }
+
+    private static long edgeKey(int a, int b) {
+        return (long) Math.min(a, b) << 32 | Math.max(a, b);
+    }
+
+    private int pos(int t, int k) {
+        return vertexPos[tris[t * 3 + k]];
+    }
+
+    private void addTri(int pos, int t) {
+        int[] list = posTris[pos];
+        if (list == null) posTris[pos] = list = new int[6];
+        else if (posTriCount[pos] == list.length) posTris[pos] = list = Arrays.copyOf(list, list.length * 2);
+        list[posTriCount[pos]++] = t;
+    }
+
+    private void addQuadric(int t) {
+        Vector3 p0 = positions[pos(t, 0)], p1 = positions[pos(t, 1)], p2 = positions[pos(t, 2)];
+        Vector3 n = p1.copy().subtract(p0).crossProduct(p2.copy().subtract(p0));
+        double area2 = n.mag();
+        if (area2 == 0) return;
+
+        n.multiply(1 / area2);
+        triNormals[t] = n;
+        double a = n.x, b = n.y, c = n.z, d = -n.dotProduct(p0), w = area2 / 2;
+        double[] q = new double[] { a * a, a * b, a * c, a * d, b * b, b * c, b * d, c * c, c * d, d * d };
+        for (int k = 0; k < 3; k++) {
+            int base = pos(t, k) * 10;
+            for (int i = 0; i < 10; i++) quadrics[base + i] += q[i] * w;
+        }
+    }
+
+    /**
+     * @return The error of the sum of the quadrics of positions a and b at position p
+     */
+    private double error(int a, int b, Vector3 p) {
+        double[] q = quadrics;
+        int i = a * 10, j = b * 10;
+        double x = p.x, y = p.y, z = p.z;
+        return (q[i] + q[j]) * x * x + 2 * (q[i + 1] + q[j + 1]) * x * y + 2 * (q[i + 2] + q[j + 2]) * x * z
+                + 2 * (q[i + 3] + q[j + 3]) * x
+                + (q[i + 4] + q[j + 4]) * y * y
+                + 2 * (q[i + 5] + q[j + 5]) * y * z
+                + 2 * (q[i + 6] + q[j + 6]) * y
+                + (q[i + 7] + q[j + 7]) * z * z
+                + 2 * (q[i + 8] + q[j + 8]) * z
+                + q[i + 9]
+                + q[j + 9];
+    }
+
+    private CCModel run(int targetTriangles, double maxError) {
+        for (int p = 0; p < positionCount; p++) queueBest(p);
+
+        while (liveTris > targetTriangles && !queue.isEmpty()) {
+            Collapse c = queue.poll();
+            if (c.cost > maxError) break;
+            if (removed[c.from] || removed[c.to] || c.version != version[c.from]) continue;
+            if (!canCollapse(c.from, c.to)) {
+                queueBest(c.from);
+                continue;
+            }
+            collapse(c.from, c.to);
+        }
+        return build();
+    }
+
+    /**
+     * Queues the cheapest valid collapse of position p onto a neighbour
+     */
+    private void queueBest(int p) {
+        if (locked[p] || removed[p]) return;
+
+        int best = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        int[] list = posTris[p];
+        for (int i = 0; i < posTriCount[p]; i++) {
+            int t = list[i];
+            if (dead[t]) continue;
+            for (int k = 0; k < 3; k++) {
+                int q = pos(t, k);
+                if (q == p || q == best) continue;
+                double cost = error(p, q, positions[q]);
+                if (cost < bestCost && canCollapse(p, q)) {
+                    best = q;
+                    bestCost = cost;
+                }
+            }
+        }
+        if (best >= 0) queue.add(new Collapse(bestCost, p, best, version[p]));
+    }
+
+    /**
+     * Checks the link condition (the positions adjacent to both are exactly those opposite the shared edge) and that no
+     * remaining triangle of from folds over or degenerates when moved to to
+     */
+    private boolean canCollapse(int from, int to) {
+        int na = neighbours(from, linkA), nb;
+        if (na > linkA.length) {
+            linkA = new int[na];
+            na = neighbours(from, linkA);
+        }
+        nb = neighbours(to, linkB);
+        if (nb > linkB.length) {
+            linkB = new int[nb];
+            nb = neighbours(to, linkB);
+        }
+        int common = 0;
+        for (int i = 0; i < na; i++) for (int j = 0; j < nb; j++) if (linkA[i] == linkB[j]) common++;
+
+        int shared = 0;
+        int[] list = posTris[from];
+        Vector3 pf = positions[from], pt = positions[to];
+        for (int i = 0; i < posTriCount[from]; i++) {
+            int t = list[i];
+            if (dead[t]) continue;
+            int a = pos(t, 0), b = pos(t, 1), c = pos(t, 2);
+            if (a == to || b == to || c == to) {
+                shared++;
+                continue;
+            }
+
+            Vector3 pa = a == from ? pt : positions[a], pb = b == from ? pt : positions[b],
+                    pc = c == from ? pt : positions[c];
+            Vector3 after = pb.copy().subtract(pa).crossProduct(pc.copy().subtract(pa));
+            double la = after.mag();
+            if (la <= 1E-12 || triNormals[t] != null && triNormals[t].dotProduct(after) < FLIP_COS * la)
+                return false;
+        }
+        return shared == 2 && common == 2 && pf != pt;
+    }
+
+    /**
+     * Writes the distinct positions adjacent to p to out
+     *
+     * @return The number of neighbours, which may be larger than out if it was too small
+     */
+    private int neighbours(int p, int[] out) {
+        int n = 0;
+        int[] list = posTris[p];
+        for (int i = 0; i < posTriCount[p]; i++) {
+            int t = list[i];
+            if (dead[t]) continue;
+            for (int k = 0; k < 3; k++) {
+                int q = pos(t, k);
+                if (q == p) continue;
+                boolean found = false;
+                for (int j = 0; j < Math.min(n, out.length); j++) if (out[j] == q) {
+                    found = true;
+                    break;
+                }
+                if (found) continue;
+                if (n < out.length) out[n] = q;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void collapse(int from, int to) {
+        // the welded vertex at to used by the triangles around from, they are all on one side of any seam at to
+        int target = -1;
+        int[] list = posTris[from];
+        for (int i = 0; i < posTriCount[from] && target < 0; i++) {
+            int t = list[i];
+            if (!dead[t]) for (int k = 0; k < 3; k++) if (pos(t, k) == to) target = tris[t * 3 + k];
+        }
+
+        for (int i = 0; i < posTriCount[from]; i++) {
+            int t = list[i];
+            if (dead[t]) continue;
+            if (pos(t, 0) == to || pos(t, 1) == to || pos(t, 2) == to) {
+                dead[t] = true;
+                liveTris--;
+                continue;
+            }
+            for (int k = 0; k < 3; k++) if (pos(t, k) == from) tris[t * 3 + k] = target;
+            addTri(to, t);
+        }
+        removed[from] = true;
+        for (int i = 0; i < 10; i++) quadrics[to * 10 + i] += quadrics[from * 10 + i];
+
+        // every position whose neighbourhood changed is now adjacent to to
+        int n = neighbours(to, linkA);
+        if (n > linkA.length) {
+            linkA = new int[n];
+            n = neighbours(to, linkA);
+        }
+        int[] changed = Arrays.copyOf(linkA, n);
+        version[to]++;
+        queueBest(to);
+        for (int i = 0; i < n; i++) {
+            version[changed[i]]++;
+            queueBest(changed[i]);
+        }
+    }
+
+    /**
+     * @return True if t and t + 1 are the two halves of an input quad and are both unchanged at the shared edge
+     */
+    private boolean joined(int t) {
+        return joinNext[t] && !dead[t]
+                && !dead[t + 1]
+                && tris[t * 3] == tris[t * 3 + 3]
+                && tris[t * 3 + 2] == tris[t * 3 + 4];
+    }
+
+    private CCModel build() {
+        boolean quads = model.vertexMode == 7;
+        int faces = liveTris;
+        if (quads) for (int t = 0; t < triCount; t++) if (joined(t)) faces--;
+
+        int vp = quads ? 4 : 3;
+        CCModel out = CCModel.newModel(model.vertexMode, faces * vp);
+        Vector3[] outNormals = normals != null ? out.getOrAllocate(CCRenderState.normalAttrib) : null;
+        int[] face = new int[4];
+        int i = 0;
+        for (int t = 0; t < triCount; t++) {
+            if (dead[t]) continue;
+            face[0] = tris[t * 3];
+            face[1] = tris[t * 3 + 1];
+            face[2] = face[3] = tris[t * 3 + 2];
+            // a quad that was split and survived whole is emitted as it was, other triangles as degenerate quads
+            if (quads && joined(t)) face[3] = tris[++t * 3 + 2];
+
+            for (int k = 0; k < vp; k++) {
+                int rep = vertexRep[face[k]];
+                out.verts[i] = model.verts[rep].copy();
+                if (outNormals != null) outNormals[i] = normals[rep].copy();
+                i++;
+            }
+        }
+
+        if (normals != null) {
+            if (model.hasAttribute(CCRenderState.lightCoordAttrib)) out.computeLightCoords();
+            else if (model.hasAttribute(CCRenderState.lightCoordIndexAttrib)) out.computeLightCoordIndices();
+        }
+        return out;
+    }
+}
@@ -0,0 +1,212 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+
+import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.VertexAttribute;
+import codechicken.lib.vec.RedundantTransformation;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * A view of a model that shares its vertex and attribute arrays, so it takes a constant amount of memory instead of a
+ * full copy. It is the counterpart of {@link CCModel#copy}, {@link CCModel#sidedCopy}, {@link CCModel#twoFacedCopy}
+ * and {@link CCModel#generateSidedModels}, see {@link CCModel#variant}, {@link CCModel#sidedVariant},
+ * {@link CCModel#twoFacedVariant} and {@link CCModel#generateSidedVariants}. Positions and normals are transformed as
+ * each vertex is loaded, the transformation should not be changed while it is in use.
+ * <p>
+ * Sides and light coordinates depend on the orientation, so for transformed variants the arrays of the base model are
+ * not used for them. Sides are found from the transformed normals, and light coordinates are computed from the
+ * transformed positions like a model without them. Other attributes such as colour are read from the base model.
+ * Changes to the base model are seen by the variant.
+ * <p>
+ * A two faced variant is followed by the faces of the base model with their vertices in reverse order and their
+ * normals negated, like twoFacedCopy. Its attribute arrays other than normals are doubled when first used, and again
+ * when the array of the base model is replaced, so changes to the elements of a primitive base array are not seen.
+ * <p>
+ * Each render pays for the transformation of every vertex. Use {@link #materialize()} for a mutable copy, or for
+ * variants rendered often enough that the memory is worth it.
+ */
+public class ModelVariant implements CCRenderState.IVertexSource {
+
+    public final CCModel base;
+    public final Transformation transform;
+    public final boolean twoFaced;
+    private final boolean oriented;
+
+    /**
+     * The doubled attribute arrays of a two faced variant, by attribute index. Replaced rather than changed, so it can
+     * be read by other threads
+     */
+    private volatile Doubled[] doubled = new Doubled[0];
+
+    public ModelVariant(CCModel base, Transformation transform) {
+        this(base, transform, false);
+    }
+
+    public ModelVariant(CCModel base, Transformation transform, boolean twoFaced) {
+        this.base = base;
+        this.transform = transform;
+        this.twoFaced = twoFaced;
+        oriented = !transform.isRedundant();
+    }
+
+    /**
+     * An untransformed view of base, the counterpart of {@link CCModel#copy}
+     */
+    public ModelVariant(CCModel base) {
+        this(base, new RedundantTransformation(), false);
+    }
+
+    /**
+     * Like {@link CCModel#generateSidedModels}, but the other 5 sides are variants of the model
+     *
+     * @param side  The side of the model
+     * @param point The rotation point
+     * @return An array of 6 models, with the model itself at side
+     */
+    public static CCRenderState.IVertexSource[] generateSided(CCModel model, int side, Vector3 point) {
+        CCRenderState.IVertexSource[] models = new CCRenderState.IVertexSource[6];
+        models[side] = model;
+        CCModel.generateSidedVariants(models, side, point);
+        return models;
+    }
+
+    /**
+     * Like {@link CCModel#generateSidedModelsH}, but the other 3 horizontal sides are variants of the model
+     *
+     * @param side  The side of the model
+     * @param point The rotation point
+     * @return An array of 6 models, with the model itself at side and null for the vertical sides
+     */
+    public static CCRenderState.IVertexSource[] generateSidedH(CCModel model, int side, Vector3 point) {
+        CCRenderState.IVertexSource[] models = new CCRenderState.IVertexSource[6];
+        models[side] = model;
+        CCModel.generateSidedVariantsH(models, side, point);
+        return models;
+    }
+
+    /**
+     * @return A new model with the transformation applied, equal to the result of the CCModel method the variant is the
+     *         counterpart of
+     */
+    public CCModel materialize() {
+        return (twoFaced ? base.twoFacedCopy() : base.copy()).apply(transform);
+    }
+
+    /**
+     * @return The vertex of the base model loaded for index. The second half of a two faced variant reverses each face
+     *         as generateBackface does, keeping the first vertex in place
+     */
+    private int baseIndex(int index) {
+        int n = base.verts.length;
+        if (index < n) return index;
+
+        index -= n;
+        int vp = base.vp, d = index % vp;
+        return d == 0 ? index : index - d + vp - d;
+    }
+
+    @Override
+    public Vertex5[] getVertices() {
+        return null;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return twoFaced ? base.verts.length * 2 : base.verts.length;
+    }
+
+    @Override
+    public void loadVertex(CCRenderState state, int index) {
+        state.vert.set(base.verts[baseIndex(index)]);
+        if (oriented) state.vert.vec.apply(transform);
+    }
+
+    @Override
+    public int getVertsPerFace() {
+        return base.vp;
+    }
+
+    @Override
+    public <T> T getAttributes(VertexAttribute<T> attr) {
+        if (attr == CCRenderState.normalAttrib ? oriented || twoFaced : oriented && isOriented(attr)) return null;
+
+        T array = base.getAttributes(attr);
+        return array == null || !twoFaced ? array : doubled(attr, array);
+    }
+
+    @Override
+    public boolean hasAttribute(VertexAttribute<?> attrib) {
+        // normals are set by prepareVertex, from the base normals or sides
+        if (attrib == CCRenderState.normalAttrib && oriented)
+            return base.hasAttribute(attrib) || base.hasAttribute(CCRenderState.sideAttrib);
+        if (oriented && isOriented(attrib)) return false;
+
+        return base.hasAttribute(attrib);
+    }
+
+    private static boolean isOriented(VertexAttribute<?> attrib) {
+        return attrib == CCRenderState.normalAttrib || attrib == CCRenderState.sideAttrib
+                || attrib == CCRenderState.lightCoordAttrib
+                || attrib == CCRenderState.lightCoordIndexAttrib;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T doubled(VertexAttribute<T> attr, T array) {
+        Doubled[] cache = doubled;
+        int a = attr.attributeIndex;
+        if (a < cache.length && cache[a] != null && cache[a].from == array) return (T) cache[a].array;
+
+        int n = base.verts.length;
+        T copy = attr.newArray(n * 2);
+        System.arraycopy(array, 0, copy, 0, n);
+        for (int i = n; i < n * 2; i++) System.arraycopy(array, baseIndex(i), copy, i, 1);
+
+        cache = Arrays.copyOf(cache, Math.max(cache.length, a + 1));
+        cache[a] = new Doubled(array, copy);
+        doubled = cache;
+        return copy;
+    }
+
+    @Override
+    public void prepareVertex(CCRenderState state) {
+        if (!oriented && !twoFaced) return;
+
+        int index = baseIndex(state.vertexIndex);
+        Vector3[] normals = base.normals();
+        if (normals != null) {
+            state.normal.set(normals[index]);
+            if (state.vertexIndex >= base.verts.length) state.normal.negate();
+        } else {
+            int[] sides = base.getAttributes(CCRenderState.sideAttrib);
+            if (!oriented || sides == null) return;
+            state.normal.set(Rotation.axes[sides[index]]);
+        }
+        if (oriented) transform.applyN(state.normal);
+    }
+
+    public void render(CCRenderState state, IVertexOperation... ops) {
+        render(state, 0, getVertexCount(), ops);
+    }
+
+    /**
+     * Renders vertices start through end-1 of the model
+     */
+    public void render(CCRenderState state, int start, int end, IVertexOperation... ops) {
+        state.setPipelineInstance(this, start, end, ops);
+        state.renderInstance();
+    }
+
+    private static final class Doubled {
+
+        final Object from;
+        final Object array;
+
+        Doubled(Object from, Object array) {
+            this.from = from;
+            this.array = array;
+        }
+    }
+}
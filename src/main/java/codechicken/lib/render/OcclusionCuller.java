@@ -0,0 +1,94 @@
+package codechicken.lib.render;
+
+import net.minecraft.world.IBlockAccess;
+
+import codechicken.lib.vec.BlockCoord;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Culls faces on the boundary of a block that are hidden by an opaque neighbour. Vertex positions are expected in
+ * world space, translated to the located block. A face is only culled when its normal is axis aligned and it lies on
+ * the side of the block, so faces inside the block are always kept. Faces are assumed not to extend past the block.
+ */
+public class OcclusionCuller implements CCRenderState.IFaceOperation {
+
+    public static final int operationIndex = CCRenderState.registerOperation();
+    private static final ThreadLocal<OcclusionCuller> instances = ThreadLocal.withInitial(OcclusionCuller::new);
+
+    public static OcclusionCuller instance() {
+        return instances.get();
+    }
+
+    public static final double EPSILON = 1E-4;
+
+    public IBlockAccess access;
+    public BlockCoord pos = new BlockCoord();
+
+    private int sampled = 0;
+    private int occluded = 0;
+    private final BlockCoord c = new BlockCoord();
+
+    public OcclusionCuller locate(IBlockAccess a, int x, int y, int z) {
+        access = a;
+        pos.set(x, y, z);
+        sampled = occluded = 0;
+        return this;
+    }
+
+    /**
+     * @return True if the neighbour on side is an opaque cube
+     */
+    public boolean isOccluded(int side) {
+        if ((sampled & 1 << side) == 0) {
+            c.set(pos).offset(side);
+            if (access.getBlock(c.x, c.y, c.z).isOpaqueCube()) occluded |= 1 << side;
+            sampled |= 1 << side;
+        }
+        return (occluded & 1 << side) != 0;
+    }
+
+    @Override
+    public boolean load(CCRenderState state) {
+        if (access == null) return false;
+
+        state.pipeline.addDependency(CCRenderState.normalAttrib);
+        state.pipeline.addRequirement(Transformation.operationIndex);
+        return true;
+    }
+
+    @Override
+    public boolean operateFace(CCRenderState state) {
+        // the side attribute may be computed before transformations, so use the transformed normal
+        Vector3 n = state.normal;
+        int side = CCModel.findSide(n);
+        if (side < 0) return true;
+
+        Vector3 v = state.vert.vec;
+        double normal, offset;
+        switch (side >> 1) {
+            case 0:
+                normal = n.y;
+                offset = v.y - pos.y;
+                break;
+            case 1:
+                normal = n.z;
+                offset = v.z - pos.z;
+                break;
+            default:
+                normal = n.x;
+                offset = v.x - pos.x;
+        }
+        if (Math.abs(normal) < 1 - EPSILON || Math.abs(offset - (side & 1)) > EPSILON) return true;
+
+        return !isOccluded(side);
+    }
+
+    @Override
+    public void operate(CCRenderState state) {}
+
+    @Override
+    public int operationID() {
+        return operationIndex;
+    }
+}
@@ -0,0 +1,234 @@
+package codechicken.lib.render;
+
+import codechicken.lib.lighting.LC;
+import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.VertexAttribute;
+import codechicken.lib.render.uv.UV;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * A model stored in flat primitive arrays instead of Vertex5, Vector3 and LC objects. Positions, uvs and normals are
+ * kept as doubles so conversion to and from CCModel is lossless. Colour, lighting and side attributes are already
+ * int arrays and are shared with the pipeline directly, normals and light coordinates are set in prepareVertex.
+ * <p>
+ * Packed models are intended for storage and rendering, use {@link #toModel()} to edit one.
+ */
+@SuppressWarnings("ForLoopReplaceableByForEach")
+public class PackedModel implements CCRenderState.IVertexSource {
+
+    public final int vertexMode;
+    public final int vertexCount;
+
+    /**
+     * x, y, z per vertex
+     */
+    public final double[] positions;
+    /**
+     * u, v per vertex
+     */
+    public final double[] uvs;
+    /**
+     * UV.tex per vertex, or null if all zero
+     */
+    public final int[] textures;
+    /**
+     * x, y, z per vertex, or null if the model has no normals
+     */
+    public final double[] normals;
+    /**
+     * LC side per vertex and LC fa, fb, fc, fd per vertex, or null if the model has no light coordinates
+     */
+    public final int[] lcSides;
+    public final float[] lcFactors;
+    /**
+     * Remaining attribute arrays indexed by attributeIndex, normals and light coordinates are always null here
+     */
+    private final Object[] attributes;
+
+    private PackedModel(int vertexMode, int vertexCount, double[] positions, double[] uvs, int[] textures,
+            double[] normals, int[] lcSides, float[] lcFactors, Object[] attributes) {
+        this.vertexMode = vertexMode;
+        this.vertexCount = vertexCount;
+        this.positions = positions;
+        this.uvs = uvs;
+        this.textures = textures;
+        this.normals = normals;
+        this.lcSides = lcSides;
+        this.lcFactors = lcFactors;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Packs a copy of the model. Normal and light coordinate arrays must be completely filled
+     */
+    public static PackedModel fromModel(CCModel model) {
+        Vertex5[] verts = model.verts;
+        int n = verts.length;
+        double[] positions = new double[n * 3];
+        double[] uvs = new double[n * 2];
+        int[] textures = null;
+        for (int i = 0; i < n; i++) {
+            Vertex5 vert = verts[i];
+            positions[i * 3] = vert.vec.x;
+            positions[i * 3 + 1] = vert.vec.y;
+            positions[i * 3 + 2] = vert.vec.z;
+            uvs[i * 2] = vert.uv.u;
+            uvs[i * 2 + 1] = vert.uv.v;
+            if (vert.uv.tex != 0) {
+                if (textures == null) textures = new int[n];
+                textures[i] = vert.uv.tex;
+            }
+        }
+
+        double[] normals = null;
+        Vector3[] normalArray = model.getAttributes(CCRenderState.normalAttrib);
+        if (normalArray != null) {
+            normals = new double[n * 3];
+            for (int i = 0; i < n; i++) {
+                Vector3 normal = normalArray[i];
+                CCModel.illegalAssert(normal != null, "Missing normal for vertex " + i);
+                normals[i * 3] = normal.x;
+                normals[i * 3 + 1] = normal.y;
+                normals[i * 3 + 2] = normal.z;
+            }
+        }
+
+        int[] lcSides = null;
+        float[] lcFactors = null;
+        LC[] lcArray = model.getAttributes(CCRenderState.lightCoordAttrib);
+        if (lcArray != null) {
+            lcSides = new int[n];
+            lcFactors = new float[n * 4];
+            for (int i = 0; i < n; i++) {
+                LC lc = lcArray[i];
+                CCModel.illegalAssert(lc != null, "Missing light coordinate for vertex " + i);
+                lcSides[i] = lc.side;
+                lcFactors[i * 4] = lc.fa;
+                lcFactors[i * 4 + 1] = lc.fb;
+                lcFactors[i * 4 + 2] = lc.fc;
+                lcFactors[i * 4 + 3] = lc.fd;
+            }
+        }
+
+        Object[] attributes = new Object[model.attributes.size()];
+        for (int a = 0; a < attributes.length; a++) {
+            Object array = model.attributes.get(a);
+            if (array == null || a == CCRenderState.normalAttrib.attributeIndex
+                    || a == CCRenderState.lightCoordAttrib.attributeIndex)
+                continue;
+
+            Object copy = CCRenderState.getAttribute(a).newArray(n);
+            CCRenderState.arrayCopy(array, 0, copy, 0, n);
+            attributes[a] = copy;
+        }
+
+        return new PackedModel(
+                model.vertexMode,
+                n,
+                positions,
+                uvs,
+                textures,
+                normals,
+                lcSides,
+                lcFactors,
+                attributes);
+    }
+
+    /**
+     * Unpacks this model into a new CCModel
+     */
+    public CCModel toModel() {
+        int n = vertexCount;
+        CCModel model = CCModel.newModel(vertexMode, n);
+        for (int i = 0; i < n; i++) model.verts[i] = new Vertex5(
+                positions[i * 3],
+                positions[i * 3 + 1],
+                positions[i * 3 + 2],
+                uvs[i * 2],
+                uvs[i * 2 + 1],
+                textures != null ? textures[i] : 0);
+
+        if (normals != null) {
+            Vector3[] normalArray = model.getOrAllocate(CCRenderState.normalAttrib);
+            for (int i = 0; i < n; i++)
+                normalArray[i] = new Vector3(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+        }
+
+        if (lcSides != null) {
+            LC[] lcArray = model.getOrAllocate(CCRenderState.lightCoordAttrib);
+            for (int i = 0; i < n; i++) lcArray[i] = new LC(
+                    lcSides[i],
+                    lcFactors[i * 4],
+                    lcFactors[i * 4 + 1],
+                    lcFactors[i * 4 + 2],
+                    lcFactors[i * 4 + 3]);
+        }
+
+        for (int a = 0; a < attributes.length; a++) if (attributes[a] != null) {
+            VertexAttribute<Object> attrib = (VertexAttribute<Object>) CCRenderState.getAttribute(a);
+            CCRenderState.arrayCopy(attributes[a], 0, model.getOrAllocate(attrib), 0, n);
+        }
+        return model;
+    }
+
+    @Override
+    public Vertex5[] getVertices() {
+        return null;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public void loadVertex(CCRenderState state, int index) {
+        state.vert.vec.set(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2]);
+        UV uv = state.vert.uv;
+        uv.u = uvs[index * 2];
+        uv.v = uvs[index * 2 + 1];
+        uv.tex = textures != null ? textures[index] : 0;
+    }
+
+    @Override
+    public int getVertsPerFace() {
+        return vertexMode == 7 ? 4 : 3;
+    }
+
+    @Override
+    public <T> T getAttributes(VertexAttribute<T> attr) {
+        if (attr.attributeIndex < attributes.length) return (T) attributes[attr.attributeIndex];
+
+        return null;
+    }
+
+    @Override
+    public boolean hasAttribute(VertexAttribute<?> attrib) {
+        if (attrib == CCRenderState.normalAttrib) return normals != null;
+        if (attrib == CCRenderState.lightCoordAttrib) return lcSides != null;
+
+        return attrib.attributeIndex < attributes.length && attributes[attrib.attributeIndex] != null;
+    }
+
+    @Override
+    public void prepareVertex(CCRenderState state) {
+        int i = state.vertexIndex;
+        if (normals != null) state.normal.set(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+        if (lcSides != null) {
+            int k = i * 4;
+            state.lc.set(lcSides[i], lcFactors[k], lcFactors[k + 1], lcFactors[k + 2], lcFactors[k + 3]);
+        }
+    }
+
+    public void render(CCRenderState state, IVertexOperation... ops) {
+        render(state, 0, vertexCount, ops);
+    }
+
+    /**
+     * Renders vertices start through end-1 of the model
+     */
+    public void render(CCRenderState state, int start, int end, IVertexOperation... ops) {
+        state.setPipelineInstance(this, start, end, ops);
+        state.renderInstance();
+    }
+}
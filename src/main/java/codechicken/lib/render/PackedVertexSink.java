@@ -0,0 +1,129 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+
+/**
+ * Vertex sink that packs vertices into an int array in the same layout as the Tessellator raw buffer. Each vertex is
+ * {@link #STRIDE} ints: x, y, z, u, v as float bits, then colour, normal and brightness.
+ * <p>
+ * Does not need a GL context. Reuse an instance to avoid reallocating the buffer, the contents are kept until the next
+ * call to startDrawing.
+ */
+public class PackedVertexSink implements CCRenderState.IVertexSink {
+
+    public static final int STRIDE = 8;
+
+    public int[] buffer;
+    public int vertexCount;
+    public int drawMode;
+
+    public boolean hasNormals;
+    public boolean hasColour;
+    public boolean hasBrightness;
+    public boolean drawing;
+
+    public double xOffset;
+    public double yOffset;
+    public double zOffset;
+
+    private int normal;
+    private int colour;
+    private int brightness;
+
+    public PackedVertexSink() {
+        this(1024);
+    }
+
+    public PackedVertexSink(int vertexCapacity) {
+        buffer = new int[vertexCapacity * STRIDE];
+    }
+
+    public void setTranslation(double x, double y, double z) {
+        xOffset = x;
+        yOffset = y;
+        zOffset = z;
+    }
+
+    /**
+     * Grows the buffer so that at least the given number of additional vertices can be added without reallocating
+     */
+    public void ensureCapacity(int vertices) {
+        int required = (vertexCount + vertices) * STRIDE;
+        if (required > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+    }
+
+    /**
+     * @return The number of ints in use at the start of the buffer
+     */
+    public int size() {
+        return vertexCount * STRIDE;
+    }
+
+    @Override
+    public void startDrawing(int mode) {
+        if (drawing) throw new IllegalStateException("Already drawing!");
+
+        drawing = true;
+        drawMode = mode;
+        vertexCount = 0;
+        hasNormals = hasColour = hasBrightness = false;
+    }
+
+    @Override
+    public void setNormal(float x, float y, float z) {
+        hasNormals = true;
+        normal = (byte) (int) (x * 127.0F) & 255 | ((byte) (int) (y * 127.0F) & 255) << 8
+                | ((byte) (int) (z * 127.0F) & 255) << 16;
+    }
+
+    @Override
+    public void setColour(int r, int g, int b, int a) {
+        hasColour = true;
+        r = clamp(r);
+        g = clamp(g);
+        b = clamp(b);
+        a = clamp(a);
+        // Tessellator stores colours in native order, which is little endian on every platform the game runs on
+        colour = a << 24 | b << 16 | g << 8 | r;
+    }
+
+    private static int clamp(int c) {
+        return c > 255 ? 255 : c < 0 ? 0 : c;
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+        hasBrightness = true;
+        this.brightness = brightness;
+    }
+
+    @Override
+    public void addVertex(double x, double y, double z, double u, double v) {
+        ensureCapacity(1);
+        addVertexUnchecked(x, y, z, u, v);
+    }
+
+    /**
+     * Adds a vertex without growing the buffer, {@link #ensureCapacity(int)} must have been called for it
+     */
+    public void addVertexUnchecked(double x, double y, double z, double u, double v) {
+        int i = vertexCount * STRIDE;
+        int[] buffer = this.buffer;
+        buffer[i] = Float.floatToRawIntBits((float) (x + xOffset));
+        buffer[i + 1] = Float.floatToRawIntBits((float) (y + yOffset));
+        buffer[i + 2] = Float.floatToRawIntBits((float) (z + zOffset));
+        buffer[i + 3] = Float.floatToRawIntBits((float) u);
+        buffer[i + 4] = Float.floatToRawIntBits((float) v);
+        buffer[i + 5] = colour;
+        buffer[i + 6] = normal;
+        buffer[i + 7] = brightness;
+        vertexCount++;
+    }
+
+    @Override
+    public void draw() {
+        if (!drawing) throw new IllegalStateException("Not drawing!");
+
+        drawing = false;
+    }
+}
@@ -0,0 +1,352 @@
+package codechicken.lib.render;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+
+import com.google.common.collect.MapMaker;
+
+import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.VertexAttribute;
+
+/**
+ * Opt-in counters for the render pipeline, enabled with -Dccl.profilePipeline=true. Records per operation invocation
+ * counts and sampled timings, vertices written per model, and how often pipelines are rebuilt. When disabled every
+ * hook is behind the static final {@link #ENABLED} flag, so the JIT removes them.
+ * <p>
+ * Every {@link #SAMPLE_INTERVAL}th call of each operation is timed with System.nanoTime, set with
+ * -Dccl.profilePipeline.sampleInterval. A summary is logged every {@link #LOG_INTERVAL} seconds, set with
+ * -Dccl.profilePipeline.logInterval (0 to disable), and can be queried at any time with {@link #snapshot()}.
+ * <p>
+ * Each pipeline records into its own counters without synchronization, snapshots read them racily and may be slightly
+ * behind. Operations are grouped by class. Models are counted up to {@link #MAX_MODELS}, after which further models
+ * are counted under "other". Give models a readable name with {@link #label}.
+ * <p>
+ * The profiler doesn't keep anything alive: models are held weakly, so the counts of a model are dropped once it is
+ * garbage collected, and so are the counters of a pipeline once its render state is, for example when its thread ends.
+ * <p>
+ * Vertices written by {@link BakedModel#render} are counted under the baked model, and replays of a
+ * {@link BlockOutputCache} under the cache. A cache miss runs the renderer first, so its vertices are counted both
+ * under the models it renders and under the cache.
+ */
+public class PipelineProfiler {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ccl.profilePipeline", "false"));
+    public static final int SAMPLE_INTERVAL = Math.max(1, Integer.getInteger("ccl.profilePipeline.sampleInterval", 64));
+    public static final int LOG_INTERVAL = Integer.getInteger("ccl.profilePipeline.logInterval", 60);
+    public static final int MAX_MODELS = 4096;
+
+    /**
+     * Guarded by itself. Cleared references are removed on register and snapshot
+     */
+    private static final List<WeakReference<Recorder>> recorders = new ArrayList<>();
+    private static final Map<Object, String> labels = Collections.synchronizedMap(new WeakHashMap<>());
+
+    static {
+        if (ENABLED && LOG_INTERVAL > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "CCL Pipeline Profiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(
+                    () -> LogManager.getLogger("CodeChickenLib").info(snapshot().format(20)),
+                    LOG_INTERVAL,
+                    LOG_INTERVAL,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Counters for one operation class in one pipeline
+     */
+    static final class OpCounter {
+
+        private long invocations;
+        private long sampledVertices;
+        private long sampledNanos;
+        private int countdown = SAMPLE_INTERVAL;
+
+        void operate(IVertexOperation op, CCRenderState state) {
+            invocations++;
+            if (--countdown > 0) {
+                op.operate(state);
+                return;
+            }
+            countdown = SAMPLE_INTERVAL;
+            long start = System.nanoTime();
+            op.operate(state);
+            sampledNanos += System.nanoTime() - start;
+            sampledVertices++;
+        }
+
+        void operateBatch(IVertexOperation op, CCRenderState state, VertexBatch batch) {
+            invocations += batch.count;
+            if (--countdown > 0) {
+                op.operateBatch(state, batch);
+                return;
+            }
+            countdown = SAMPLE_INTERVAL;
+            long start = System.nanoTime();
+            op.operateBatch(state, batch);
+            sampledNanos += System.nanoTime() - start;
+            sampledVertices += batch.count;
+        }
+    }
+
+    /**
+     * The counters of one pipeline. Only written by the thread using the pipeline
+     */
+    static final class Recorder {
+
+        private final Map<Class<?>, OpCounter> ops = new ConcurrentHashMap<>();
+        /**
+         * Weak identity keys, see the class comment
+         */
+        private final Map<Object, long[]> models = new MapMaker().weakKeys().makeMap();
+        private final long[] otherModels = new long[2];
+        long rebuilds;
+        long cachedRebuilds;
+        /**
+         * Vertices written by the render state, used to attribute vertices to models
+         */
+        long vertices;
+
+        OpCounter counter(IVertexOperation op) {
+            OpCounter counter = ops.get(op.getClass());
+            if (counter == null) ops.put(op.getClass(), counter = new OpCounter());
+            return counter;
+        }
+
+        void addModel(Object model, long vertices) {
+            long[] counts = models.get(model);
+            if (counts == null) {
+                if (models.size() >= MAX_MODELS) counts = otherModels;
+                else models.put(model, counts = new long[2]);
+            }
+            counts[0]++;
+            counts[1] += vertices;
+        }
+
+        private void reset() {
+            // pipelines keep references to their counters until the next rebuild, so zero them instead of removing
+            for (OpCounter counter : ops.values())
+                counter.invocations = counter.sampledVertices = counter.sampledNanos = 0;
+            models.clear();
+            otherModels[0] = otherModels[1] = 0;
+            rebuilds = cachedRebuilds = 0;
+        }
+    }
+
+    static Recorder register() {
+        Recorder recorder = new Recorder();
+        synchronized (recorders) {
+            recorders.removeIf(ref -> ref.get() == null);
+            recorders.add(new WeakReference<>(recorder));
+        }
+        return recorder;
+    }
+
+    /**
+     * @return The recorders of all live pipelines
+     */
+    private static List<Recorder> recorders() {
+        ArrayList<Recorder> live = new ArrayList<>();
+        synchronized (recorders) {
+            recorders.removeIf(ref -> {
+                Recorder recorder = ref.get();
+                if (recorder == null) return true;
+                live.add(recorder);
+                return false;
+            });
+        }
+        return live;
+    }
+
+    /**
+     * Sets the name a model, baked model or cache is reported under. Does nothing when profiling is disabled
+     */
+    public static void label(Object model, String name) {
+        if (ENABLED) labels.put(model, name);
+    }
+
+    /**
+     * Clears the counters of all pipelines. Counters being written concurrently may keep a few counts
+     */
+    public static void reset() {
+        for (Recorder recorder : recorders()) recorder.reset();
+    }
+
+    public static final class OpStats {
+
+        public final String name;
+        /**
+         * The number of vertices the operation has been run on
+         */
+        public final long invocations;
+        public final long sampledVertices;
+        public final long sampledNanos;
+
+        private OpStats(String name, long invocations, long sampledVertices, long sampledNanos) {
+            this.name = name;
+            this.invocations = invocations;
+            this.sampledVertices = sampledVertices;
+            this.sampledNanos = sampledNanos;
+        }
+
+        public double nanosPerVertex() {
+            return sampledVertices == 0 ? 0 : (double) sampledNanos / sampledVertices;
+        }
+
+        public double estimatedNanos() {
+            return nanosPerVertex() * invocations;
+        }
+    }
+
+    public static final class ModelStats {
+
+        public final String name;
+        public final long renders;
+        public final long vertices;
+
+        private ModelStats(String name, long renders, long vertices) {
+            this.name = name;
+            this.renders = renders;
+            this.vertices = vertices;
+        }
+    }
+
+    public static final class Snapshot {
+
+        /**
+         * Sorted by estimated total time, highest first
+         */
+        public final List<OpStats> ops;
+        /**
+         * Sorted by vertices written, highest first
+         */
+        public final List<ModelStats> models;
+        public final long rebuilds;
+        /**
+         * Rebuilds that reused a resolved pipeline from the pipeline cache
+         */
+        public final long cachedRebuilds;
+
+        private Snapshot(List<OpStats> ops, List<ModelStats> models, long rebuilds, long cachedRebuilds) {
+            this.ops = ops;
+            this.models = models;
+            this.rebuilds = rebuilds;
+            this.cachedRebuilds = cachedRebuilds;
+        }
+
+        /**
+         * @param limit The maximum number of operations and models to list
+         */
+        public String format(int limit) {
+            StringBuilder sb = new StringBuilder("Render pipeline profile: ").append(rebuilds)
+                    .append(" pipeline rebuilds, ").append(cachedRebuilds).append(" from cache");
+            sb.append("\n  Operations (vertices, ns/vertex, estimated ms):");
+            for (int i = 0; i < Math.min(limit, ops.size()); i++) {
+                OpStats op = ops.get(i);
+                sb.append(
+                        String.format(
+                                "\n    %-60s %12d %8.1f %10.1f",
+                                op.name,
+                                op.invocations,
+                                op.nanosPerVertex(),
+                                op.estimatedNanos() / 1E6));
+            }
+            sb.append("\n  Models (renders, vertices):");
+            for (int i = 0; i < Math.min(limit, models.size()); i++) {
+                ModelStats model = models.get(i);
+                sb.append(String.format("\n    %-60s %12d %12d", model.name, model.renders, model.vertices));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return format(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @return The counters of all pipelines since the last reset
+     */
+    public static Snapshot snapshot() {
+        Map<Class<?>, String> attributeNames = attributeNames();
+        HashMap<Class<?>, long[]> ops = new HashMap<>();
+        IdentityHashMap<Object, long[]> models = new IdentityHashMap<>();
+        long[] other = new long[2];
+        long rebuilds = 0, cachedRebuilds = 0;
+        for (Recorder recorder : recorders()) {
+            rebuilds += recorder.rebuilds;
+            cachedRebuilds += recorder.cachedRebuilds;
+            for (Map.Entry<Class<?>, OpCounter> e : recorder.ops.entrySet()) {
+                long[] sum = ops.computeIfAbsent(e.getKey(), k -> new long[3]);
+                OpCounter c = e.getValue();
+                sum[0] += c.invocations;
+                sum[1] += c.sampledVertices;
+                sum[2] += c.sampledNanos;
+            }
+            for (Map.Entry<Object, long[]> e : recorder.models.entrySet()) {
+                long[] sum = models.computeIfAbsent(e.getKey(), k -> new long[2]);
+                sum[0] += e.getValue()[0];
+                sum[1] += e.getValue()[1];
+            }
+            other[0] += recorder.otherModels[0];
+            other[1] += recorder.otherModels[1];
+        }
+
+        ArrayList<OpStats> opStats = new ArrayList<>();
+        for (Map.Entry<Class<?>, long[]> e : ops.entrySet()) {
+            String name = attributeNames.get(e.getKey());
+            if (name == null) name = e.getKey().getName();
+            long[] sum = e.getValue();
+            opStats.add(new OpStats(name, sum[0], sum[1], sum[2]));
+        }
+        opStats.sort((a, b) -> Double.compare(b.estimatedNanos(), a.estimatedNanos()));
+
+        ArrayList<ModelStats> modelStats = new ArrayList<>();
+        for (Map.Entry<Object, long[]> e : models.entrySet()) {
+            Object model = e.getKey();
+            String name = labels.get(model);
+            if (name == null)
+                name = model.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(model));
+            modelStats.add(new ModelStats(name, e.getValue()[0], e.getValue()[1]));
+        }
+        if (other[0] > 0) modelStats.add(new ModelStats("other", other[0], other[1]));
+        modelStats.sort((a, b) -> Long.compare(b.vertices, a.vertices));
+
+        return new Snapshot(opStats, modelStats, rebuilds, cachedRebuilds);
+    }
+
+    /**
+     * The built in attributes are anonymous classes, name them after their field in CCRenderState
+     */
+    private static Map<Class<?>, String> attributeNames() {
+        HashMap<Class<?>, String> names = new HashMap<>();
+        for (Field field : CCRenderState.class.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || !VertexAttribute.class.isAssignableFrom(field.getType()))
+                continue;
+            try {
+                Object attrib = field.get(null);
+                if (attrib != null) names.put(attrib.getClass(), "CCRenderState." + field.getName());
+            } catch (IllegalAccessException ignored) {}
+        }
+        return names;
+    }
+}
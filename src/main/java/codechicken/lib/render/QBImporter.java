@@ -8,12 +8,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.imageio.ImageIO;
 
@@ -226,6 +229,20 @@ public class QBImporter {
             return null;
         }
 
+        /**
+         * @return A hash that is the same for all 8 transforms of the image, so only images with equal hashes can be
+         *         transforms of each other
+         */
+        public long transformHash() {
+            long h = 0;
+            for (int[] column : data) for (int rgba : column) {
+                // sum of mixed pixels, independent of order
+                long z = (rgba & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+                h += z ^ z >>> 29;
+            }
+            return (h * 31 + Math.min(width(), height())) * 31 + Math.max(width(), height());
+        }
+
         public boolean equals(QBImage img, ImageTransform t) {
             for (int u = 0; u < img.width(); u++)
                 for (int v = 0; v < img.height(); v++) if (t.access(this, u, v) != img.data[u][v]) return false;
@@ -453,8 +470,27 @@ public class QBImporter {
             for (int x = 0; x < size.x; x++) for (int z = 0; z < size.z; z++)
                 for (int y = 0; y < size.y; y++) if (solid[x][y][z]) list.add(expand(solid, new BlockCoord(x, y, z)));
 
-            for (int i = 0; i < list.size(); i++)
-                for (int j = i + 1; j < list.size(); j++) QBCuboid.clip(list.get(i), list.get(j));
+            // clipping only shrinks cuboids, so only pairs that intersect now can intersect when they are clipped.
+            // Find them with a sweep along x, then clip them in the same order as comparing every pair
+            int n = list.size();
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Integer.compare(list.get(a).c.min.x, list.get(b).c.min.x));
+
+            long[] pairs = new long[16];
+            int pairCount = 0;
+            for (int p = 0; p < n; p++) {
+                QBCuboid a = list.get(order[p]);
+                for (int q = p + 1; q < n && list.get(order[q]).c.min.x <= a.c.max.x; q++) {
+                    if (!QBCuboid.intersects(a, list.get(order[q]))) continue;
+                    if (pairCount == pairs.length) pairs = Arrays.copyOf(pairs, pairCount * 2);
+                    int i = Math.min(order[p], order[q]), j = Math.max(order[p], order[q]);
+                    pairs[pairCount++] = (long) i << 32 | j;
+                }
+            }
+            Arrays.sort(pairs, 0, pairCount);
+            for (int k = 0; k < pairCount; k++)
+                QBCuboid.clip(list.get((int) (pairs[k] >>> 32)), list.get((int) pairs[k]));
 
             return list;
         }
@@ -517,11 +553,17 @@ public class QBImporter {
             return m;
         }
 
-        private static void addImages(List<QBQuad> quads, List<QBImage> images) {
+        /**
+         * Adds the images of quads that are not a transform of an image already in images
+         *
+         * @param buckets The images of images by {@link QBImage#transformHash()}
+         */
+        private static void addImages(List<QBQuad> quads, List<QBImage> images, Map<Long, List<QBImage>> buckets) {
             for (QBQuad q : quads) {
                 QBImage img = q.image;
+                List<QBImage> bucket = buckets.computeIfAbsent(img.transformHash(), k -> new ArrayList<>());
                 boolean matched = false;
-                for (QBImage img2 : images) {
+                for (QBImage img2 : bucket) {
                     ImageTransform t = img.transformTo(img2);
                     if (t != null) {
                         q.t = t;
@@ -530,7 +572,10 @@ public class QBImporter {
                         break;
                     }
                 }
-                if (!matched) images.add(img);
+                if (!matched) {
+                    images.add(img);
+                    bucket.add(img);
+                }
             }
         }
     }
@@ -545,34 +590,54 @@ public class QBImporter {
         public QBMatrix[] matrices;
         public boolean rightHanded;
 
+        /**
+         * Matrices are converted in parallel on the common ForkJoinPool. Images are merged and packed in matrix order,
+         * so the result is the same as converting them one after another.
+         */
         public RasterisedModel toRasterisedModel(int flags) {
-            List<QBImage> qbImages = new ArrayList<QBImage>();
-            List<List<QBQuad>> modelQuads = new ArrayList<List<QBQuad>>();
-            List<BufferedImage> images = new ArrayList<BufferedImage>();
-
             boolean texturePlanes = (flags & TEXTUREPLANES) != 0;
             boolean squareTextures = (flags & SQUARETEXTURE) != 0;
             boolean mergeTextures = (flags & MERGETEXTURES) != 0;
             boolean scaleMC = (flags & SCALEMC) != 0;
 
-            for (QBMatrix mat : matrices) {
-                List<QBQuad> quads = mat.extractQuads(texturePlanes);
-                modelQuads.add(quads);
-                QBMatrix.addImages(quads, qbImages);
-                if (!mergeTextures) {
-                    images.add(ImagePackNode.pack(qbImages, squareTextures).toImage());
-                    qbImages.clear();
-                }
+            // without merged textures, each matrix is packed into its own image by the same task
+            List<List<QBQuad>> modelQuads = new ArrayList<List<QBQuad>>(Collections.nCopies(matrices.length, null));
+            ArrayList<ForkJoinTask<BufferedImage>> tasks = new ArrayList<>();
+            for (int i = 0; i < matrices.length; i++) {
+                QBMatrix mat = matrices[i];
+                int index = i;
+                tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                    List<QBQuad> quads = mat.extractQuads(texturePlanes);
+                    modelQuads.set(index, quads);
+                    if (mergeTextures) return null;
+
+                    List<QBImage> qbImages = new ArrayList<QBImage>();
+                    QBMatrix.addImages(quads, qbImages, new HashMap<>());
+                    return ImagePackNode.pack(qbImages, squareTextures).toImage();
+                }));
             }
 
-            if (mergeTextures) images.add(ImagePackNode.pack(qbImages, squareTextures).toImage());
+            List<BufferedImage> images = new ArrayList<BufferedImage>();
+            if (mergeTextures) {
+                List<QBImage> qbImages = new ArrayList<QBImage>();
+                Map<Long, List<QBImage>> buckets = new HashMap<>();
+                for (int i = 0; i < matrices.length; i++) {
+                    tasks.get(i).join();
+                    QBMatrix.addImages(modelQuads.get(i), qbImages, buckets);
+                }
+                images.add(ImagePackNode.pack(qbImages, squareTextures).toImage());
+            } else for (int i = 0; i < matrices.length; i++) images.add(tasks.get(i).join());
 
-            RasterisedModel m = new RasterisedModel(images);
+            ArrayList<ForkJoinTask<CCModel>> models = new ArrayList<>();
             for (int i = 0; i < matrices.length; i++) {
                 QBMatrix mat = matrices[i];
+                List<QBQuad> quads = modelQuads.get(i);
                 BufferedImage img = images.get(mergeTextures ? 0 : i);
-                m.add(mat.name, mat.buildModel(modelQuads.get(i), img, scaleMC));
+                models.add(ForkJoinPool.commonPool().submit(() -> mat.buildModel(quads, img, scaleMC)));
             }
+
+            RasterisedModel m = new RasterisedModel(images);
+            for (int i = 0; i < matrices.length; i++) m.add(matrices[i].name, models.get(i).join());
             return m;
         }
     }
@@ -624,23 +689,35 @@ public class QBImporter {
             ImageIO.write(img, "PNG", imgFile);
         }
 
+        /**
+         * @return A new map of names to models
+         */
+        public Map<String, CCModel> getModels() {
+            Map<String, CCModel> modelMap = new HashMap<String, CCModel>();
+            for (Map.Entry<String, Holder> e : map.entrySet()) modelMap.put(e.getKey(), e.getValue().m);
+            return modelMap;
+        }
+
+        /**
+         * Exports one png per model, or a single png named after baseName if the textures were merged
+         */
+        public void exportImages(String baseName, File imgDir) throws IOException {
+            if (!imgDir.exists()) imgDir.mkdirs();
+
+            if (images.size() < map.size()) exportImg(images.get(0), new File(imgDir, baseName + ".png"));
+            else for (Map.Entry<String, Holder> e : map.entrySet())
+                exportImg(images.get(e.getValue().img), new File(imgDir, e.getKey() + ".png"));
+        }
+
         public void export(File objFile, File imgDir) {
             try {
                 if (!objFile.exists()) objFile.createNewFile();
-                if (!imgDir.exists()) imgDir.mkdirs();
-
-                Map<String, CCModel> modelMap = new HashMap<String, CCModel>();
-                for (Map.Entry<String, Holder> e : map.entrySet()) modelMap.put(e.getKey(), e.getValue().m);
 
                 PrintWriter p = new PrintWriter(objFile);
-                CCModel.exportObj(modelMap, p);
+                CCModel.exportObj(getModels(), p);
                 p.close();
 
-                if (images.size() < map.size())
-                    exportImg(images.get(0), new File(imgDir, objFile.getName().replaceAll("(.+)\\..+", "$1.png")));
-                else for (Map.Entry<String, Holder> e : map.entrySet())
-                    exportImg(images.get(e.getValue().img), new File(imgDir, e.getKey() + ".png"));
-
+                exportImages(objFile.getName().replaceAll("(.+)\\..+", "$1"), imgDir);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
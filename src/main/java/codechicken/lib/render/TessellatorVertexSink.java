@@ -0,0 +1,42 @@
+package codechicken.lib.render;
+
+import net.minecraft.client.renderer.Tessellator;
+
+/**
+ * Default vertex sink, forwards everything to Tessellator.instance. The field is read on every call so thread local
+ * tessellators installed by other mods are respected.
+ */
+public class TessellatorVertexSink implements CCRenderState.IVertexSink {
+
+    public static final TessellatorVertexSink instance = new TessellatorVertexSink();
+
+    @Override
+    public void startDrawing(int mode) {
+        Tessellator.instance.startDrawing(mode);
+    }
+
+    @Override
+    public void setNormal(float x, float y, float z) {
+        Tessellator.instance.setNormal(x, y, z);
+    }
+
+    @Override
+    public void setColour(int r, int g, int b, int a) {
+        Tessellator.instance.setColorRGBA(r, g, b, a);
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+        Tessellator.instance.setBrightness(brightness);
+    }
+
+    @Override
+    public void addVertex(double x, double y, double z, double u, double v) {
+        Tessellator.instance.addVertexWithUV(x, y, z, u, v);
+    }
+
+    @Override
+    public void draw() {
+        Tessellator.instance.draw();
+    }
+}
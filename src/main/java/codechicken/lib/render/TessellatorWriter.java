@@ -0,0 +1,208 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+
+import net.minecraft.client.renderer.Tessellator;
+
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Writes vertices straight into the raw buffer of Tessellator.instance, growing it once for a whole render call
+ * instead of through addVertexWithUV. Used by CCRenderState when the sink is {@link TessellatorVertexSink#instance}.
+ * The fields of the Tessellator are made public by the access transformer in META-INF/codechickenlib_at.cfg and are
+ * read and written in place, so the Tessellator can still be used between vertices. The normal, colour and brightness
+ * setters and startDrawing and draw are forwarded to the Tessellator.
+ * <p>
+ * The buffer contents and Tessellator state are the same as with addVertexWithUV, except that the buffer may be grown
+ * for vertices a face operation later skips. This is checked against addVertexWithUV on two scratch instances when
+ * the class loads. If they differ, for example because another mod changed the Tessellator, {@link #AVAILABLE} is
+ * false and vertices go through the sink as before.
+ */
+final class TessellatorWriter implements CCRenderState.IVertexSink {
+
+    static final boolean AVAILABLE;
+
+    static {
+        boolean available = false;
+        try {
+            available = verify();
+        } catch (RuntimeException e) {
+            LogManager.getLogger("CodeChickenLib").debug("Failed to write to a scratch Tessellator", e);
+        }
+        if (!available) LogManager.getLogger("CodeChickenLib")
+                .info("Tessellator behaviour not recognised, rendering through Tessellator.addVertexWithUV");
+        AVAILABLE = available;
+    }
+
+    private Tessellator tessellator;
+
+    /**
+     * Grows the buffer of Tessellator.instance for the given number of vertices and writes to it until {@link #end}
+     *
+     * @return False if the writer can't be used, in which case vertices must be added through the Tessellator
+     */
+    boolean begin(int vertices) {
+        Tessellator t = Tessellator.instance;
+        if (!AVAILABLE || t.getClass() != Tessellator.class) return false;
+
+        begin(t, vertices);
+        return true;
+    }
+
+    private void begin(Tessellator t, int vertices) {
+        tessellator = t;
+        if (vertices > 0) grow(t, t.rawBufferIndex + (vertices - 1) * PackedVertexSink.STRIDE);
+    }
+
+    void end() {
+        tessellator = null;
+    }
+
+    /**
+     * Grows the buffer to the size addVertex would have grown it to when adding a vertex at index last. addVertex
+     * grows before a vertex when the index is at least the size - 32
+     */
+    private static void grow(Tessellator t, int last) {
+        int size = t.rawBufferSize;
+        if (last < size - 32) return;
+
+        int newSize = size;
+        while (last >= newSize - 32) newSize = newSize == 0 ? 0x10000 : newSize * 2;
+        t.rawBuffer = size == 0 ? new int[newSize] : Arrays.copyOf(t.rawBuffer, newSize);
+        t.rawBufferSize = newSize;
+    }
+
+    private Tessellator tessellator() {
+        return tessellator != null ? tessellator : Tessellator.instance;
+    }
+
+    @Override
+    public void startDrawing(int mode) {
+        tessellator().startDrawing(mode);
+    }
+
+    @Override
+    public void setNormal(float x, float y, float z) {
+        tessellator().setNormal(x, y, z);
+    }
+
+    @Override
+    public void setColour(int r, int g, int b, int a) {
+        tessellator().setColorRGBA(r, g, b, a);
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+        tessellator().setBrightness(brightness);
+    }
+
+    /**
+     * The buffer was grown for the whole render call in {@link #begin}, unless other vertices were added to the
+     * Tessellator since
+     */
+    @Override
+    public void addVertex(double x, double y, double z, double u, double v) {
+        Tessellator t = tessellator();
+        int i = t.rawBufferIndex;
+        if (i >= t.rawBufferSize - 32) grow(t, i);
+
+        int[] buffer = t.rawBuffer;
+        buffer[i + 3] = Float.floatToRawIntBits((float) u);
+        buffer[i + 4] = Float.floatToRawIntBits((float) v);
+        if (t.hasBrightness) buffer[i + 7] = t.brightness;
+        if (t.hasColor) buffer[i + 5] = t.color;
+        if (t.hasNormals) buffer[i + 6] = t.normal;
+        buffer[i] = Float.floatToRawIntBits((float) (x + t.xOffset));
+        buffer[i + 1] = Float.floatToRawIntBits((float) (y + t.yOffset));
+        buffer[i + 2] = Float.floatToRawIntBits((float) (z + t.zOffset));
+        t.rawBufferIndex = i + PackedVertexSink.STRIDE;
+        t.vertexCount++;
+        t.addedVertices++;
+        t.hasTexture = true;
+        t.textureU = u;
+        t.textureV = v;
+    }
+
+    @Override
+    public void draw() {
+        tessellator().draw();
+    }
+
+    /**
+     * @return A copy of the raw buffer and the vertex state of t
+     */
+    static Object[] state(Tessellator t) {
+        return new Object[] { t.rawBuffer == null ? null : t.rawBuffer.clone(), t.rawBufferIndex, t.rawBufferSize,
+                t.vertexCount, t.addedVertices, t.hasTexture, t.textureU, t.textureV, t.hasNormals, t.normal,
+                t.hasColor, t.color, t.hasBrightness, t.brightness, t.isColorDisabled, t.xOffset, t.yOffset,
+                t.zOffset };
+    }
+
+    /**
+     * Writes the same vertices with the writer and with addVertexWithUV, across a buffer growth and with colour
+     * disabled, and compares the state of the two Tessellators
+     */
+    private static boolean verify() {
+        final Tessellator expected = new Tessellator(0x1000), actual = new Tessellator(0x1000);
+        for (Tessellator t : new Tessellator[] { expected, actual }) {
+            // values that startDrawing leaves behind with their flags cleared, which must not be written
+            t.setNormal(0, 1, 0);
+            t.setColorRGBA(10, 20, 30, 40);
+            t.setBrightness(0xF000F0);
+            t.startDrawing(7);
+            t.setTranslation(1.5, -2, 3.25);
+            for (int i = 0; i < 8180; i++) t.addVertexWithUV(i, i, i, 0.5, 0.5);
+        }
+
+        CCRenderState.IVertexSink expectedSink = new CCRenderState.IVertexSink() {
+
+            @Override
+            public void startDrawing(int mode) {}
+
+            @Override
+            public void setNormal(float x, float y, float z) {
+                expected.setNormal(x, y, z);
+            }
+
+            @Override
+            public void setColour(int r, int g, int b, int a) {
+                expected.setColorRGBA(r, g, b, a);
+            }
+
+            @Override
+            public void setBrightness(int brightness) {
+                expected.setBrightness(brightness);
+            }
+
+            @Override
+            public void addVertex(double x, double y, double z, double u, double v) {
+                expected.addVertexWithUV(x, y, z, u, v);
+            }
+
+            @Override
+            public void draw() {}
+        };
+
+        TessellatorWriter writer = new TessellatorWriter();
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1) {
+                expected.disableColor();
+                actual.disableColor();
+            }
+            writer.begin(actual, 40);
+            writeSamples(writer);
+            writer.end();
+            writeSamples(expectedSink);
+        }
+        return Arrays.deepEquals(state(expected), state(actual));
+    }
+
+    private static void writeSamples(CCRenderState.IVertexSink sink) {
+        for (int i = 0; i < 40; i++) {
+            if (i > 1 && i % 5 != 4) sink.setNormal((float) Math.cos(i), (float) Math.sin(i), i % 3 - 1);
+            if (i % 3 != 0) sink.setColour(i * 37 - 300, i * 11, 300 - i * 7, i * 29 % 256);
+            if (i % 4 == 1) sink.setBrightness(i * 0x10001);
+            sink.addVertex(i * 0.37, -i * 1.1, i * 2.5, i / 40D, 1 - i / 40D);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package codechicken.lib.render;
+
+import codechicken.lib.lighting.LC;
+import codechicken.lib.render.uv.UV;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Primitive scratch storage for a block of vertices, used by CCRenderState when batching is enabled. Each operation
+ * runs once over the whole block via IVertexOperation.operateBatch instead of once per vertex.
+ * <p>
+ * Array index i holds the state of vertex start + i. Operations without a batch implementation are run per vertex by
+ * unpacking each entry into the render state and packing the result back.
+ */
+public class VertexBatch {
+
+    /**
+     * A multiple of both 3 and 4 so blocks never split a polygon
+     */
+    public static final int SIZE = 96;
+
+    public final double[] x = new double[SIZE];
+    public final double[] y = new double[SIZE];
+    public final double[] z = new double[SIZE];
+    public final double[] u = new double[SIZE];
+    public final double[] v = new double[SIZE];
+    public final int[] tex = new int[SIZE];
+
+    public final double[] nx = new double[SIZE];
+    public final double[] ny = new double[SIZE];
+    public final double[] nz = new double[SIZE];
+    public final int[] colour = new int[SIZE];
+    public final int[] brightness = new int[SIZE];
+
+    public final int[] side = new int[SIZE];
+    public final int[] lcSide = new int[SIZE];
+    public final float[] lcA = new float[SIZE];
+    public final float[] lcB = new float[SIZE];
+    public final float[] lcC = new float[SIZE];
+    public final float[] lcD = new float[SIZE];
+
+    /**
+     * The model vertex index of the first entry
+     */
+    public int start;
+    /**
+     * The number of entries in use
+     */
+    public int count;
+
+    /**
+     * Scratch objects for operations that need to call object based apply methods per vertex
+     */
+    public final Vector3 vec = new Vector3();
+    public final UV uv = new UV();
+
+    /**
+     * Copies the current vertex of the render state into entry i
+     */
+    public void pack(int i, CCRenderState state) {
+        Vector3 pos = state.vert.vec;
+        x[i] = pos.x;
+        y[i] = pos.y;
+        z[i] = pos.z;
+        UV uv = state.vert.uv;
+        u[i] = uv.u;
+        v[i] = uv.v;
+        tex[i] = uv.tex;
+
+        nx[i] = state.normal.x;
+        ny[i] = state.normal.y;
+        nz[i] = state.normal.z;
+        colour[i] = state.colour;
+        brightness[i] = state.brightness;
+
+        side[i] = state.side;
+        LC lc = state.lc;
+        lcSide[i] = lc.side;
+        lcA[i] = lc.fa;
+        lcB[i] = lc.fb;
+        lcC[i] = lc.fc;
+        lcD[i] = lc.fd;
+    }
+
+    /**
+     * Copies entry i into the current vertex of the render state and sets the vertex index
+     */
+    public void unpack(int i, CCRenderState state) {
+        state.vertexIndex = start + i;
+        state.vert.vec.set(x[i], y[i], z[i]);
+        state.vert.uv.set(u[i], v[i], tex[i]);
+
+        state.normal.set(nx[i], ny[i], nz[i]);
+        state.colour = colour[i];
+        state.brightness = brightness[i];
+
+        state.side = side[i];
+        state.lc.set(lcSide[i], lcA[i], lcB[i], lcC[i], lcD[i]);
+    }
+}
@@ -0,0 +1,170 @@
+package codechicken.lib.render.uv;
+
+import java.util.List;
+
+import net.minecraft.util.IIcon;
+
+import codechicken.lib.math.MathHelper;
+import codechicken.lib.render.VertexBatch;
+
+/**
+ * A chain of UVTranslation, UVScale, UVRotation and IconTransformation collapsed into one 2x3 affine matrix,
+ * u' = a*u + b*v + c and v' = d*u + e*v + f, followed by at most one IconTransformation as the last member.
+ * <p>
+ * The icon is applied in float like {@link IIcon#getInterpolatedU}, so an IconTransformation on its own gives the same
+ * uvs as {@link IconTransformation#apply}. The matrix is the product of the members before it, which may differ from
+ * applying them one by one in the last bits.
+ * <p>
+ * Compiled when the owning operation is first loaded into the pipeline and kept until {@link #isCurrent()} is false,
+ * which picks up a different icon or new icon uvs after a texture reload.
+ */
+final class CompiledUVTransformation {
+
+    private final boolean affine;
+    private final double a, b, c, d, e, f;
+
+    private final IconTransformation iconOp;
+    private final IIcon icon;
+    private final float minU, maxU, minV, maxV;
+
+    private CompiledUVTransformation(double[] m, boolean affine, IconTransformation iconOp) {
+        this.affine = affine;
+        a = m[0];
+        b = m[1];
+        c = m[2];
+        d = m[3];
+        e = m[4];
+        f = m[5];
+        this.iconOp = iconOp;
+        icon = iconOp != null ? iconOp.icon : null;
+        minU = icon != null ? icon.getMinU() : 0;
+        maxU = icon != null ? icon.getMaxU() : 0;
+        minV = icon != null ? icon.getMinV() : 0;
+        maxV = icon != null ? icon.getMaxV() : 0;
+    }
+
+    /**
+     * @return The compiled chain, or null if any member is not one of the supported types, an IconTransformation is not
+     *         the last member or its icon doesn't interpolate like a TextureAtlasSprite
+     */
+    public static CompiledUVTransformation compile(List<UVTransformation> transformations) {
+        double[] m = new double[] { 1, 0, 0, 0, 1, 0 };
+        double[] t = new double[6];
+        int n = transformations.size();
+        IconTransformation iconOp = null;
+        if (n > 0 && transformations.get(n - 1).getClass() == IconTransformation.class) {
+            iconOp = (IconTransformation) transformations.get(--n);
+            if (!interpolates(iconOp.icon)) return null;
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (!affine(transformations.get(i), t)) return null;
+
+            double a = t[0] * m[0] + t[1] * m[3];
+            double b = t[0] * m[1] + t[1] * m[4];
+            double c = t[0] * m[2] + t[1] * m[5] + t[2];
+            double d = t[3] * m[0] + t[4] * m[3];
+            double e = t[3] * m[1] + t[4] * m[4];
+            double f = t[3] * m[2] + t[4] * m[5] + t[5];
+            m[0] = a;
+            m[1] = b;
+            m[2] = c;
+            m[3] = d;
+            m[4] = e;
+            m[5] = f;
+        }
+        return new CompiledUVTransformation(m, n > 0, iconOp);
+    }
+
+    public static CompiledUVTransformation compile(IconTransformation t) {
+        return interpolates(t.icon) ? new CompiledUVTransformation(new double[6], false, t) : null;
+    }
+
+    /**
+     * @return False if the icon of the IconTransformation has been replaced or its uvs have changed since compiling
+     */
+    public boolean isCurrent() {
+        IIcon icon = this.icon;
+        return iconOp == null || iconOp.icon == icon && icon.getMinU() == minU
+                && icon.getMaxU() == maxU
+                && icon.getMinV() == minV
+                && icon.getMaxV() == maxV;
+    }
+
+    /**
+     * Only exact classes are accepted, as subclasses may override apply. Icons are only compiled as the last member
+     */
+    private static boolean affine(UVTransformation t, double[] m) {
+        Class<?> type = t.getClass();
+        if (type == UVTranslation.class) {
+            UVTranslation translation = (UVTranslation) t;
+            return set(m, 1, 0, translation.du, 0, 1, translation.dv);
+        }
+        if (type == UVScale.class) {
+            UVScale scale = (UVScale) t;
+            return set(m, scale.su, 0, 0, 0, scale.sv, 0);
+        }
+        if (type == UVRotation.class) {
+            double angle = ((UVRotation) t).angle;
+            double c = MathHelper.cos(angle);
+            double s = MathHelper.sin(angle);
+            return set(m, c, s, 0, -s, c, 0);
+        }
+
+        return false;
+    }
+
+    /**
+     * Icons are applied with the float interpolation of TextureAtlasSprite, checked exactly at a few points
+     */
+    private static boolean interpolates(IIcon icon) {
+        float minU = icon.getMinU(), du = icon.getMaxU() - minU;
+        float minV = icon.getMinV(), dv = icon.getMaxV() - minV;
+        for (double p : new double[] { 0, 3.7, 8, 16 })
+            if (icon.getInterpolatedU(p) != minU + du * ((float) p / 16F)
+                    || icon.getInterpolatedV(p) != minV + dv * ((float) p / 16F))
+                return false;
+        return true;
+    }
+
+    private static boolean set(double[] m, double a, double b, double c, double d, double e, double f) {
+        m[0] = a;
+        m[1] = b;
+        m[2] = c;
+        m[3] = d;
+        m[4] = e;
+        m[5] = f;
+        return true;
+    }
+
+    public void apply(UV uv) {
+        double u = uv.u, v = uv.v;
+        if (affine) {
+            double u1 = a * u + b * v + c;
+            v = d * u + e * v + f;
+            u = u1;
+        }
+        if (icon != null) {
+            u = minU + (maxU - minU) * ((float) (u * 16) / 16F);
+            v = minV + (maxV - minV) * ((float) (v * 16) / 16F);
+        }
+        uv.u = u;
+        uv.v = v;
+    }
+
+    public void operateBatch(VertexBatch batch) {
+        double[] us = batch.u, vs = batch.v;
+        if (affine) for (int i = 0; i < batch.count; i++) {
+            double u = us[i], v = vs[i];
+            us[i] = a * u + b * v + c;
+            vs[i] = d * u + e * v + f;
+        }
+        if (icon != null) {
+            float minU = this.minU, du = maxU - minU, minV = this.minV, dv = maxV - minV;
+            for (int i = 0; i < batch.count; i++) {
+                us[i] = minU + du * ((float) (us[i] * 16) / 16F);
+                vs[i] = minV + dv * ((float) (vs[i] * 16) / 16F);
+            }
+        }
+    }
+}
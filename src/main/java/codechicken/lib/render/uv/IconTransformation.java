@@ -2,11 +2,21 @@ package codechicken.lib.render.uv;
 
 import net.minecraft.util.IIcon;
 
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 import codechicken.lib.vec.IrreversibleTransformationException;
 
 public class IconTransformation extends UVTransformation {
 
     public IIcon icon;
+    /**
+     * Applies the icon without calling it for every vertex, compiled again on load when the icon or its uvs change
+     */
+    private CompiledUVTransformation compiled;
+    /**
+     * An icon that couldn't be compiled, so it isn't tried again on every load
+     */
+    private IIcon uncompiled;
 
     public IconTransformation(IIcon icon) {
         this.icon = icon;
@@ -18,6 +28,30 @@ public class IconTransformation extends UVTransformation {
         uv.v = icon.getInterpolatedV(uv.v * 16);
     }
 
+    @Override
+    public boolean load(CCRenderState state) {
+        CompiledUVTransformation compiled = this.compiled;
+        if (compiled == null ? icon != uncompiled : !compiled.isCurrent()) {
+            this.compiled = compiled = CompiledUVTransformation.compile(this);
+            uncompiled = compiled == null ? icon : null;
+        }
+        return super.load(state);
+    }
+
+    @Override
+    public void operate(CCRenderState state) {
+        CompiledUVTransformation compiled = this.compiled;
+        if (compiled != null) compiled.apply(state.vert.uv);
+        else apply(state.vert.uv);
+    }
+
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        CompiledUVTransformation compiled = this.compiled;
+        if (compiled != null) compiled.operateBatch(batch);
+        else super.operateBatch(state, batch);
+    }
+
     @Override
     public UVTransformation inverse() {
         throw new IrreversibleTransformationException(this);
@@ -1,6 +1,7 @@
 package codechicken.lib.render.uv;
 
 import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 import codechicken.lib.vec.ITransformation;
 
 /**
@@ -32,6 +33,17 @@ public abstract class UVTransformation extends ITransformation<UV, UVTransformat
         apply(state.vert.uv);
     }
 
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        UV uv = batch.uv;
+        for (int i = 0; i < batch.count; i++) {
+            apply(uv.set(batch.u[i], batch.v[i], batch.tex[i]));
+            batch.u[i] = uv.u;
+            batch.v[i] = uv.v;
+            batch.tex[i] = uv.tex;
+        }
+    }
+
     @Override
     public int operationID() {
         return operationIndex;
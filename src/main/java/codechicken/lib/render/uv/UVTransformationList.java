@@ -3,9 +3,23 @@ package codechicken.lib.render.uv;
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
+
+/**
+ * A list of uv transformations applied in order. The vertex pipeline applies a list of UVTranslation, UVScale,
+ * UVRotation and at most one final IconTransformation as a matrix compiled when the list is first loaded, so later
+ * changes to the members are ignored, except for the icon of the IconTransformation.
+ */
 public class UVTransformationList extends UVTransformation {
 
     private ArrayList<UVTransformation> transformations = new ArrayList<UVTransformation>();
+    /**
+     * Compiled on the first load after the list changes, and again when the icon of a final IconTransformation
+     * changes. Null if the list can't be compiled, see {@link CompiledUVTransformation#compile(java.util.List)}
+     */
+    private CompiledUVTransformation compiled;
+    private boolean compileFailed;
 
     public UVTransformationList(UVTransformation... transforms) {
         for (UVTransformation t : transforms)
@@ -20,6 +34,30 @@ public class UVTransformationList extends UVTransformation {
         for (int i = 0; i < transformations.size(); i++) transformations.get(i).apply(uv);
     }
 
+    @Override
+    public boolean load(CCRenderState state) {
+        CompiledUVTransformation compiled = this.compiled;
+        if (compiled == null ? !compileFailed : !compiled.isCurrent()) {
+            this.compiled = compiled = CompiledUVTransformation.compile(transformations);
+            compileFailed = compiled == null;
+        }
+        return super.load(state);
+    }
+
+    @Override
+    public void operate(CCRenderState state) {
+        CompiledUVTransformation compiled = this.compiled;
+        if (compiled != null) compiled.apply(state.vert.uv);
+        else super.operate(state);
+    }
+
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        CompiledUVTransformation compiled = this.compiled;
+        if (compiled != null) compiled.operateBatch(batch);
+        else super.operateBatch(state, batch);
+    }
+
     @Override
     public UVTransformationList with(UVTransformation t) {
         if (t.isRedundant()) return this;
@@ -42,6 +80,8 @@ public class UVTransformationList extends UVTransformation {
     }
 
     private void compact() {
+        compiled = null;
+        compileFailed = false;
         ArrayList<UVTransformation> newList = new ArrayList<UVTransformation>(transformations.size());
         Iterator<UVTransformation> iterator = transformations.iterator();
         UVTransformation prev = null;
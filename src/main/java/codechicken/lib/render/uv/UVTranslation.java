@@ -5,6 +5,8 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 
 import codechicken.lib.math.MathHelper;
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 
 public class UVTranslation extends UVTransformation {
 
@@ -22,6 +24,14 @@ public class UVTranslation extends UVTransformation {
         uv.v += dv;
     }
 
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        for (int i = 0; i < batch.count; i++) {
+            batch.u[i] += du;
+            batch.v[i] += dv;
+        }
+    }
+
     @Override
     public UVTransformation at(UV point) {
         return this;
@@ -1,5 +1,6 @@
 package codechicken.lib.tool;
 
+import codechicken.lib.tool.module.ModuleModelBaker;
 import codechicken.lib.tool.module.ModuleQBConverter;
 
 public class ToolMain {
@@ -13,7 +14,7 @@ public class ToolMain {
         public void printHelp();
     }
 
-    public static Module[] modules = new Module[] { new ModuleQBConverter() };
+    public static Module[] modules = new Module[] { new ModuleQBConverter(), new ModuleModelBaker() };
 
     private static void printHelp() {
         System.out.println("Usage: [module] [args]");
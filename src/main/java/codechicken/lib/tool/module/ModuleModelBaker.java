@@ -0,0 +1,105 @@
+package codechicken.lib.tool.module;
+
+import static java.util.Arrays.asList;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import codechicken.lib.render.CCModel;
+import codechicken.lib.render.CCModelCache;
+import codechicken.lib.render.CCModelSerializer;
+import codechicken.lib.render.QBImporter;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+public class ModuleModelBaker extends JOptModule {
+
+    public ModuleModelBaker() {
+        parser.acceptsAll(asList("?", "h", "help"), "Show the help");
+        parser.acceptsAll(asList("i", "input"), "comma separated list of paths to models (.obj, .qb or directories)")
+                .withRequiredArg().ofType(File.class).withValuesSeparatedBy(',').required();
+        parser.acceptsAll(asList("o", "out"), "Output Directory").withRequiredArg().ofType(File.class);
+        parser.acceptsAll(asList("q", "quads"), "Create obj models with GL_QUADS instead of GL_TRIANGLES");
+        parser.acceptsAll(asList("n", "normals"), "Compute normals");
+        parser.acceptsAll(asList("m", "smooth"), "Smooth normals");
+        parser.acceptsAll(asList("l", "lightcoords"), "Compute light coordinates");
+        parser.acceptsAll(
+                asList("o2", "textureplanes"),
+                "2nd level optimisation. Merges coplanar polygons. Increases texture size");
+        parser.acceptsAll(asList("s", "squaretextures"), "Produce square textures");
+        parser.acceptsAll(asList("t", "mergetextures"), "Use the same texture for all models");
+        parser.acceptsAll(asList("r", "scalemc"), "Resize model to mc standard (shrink by factor of 16)");
+    }
+
+    protected void main(OptionParser parser, OptionSet options) {
+        int qbFlags = 0;
+        if (options.has("o2")) qbFlags |= QBImporter.TEXTUREPLANES;
+        if (options.has("s")) qbFlags |= QBImporter.SQUARETEXTURE;
+        if (options.has("t")) qbFlags |= QBImporter.MERGETEXTURES;
+        if (options.has("r")) qbFlags |= QBImporter.SCALEMC;
+
+        int flags = 0;
+        if (options.has("n")) flags |= CCModelCache.COMPUTE_NORMALS;
+        if (options.has("m")) flags |= CCModelCache.SMOOTH_NORMALS;
+        if (options.has("l")) flags |= CCModelCache.COMPUTE_LIGHT_COORDS;
+        int vertexMode = options.has("q") ? 7 : 4;
+
+        File[] input = options.valuesOf("input").toArray(new File[0]);
+        File[] outDir = new File[input.length];
+        if (options.has("out")) {
+            File output = (File) options.valueOf("out");
+            if (output.isFile()) throw new RuntimeException("Output Path is not a directory");
+            if (!output.exists()) output.mkdirs();
+
+            for (int i = 0; i < input.length; i++) outDir[i] = output;
+        } else {
+            for (int i = 0; i < input.length; i++)
+                outDir[i] = input[i].isDirectory() ? input[i] : input[i].getParentFile();
+        }
+
+        for (int i = 0; i < input.length; i++) {
+            File file = input[i];
+            if (file.isDirectory()) {
+                for (File file2 : file.listFiles()) {
+                    String name = file2.getName();
+                    if (name.endsWith(".obj") || name.endsWith(".qb"))
+                        bake(file2, outDir[i], vertexMode, flags, qbFlags);
+                }
+            } else bake(file, outDir[i], vertexMode, flags, qbFlags);
+        }
+    }
+
+    private void bake(File in, File outDir, int vertexMode, int flags, int qbFlags) {
+        System.out.println("Baking: " + in.getName());
+        String baseName = in.getName().replaceAll("(.+)\\..+", "$1");
+        try {
+            Map<String, CCModel> models;
+            if (in.getName().endsWith(".qb")) {
+                QBImporter.RasterisedModel m = QBImporter.loadQB(in).toRasterisedModel(qbFlags);
+                models = m.getModels();
+                m.exportImages(baseName, outDir);
+            } else {
+                try (InputStream is = new FileInputStream(in)) {
+                    models = CCModel.parseObjModels(is, vertexMode, null);
+                }
+            }
+
+            CCModelCache.process(models, flags);
+            try (OutputStream os = new FileOutputStream(new File(outDir, baseName + ".ccm"))) {
+                CCModelSerializer.writeModels(models, os);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("failed to bake model: " + in, e);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "ModelBaker";
+    }
+}
@@ -0,0 +1,148 @@
+package codechicken.lib.vec;
+
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
+
+/**
+ * The cached Matrix4 of a TransformationList in the form used by the vertex pipeline, a row major 3x4 position matrix
+ * and a 3x3 normal matrix. Built once for each matrix the list caches and reused for every render after. The output is
+ * the same as Matrix4.apply and applyN. Signed permutations, such as the 24 Rotation.sideOrientation cases, only swap
+ * and negate components.
+ */
+final class CompiledTransformation {
+
+    /**
+     * The matrix this was loaded from
+     */
+    final Matrix4 source;
+    private final double[] m = new double[12];
+    private final double[] n = new double[9];
+    /**
+     * For signed permutations, the source component and sign of each output component
+     */
+    private final int[] perm = new int[3];
+    private final double[] sign = new double[3];
+    private final boolean permuted;
+
+    /**
+     * Loads the 3x4 affine part of mat, which is all that Matrix4.apply uses
+     */
+    CompiledTransformation(Matrix4 mat) {
+        source = mat;
+        m[0] = mat.m00;
+        m[1] = mat.m01;
+        m[2] = mat.m02;
+        m[3] = mat.m03;
+        m[4] = mat.m10;
+        m[5] = mat.m11;
+        m[6] = mat.m12;
+        m[7] = mat.m13;
+        m[8] = mat.m20;
+        m[9] = mat.m21;
+        m[10] = mat.m22;
+        m[11] = mat.m23;
+        for (int r = 0; r < 3; r++) for (int c = 0; c < 3; c++) n[r * 3 + c] = m[r * 4 + c];
+
+        boolean permuted = true;
+        for (int r = 0; r < 3 && permuted; r++) {
+            perm[r] = -1;
+            for (int c = 0; c < 3; c++) {
+                double v = m[r * 4 + c];
+                if (v == 0) continue;
+                if (perm[r] >= 0 || Math.abs(v) != 1) {
+                    permuted = false;
+                    break;
+                }
+                perm[r] = c;
+                sign[r] = v;
+            }
+            if (perm[r] < 0) permuted = false;
+        }
+        this.permuted = permuted;
+    }
+
+    private static double component(Vector3 vec, int c) {
+        return c == 0 ? vec.x : c == 1 ? vec.y : vec.z;
+    }
+
+    public void apply(Vector3 vec) {
+        if (!permuted) {
+            double x = vec.x, y = vec.y, z = vec.z;
+            vec.x = m[0] * x + m[1] * y + m[2] * z + m[3];
+            vec.y = m[4] * x + m[5] * y + m[6] * z + m[7];
+            vec.z = m[8] * x + m[9] * y + m[10] * z + m[11];
+            return;
+        }
+        double x = sign[0] * component(vec, perm[0]) + m[3];
+        double y = sign[1] * component(vec, perm[1]) + m[7];
+        double z = sign[2] * component(vec, perm[2]) + m[11];
+        vec.set(x, y, z);
+    }
+
+    public void applyN(Vector3 normal) {
+        if (!permuted) {
+            double x = normal.x, y = normal.y, z = normal.z;
+            normal.x = n[0] * x + n[1] * y + n[2] * z;
+            normal.y = n[3] * x + n[4] * y + n[5] * z;
+            normal.z = n[6] * x + n[7] * y + n[8] * z;
+        } else normal.set(
+                sign[0] * component(normal, perm[0]),
+                sign[1] * component(normal, perm[1]),
+                sign[2] * component(normal, perm[2]));
+        normal.normalize();
+    }
+
+    public void operate(CCRenderState state) {
+        apply(state.vert.vec);
+        if (CCRenderState.normalAttrib.isActive(state)) applyN(state.normal);
+    }
+
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        int count = batch.count;
+        if (permuted) {
+            permute(batch.x, batch.y, batch.z, count);
+            for (int i = 0; i < count; i++) {
+                batch.x[i] += m[3];
+                batch.y[i] += m[7];
+                batch.z[i] += m[11];
+            }
+        }
+        else for (int i = 0; i < count; i++) {
+            double x = batch.x[i], y = batch.y[i], z = batch.z[i];
+            batch.x[i] = m[0] * x + m[1] * y + m[2] * z + m[3];
+            batch.y[i] = m[4] * x + m[5] * y + m[6] * z + m[7];
+            batch.z[i] = m[8] * x + m[9] * y + m[10] * z + m[11];
+        }
+        if (!CCRenderState.normalAttrib.isActive(state)) return;
+
+        if (permuted) permute(batch.nx, batch.ny, batch.nz, count);
+        else for (int i = 0; i < count; i++) {
+            double x = batch.nx[i], y = batch.ny[i], z = batch.nz[i];
+            batch.nx[i] = n[0] * x + n[1] * y + n[2] * z;
+            batch.ny[i] = n[3] * x + n[4] * y + n[5] * z;
+            batch.nz[i] = n[6] * x + n[7] * y + n[8] * z;
+        }
+        Vector3 vec = batch.vec;
+        for (int i = 0; i < count; i++) {
+            vec.set(batch.nx[i], batch.ny[i], batch.nz[i]).normalize();
+            batch.nx[i] = vec.x;
+            batch.ny[i] = vec.y;
+            batch.nz[i] = vec.z;
+        }
+    }
+
+    private void permute(double[] xs, double[] ys, double[] zs, int count) {
+        double[] px = select(perm[0], xs, ys, zs), py = select(perm[1], xs, ys, zs), pz = select(perm[2], xs, ys, zs);
+        double sx = sign[0], sy = sign[1], sz = sign[2];
+        for (int i = 0; i < count; i++) {
+            double x = sx * px[i], y = sy * py[i], z = sz * pz[i];
+            xs[i] = x;
+            ys[i] = y;
+            zs[i] = z;
+        }
+    }
+
+    private static double[] select(int c, double[] xs, double[] ys, double[] zs) {
+        return c == 0 ? xs : c == 1 ? ys : zs;
+    }
+}
@@ -6,6 +6,8 @@ import java.math.RoundingMode;
 
 import org.lwjgl.opengl.GL11;
 
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 
@@ -33,6 +35,16 @@ public class Scale extends Transformation {
     @Override
     public void applyN(Vector3 normal) {}
 
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        double sx = factor.x, sy = factor.y, sz = factor.z;
+        for (int i = 0; i < batch.count; i++) {
+            batch.x[i] *= sx;
+            batch.y[i] *= sy;
+            batch.z[i] *= sz;
+        }
+    }
+
     @Override
     public void apply(Matrix4 mat) {
         mat.scale(factor);
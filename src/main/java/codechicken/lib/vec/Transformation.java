@@ -1,6 +1,7 @@
 package codechicken.lib.vec;
 
 import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 
@@ -46,7 +47,26 @@ public abstract class Transformation extends ITransformation<Vector3, Transforma
     @Override
     public void operate(CCRenderState state) {
         apply(state.vert.vec);
-        if (CCRenderState.normalAttrib.active) applyN(state.normal);
+        if (CCRenderState.normalAttrib.isActive(state)) applyN(state.normal);
+    }
+
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        Vector3 vec = batch.vec;
+        for (int i = 0; i < batch.count; i++) {
+            apply(vec.set(batch.x[i], batch.y[i], batch.z[i]));
+            batch.x[i] = vec.x;
+            batch.y[i] = vec.y;
+            batch.z[i] = vec.z;
+        }
+        if (!CCRenderState.normalAttrib.isActive(state)) return;
+
+        for (int i = 0; i < batch.count; i++) {
+            applyN(vec.set(batch.nx[i], batch.ny[i], batch.nz[i]));
+            batch.nx[i] = vec.x;
+            batch.ny[i] = vec.y;
+            batch.nz[i] = vec.z;
+        }
     }
 
     @Override
@@ -3,13 +3,25 @@ package codechicken.lib.vec;
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 
+/**
+ * A list of transformations applied in order. Lists of more than three elements, or any list after {@link #compile()},
+ * cache their product as a Matrix4 and apply that instead of the elements, which is not bit-identical to applying the
+ * elements one by one and ignores later changes to them. The vertex pipeline applies the same matrix from arrays built
+ * once for each matrix the list caches, and applies shorter lists element by element.
+ */
 public class TransformationList extends Transformation {
 
     private ArrayList<Transformation> transformations = new ArrayList<Transformation>();
     private Matrix4 mat;
+    /**
+     * The cached matrix in the form used by the vertex pipeline, built again when the matrix is replaced
+     */
+    private CompiledTransformation compiled;
 
     public TransformationList(Transformation... transforms) {
         for (Transformation t : transforms)
@@ -55,6 +67,27 @@ public class TransformationList extends Transformation {
         mat.multiply(compile());
     }
 
+    @Override
+    public boolean load(CCRenderState state) {
+        Matrix4 mat = this.mat;
+        if (mat != null && (compiled == null || compiled.source != mat)) compiled = new CompiledTransformation(mat);
+        return super.load(state);
+    }
+
+    @Override
+    public void operate(CCRenderState state) {
+        CompiledTransformation compiled = this.compiled;
+        if (compiled != null && compiled.source == mat) compiled.operate(state);
+        else super.operate(state);
+    }
+
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        CompiledTransformation compiled = this.compiled;
+        if (compiled != null && compiled.source == mat) compiled.operateBatch(state, batch);
+        else super.operateBatch(state, batch);
+    }
+
     @Override
     public TransformationList with(Transformation t) {
         if (t.isRedundant()) return this;
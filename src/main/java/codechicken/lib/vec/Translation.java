@@ -6,6 +6,8 @@ import java.math.RoundingMode;
 
 import org.lwjgl.opengl.GL11;
 
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 
@@ -29,6 +31,16 @@ public class Translation extends Transformation {
     @Override
     public void applyN(Vector3 normal) {}
 
+    @Override
+    public void operateBatch(CCRenderState state, VertexBatch batch) {
+        double dx = vec.x, dy = vec.y, dz = vec.z;
+        for (int i = 0; i < batch.count; i++) {
+            batch.x[i] += dx;
+            batch.y[i] += dy;
+            batch.z[i] += dz;
+        }
+    }
+
     @Override
     public void apply(Matrix4 mat) {
         mat.translate(vec);
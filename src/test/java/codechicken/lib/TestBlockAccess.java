@@ -0,0 +1,91 @@
+package codechicken.lib;
+
+import java.util.HashMap;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.biome.BiomeGenBase;
+import net.minecraftforge.common.util.ForgeDirection;
+
+import codechicken.lib.vec.BlockCoord;
+
+/**
+ * A world of air with opaque blocks placed by tests. The brightness of a position is a fixed function of its
+ * coordinates, so lighting samples differ between neighbours.
+ */
+public class TestBlockAccess implements IBlockAccess {
+
+    public static final Block air = new Block(Material.air) {
+
+        @Override
+        public boolean isOpaqueCube() {
+            return false;
+        }
+    };
+    public static final Block stone = new Block(Material.rock) {};
+
+    private final HashMap<BlockCoord, Block> blocks = new HashMap<>();
+    /**
+     * Added to every brightness, so tests can change the light without moving blocks
+     */
+    public int light;
+
+    public TestBlockAccess set(int x, int y, int z, Block block) {
+        blocks.put(new BlockCoord(x, y, z), block);
+        return this;
+    }
+
+    @Override
+    public Block getBlock(int x, int y, int z) {
+        Block block = blocks.get(new BlockCoord(x, y, z));
+        return block != null ? block : air;
+    }
+
+    @Override
+    public TileEntity getTileEntity(int x, int y, int z) {
+        return null;
+    }
+
+    @Override
+    public int getLightBrightnessForSkyBlocks(int x, int y, int z, int lightValue) {
+        int sky = Math.floorMod(x * 7 + y * 3 + z * 5 + light, 16), block = Math.floorMod(x - z + light, 16);
+        return sky << 20 | Math.max(block, lightValue) << 4;
+    }
+
+    @Override
+    public int getBlockMetadata(int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public int isBlockProvidingPowerTo(int x, int y, int z, int side) {
+        return 0;
+    }
+
+    @Override
+    public boolean isAirBlock(int x, int y, int z) {
+        return getBlock(x, y, z) == air;
+    }
+
+    @Override
+    public BiomeGenBase getBiomeGenForCoords(int x, int z) {
+        return null;
+    }
+
+    @Override
+    public int getHeight() {
+        return 256;
+    }
+
+    @Override
+    public boolean extendedLevelsInChunkCache() {
+        return false;
+    }
+
+    @Override
+    public boolean isSideSolid(int x, int y, int z, ForgeDirection side, boolean _default) {
+        return getBlock(x, y, z).isOpaqueCube();
+    }
+}
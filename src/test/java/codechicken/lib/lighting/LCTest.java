@@ -0,0 +1,60 @@
+package codechicken.lib.lighting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Checks the interned light coordinates against {@link LC#compute(Vector3, Vector3)} over the grid and around it.
+ */
+public class LCTest {
+
+    private static final Vector3[] normals = new Vector3[] { Rotation.axes[0], Rotation.axes[1], Rotation.axes[2],
+            Rotation.axes[3], Rotation.axes[4], Rotation.axes[5], new Vector3(0.995, 0.0999, 0).normalize(),
+            new Vector3(1, 1, 0).normalize(), new Vector3(0.3, -0.5, 0.8).normalize() };
+
+    private static void assertSameLC(LC expected, LC actual, String message) {
+        assertEquals(expected.side, actual.side, message);
+        assertEquals(expected.fa, actual.fa, message);
+        assertEquals(expected.fb, actual.fb, message);
+        assertEquals(expected.fc, actual.fc, message);
+        assertEquals(expected.fd, actual.fd, message);
+    }
+
+    @Test
+    public void internedMatchesCompute() {
+        int interned = 0;
+        // the grid, a point between grid lines and points outside the block
+        for (int x = -1; x <= LC.GRID + 1; x++) for (int y = -1; y <= LC.GRID + 1; y++)
+            for (int z = -1; z <= LC.GRID + 1; z++) for (double offset : new double[] { 0, 0.3 / LC.GRID }) {
+                Vector3 vec = new Vector3(x / (double) LC.GRID + offset, y / (double) LC.GRID, z / (double) LC.GRID);
+                for (Vector3 normal : normals) {
+                    int index = LC.index(vec, normal);
+                    if (index < 0) continue;
+
+                    interned++;
+                    assertSameLC(new LC().compute(vec, normal), LC.interned(index), vec + " " + normal);
+                }
+            }
+        assertTrue(interned > 0);
+    }
+
+    @Test
+    public void gridPointsAreInterned() {
+        for (int side = 0; side < 6; side++) {
+            Vector3 n = Rotation.axes[(side & 0xE) + 1];
+            Vector3 v1 = Rotation.axes[((side & 0xE) + 3) % 6], v2 = Rotation.axes[((side & 0xE) + 5) % 6];
+            // points on the face of the block and in a plane inside it
+            for (double depth : new double[] { side & 1, 0.5 }) for (int a = 0; a <= LC.GRID; a++)
+                for (int b = 0; b <= LC.GRID; b++) {
+                    Vector3 p = n.copy().multiply(depth).add(v1.copy().multiply(a / (double) LC.GRID))
+                            .add(v2.copy().multiply(b / (double) LC.GRID));
+                    assertTrue(LC.index(p, Rotation.axes[side]) >= 0, p + " side " + side);
+                }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package codechicken.lib.lighting;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.TestBlockAccess;
+
+/**
+ * Checks that computing every side at once gives the same ao and brightness as sampling each side when it is used.
+ */
+public class LightMatrixTest {
+
+    @Test
+    public void computeAllMatchesSideSampling() {
+        TestBlockAccess world = new TestBlockAccess();
+        // an uneven mix of opaque blocks and air around the block at the center
+        for (int i = 0; i < 27; i += 4)
+            world.set(10 + i % 3 - 1, 20 + i / 9 - 1, 30 + i / 3 % 3 - 1, TestBlockAccess.stone);
+
+        LightMatrix eager = new LightMatrix();
+        eager.eager = true;
+        LightMatrix lazy = new LightMatrix();
+        for (int light = 0; light < 3; light++) {
+            world.light = light;
+            eager.locate(world, 10, 20, 30);
+            lazy.locate(world, 10, 20, 30);
+            // lazy sides in an order unlike computeAll
+            for (int k = 0; k < 13; k++) {
+                int s = k * 5 % 13;
+                assertArrayEquals(eager.ao(s), lazy.ao(s), "ao of side " + s);
+                assertArrayEquals(eager.brightness(s), lazy.brightness(s), "brightness of side " + s);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.lighting.PlanarLightModel;
+import codechicken.lib.render.uv.UVTranslation;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.Translation;
+
+public class BakedModelCacheTest {
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, Cuboid6.full).computeNormals();
+
+    @Test
+    public void opsCreatedPerCallHit() {
+        BakedModelCache cache = new BakedModelCache(16);
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+
+        BakedModel first = cache.get(
+                state,
+                box,
+                new Translation(1, 2, 3).with(new Scale(0.5)),
+                new UVTranslation(0.25, 0),
+                ColourMultiplier.instance(0xFF8040FF));
+        BakedModel second = cache.get(
+                state,
+                box,
+                new Translation(1, 2, 3).with(new Scale(0.5)),
+                new UVTranslation(0.25, 0),
+                ColourMultiplier.instance(0xFF8040FF));
+        assertSame(first, second);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void differentValuesMiss() {
+        BakedModelCache cache = new BakedModelCache(16);
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+
+        BakedModel base = cache.get(state, box, new Translation(1, 2, 3), ColourMultiplier.instance(0xFF8040FF));
+        assertNotSame(base, cache.get(state, box, new Translation(1, 2, 4), ColourMultiplier.instance(0xFF8040FF)));
+        assertNotSame(base, cache.get(state, box, new Translation(1, 2, 3), ColourMultiplier.instance(0xFF8041FF)));
+        assertNotSame(
+                base,
+                cache.get(
+                        state,
+                        box,
+                        new Translation(1, 2, 3),
+                        ColourMultiplier.instance(0xFF8040FF),
+                        Rotation.quarterRotations[1]));
+        assertSame(base, cache.get(state, box, new Translation(1, 2, 3), ColourMultiplier.instance(0xFF8040FF)));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void otherOpsCompareByIdentity() {
+        BakedModelCache cache = new BakedModelCache(16);
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+
+        PlanarLightModel light = PlanarLightModel.standardLightModel;
+        PlanarLightModel copy = new PlanarLightModel(PlanarLightModel.standardLightModel.colours);
+        BakedModel baked = cache.get(state, box, light, new Translation(1, 0, 0));
+        assertSame(baked, cache.get(state, box, light, new Translation(1, 0, 0)));
+        assertNotSame(baked, cache.get(state, box, copy, new Translation(1, 0, 0)));
+    }
+
+    @Test
+    public void bakeIgnoresStickyFlags() {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.useColour = false;
+        state.hasColour = state.hasNormal = true;
+
+        BakedModel baked = BakedModel.bake(state, box, new Translation(1, 0, 0));
+        assertNull(baked.colours);
+        assertFalse(baked.hasNormals);
+        assertTrue(state.hasColour && state.hasNormal);
+
+        state.useColour = state.useNormals = true;
+        baked = BakedModel.bake(state, box, ColourMultiplier.instance(0xFF8040FF));
+        assertNotNull(baked.colours);
+        assertTrue(baked.hasNormals);
+    }
+}
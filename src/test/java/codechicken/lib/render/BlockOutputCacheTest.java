@@ -0,0 +1,101 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.TestBlockAccess;
+import codechicken.lib.lighting.LightMatrix;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Translation;
+
+/**
+ * Checks when BlockOutputCache runs the renderer, and that replays write the same vertices as the renderer.
+ */
+public class BlockOutputCacheTest {
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, Cuboid6.full).computeNormals()
+            .computeLightCoords();
+
+    private final TestBlockAccess world = new TestBlockAccess().set(4, 5, 7, TestBlockAccess.stone)
+            .set(4, 6, 7, TestBlockAccess.stone);
+    private final LightMatrix lightMatrix = new LightMatrix();
+    private int runs;
+
+    /**
+     * Adds a vertex before setting the brightness, then renders the box lit by the light matrix
+     */
+    private final Runnable renderer = () -> {
+        runs++;
+        CCRenderState state = CCRenderState.instance();
+        state.sink.addVertex(4, 5, 7, 0, 0);
+        box.render(state, new Translation(4, 5, 7), lightMatrix);
+    };
+
+    private int[] render(BlockOutputCache cache, Object key) {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.useNormals = true;
+        PackedVertexSink sink = new PackedVertexSink();
+        state.sink = sink;
+        try {
+            sink.startDrawing(7);
+            sink.setBrightness(0xA00050);
+            lightMatrix.locate(world, 4, 5, 7);
+            if (cache != null) cache.render(state, lightMatrix, 0, key, renderer);
+            else renderer.run();
+            return Arrays.copyOf(sink.buffer, sink.size());
+        } finally {
+            state.sink = TessellatorVertexSink.instance;
+        }
+    }
+
+    @Test
+    public void hitReplaysRendererOutput() {
+        BlockOutputCache cache = new BlockOutputCache(64);
+        int[] direct = render(null, null);
+        assertEquals(0xA00050, direct[7], "the first vertex keeps the brightness of the sink");
+
+        runs = 0;
+        assertArrayEquals(direct, render(cache, "a"), "miss");
+        assertArrayEquals(direct, render(cache, "a"), "hit");
+        assertEquals(1, runs);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void changedInputsMiss() {
+        BlockOutputCache cache = new BlockOutputCache(64);
+        render(cache, "a");
+        runs = 0;
+
+        render(cache, "b");
+        assertEquals(1, runs, "key");
+        world.light = 3;
+        int[] relit = render(cache, "b");
+        assertEquals(2, runs, "light");
+        assertArrayEquals(render(null, null), relit);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void clearInvalidates() {
+        BlockOutputCache cache = new BlockOutputCache(64);
+        render(cache, null);
+        runs = 0;
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        render(cache, null);
+        assertEquals(1, runs);
+
+        // called on client world load and unload, and on stitching
+        BlockOutputCache.clearAll();
+        assertEquals(0, cache.size());
+        render(cache, null);
+        assertEquals(2, runs);
+    }
+}
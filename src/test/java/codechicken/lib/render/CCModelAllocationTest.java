@@ -0,0 +1,72 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.lighting.LightModel;
+import codechicken.lib.render.uv.UVTranslation;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.TransformationList;
+import codechicken.lib.vec.Translation;
+
+/**
+ * Checks that the CCModel.render convenience overloads, a LightModel and short and long TransformationLists render into
+ * a PackedVertexSink without allocating, once warmed up.
+ */
+public class CCModelAllocationTest {
+
+    private static final int WARMUP = 20000;
+    private static final int RENDERS = 10000;
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, Cuboid6.full).computeNormals();
+
+    private final Translation translation = new Translation(1, 2, 3);
+    private final UVTranslation uvTranslation = new UVTranslation(0.5, 0.25);
+    private final TransformationList shortList = new TransformationList(new Scale(0.5), translation);
+    private final TransformationList longList = new TransformationList(
+            new Scale(0.5),
+            new Rotation(0.3, 0, 1, 0),
+            translation,
+            new Rotation(1.2, 1, 0, 0));
+
+    private void render(CCRenderState state, PackedVertexSink sink, int i) {
+        sink.vertexCount = 0;
+        box.render(state, i, 2, 3, 0.5, 0.25);
+        box.render(state, 1, i, 3, uvTranslation);
+        box.render(state, translation, 0.5, i);
+        box.render(state, LightModel.standardLightModel, translation);
+        box.render(state, shortList, 0.5, i);
+        box.render(state, LightModel.standardLightModel, longList);
+    }
+
+    @Test
+    public void rendersWithoutAllocating() {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        PackedVertexSink sink = new PackedVertexSink(box.verts.length * 4);
+        state.sink = sink;
+        try {
+            for (int i = 0; i < WARMUP; i++) render(state, sink, i);
+
+            long thread = Thread.currentThread().getId();
+            long before = bean.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < RENDERS; i++) render(state, sink, i);
+            long allocated = bean.getThreadAllocatedBytes(thread) - before;
+
+            assertTrue(allocated < RENDERS, allocated + " bytes allocated over " + RENDERS + " renders");
+        } finally {
+            state.sink = TessellatorVertexSink.instance;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Translation;
+
+public class CCModelCacheTest {
+
+    private static final byte[] obj = ("o quad\n" + "v 0 0 0\nv 1 0 0\nv 1 0 1\nv 0 0 1\n"
+            + "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n"
+            + "f 1/1 2/2 3/3 4/4\n"
+            + "o tri\n"
+            + "v 0.5 1 0.25\n"
+            + "f 1/1 2/2 5/3\n").getBytes(StandardCharsets.UTF_8);
+    private static final int flags = CCModelCache.COMPUTE_NORMALS | CCModelCache.SMOOTH_NORMALS
+            | CCModelCache.COMPUTE_LIGHT_COORDS;
+
+    private static Map<String, CCModel> parse(byte[] data, int vertexMode, Transformation coordSystem, int flags)
+            throws IOException {
+        Map<String, CCModel> models = CCModel.parseObjModels(new ByteArrayInputStream(data), vertexMode, coordSystem);
+        CCModelCache.process(models, flags);
+        return models;
+    }
+
+    @Test
+    public void keyDependsOnEveryInput() {
+        Transformation t = new Translation(0, 0.5, 0).with(new Scale(2));
+        String key = CCModelCache.key(obj, 7, t, flags);
+        assertEquals(key, CCModelCache.key(obj.clone(), 7, new Translation(0, 0.5, 0).with(new Scale(2)), flags));
+        assertEquals(CCModelCache.key(obj, 7, null, flags), CCModelCache.key(obj, 7, Rotation.sideRotations[0], flags));
+
+        byte[] changed = obj.clone();
+        changed[changed.length - 2]++;
+        HashSet<String> keys = new HashSet<>();
+        keys.add(key);
+        keys.add(CCModelCache.key(changed, 7, t, flags));
+        keys.add(CCModelCache.key(obj, 4, t, flags));
+        keys.add(CCModelCache.key(obj, 7, t, CCModelCache.COMPUTE_NORMALS));
+        keys.add(CCModelCache.key(obj, 7, null, flags));
+        keys.add(CCModelCache.key(obj, 7, new Translation(0, 0.5, 0), flags));
+        keys.add(CCModelCache.key(obj, 7, Rotation.sideRotations[1], flags));
+        assertEquals(7, keys.size());
+        assertTrue(key.matches("[0-9a-f]{40}"), key);
+    }
+
+    @Test
+    public void hitsMatchParsing(@TempDir Path dir) throws IOException {
+        CCModelCache cache = new CCModelCache(new File(dir.toFile(), "models"));
+        for (int vertexMode : new int[] { 4, 7 }) {
+            Transformation t = new Translation(0, 0.5, 0).with(Rotation.sideRotations[2]);
+            Map<String, CCModel> expected = parse(obj, vertexMode, t, flags);
+            CCModelSerializerTest.assertSameModels(expected, cache.parseObjModels(obj, vertexMode, t, flags));
+
+            File entry = new File(cache.dir, CCModelCache.key(obj, vertexMode, t, flags) + ".ccm");
+            assertTrue(entry.isFile());
+            byte[] written = Files.readAllBytes(entry.toPath());
+            CCModelSerializerTest.assertSameModels(expected, cache.parseObjModels(obj, vertexMode, t, flags));
+            assertArrayEquals(written, Files.readAllBytes(entry.toPath()), "hits don't rewrite the entry");
+        }
+        assertEquals(2, cache.dir.list().length);
+    }
+
+    @Test
+    public void invalidEntriesAreReplaced(@TempDir Path dir) throws IOException {
+        CCModelCache cache = new CCModelCache(dir.toFile());
+        File entry = new File(cache.dir, CCModelCache.key(obj, 7, null, flags) + ".ccm");
+        Files.write(entry.toPath(), new byte[] { 'C', 'C', 'M' });
+
+        Map<String, CCModel> expected = parse(obj, 7, null, flags);
+        CCModelSerializerTest.assertSameModels(expected, cache.parseObjModels(obj, 7, null, flags));
+        assertNotEquals(3, entry.length());
+        CCModelSerializerTest.assertSameModels(expected, CCModelSerializer.readModels(entry));
+    }
+}
@@ -0,0 +1,143 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.lighting.LC;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Writes models with every attribute the format supports, reads them back and compares them field by field.
+ */
+public class CCModelSerializerTest {
+
+    /**
+     * Registered by tests, so its runtime index is not one of the built-in attributes
+     */
+    private static final CCRenderState.VertexAttribute<int[]> customAttrib = new CCRenderState.VertexAttribute<
+            int[]>() {
+
+        @Override
+        public int[] newArray(int length) {
+            return new int[length];
+        }
+
+        @Override
+        public boolean load(CCRenderState state) {
+            return false;
+        }
+
+        @Override
+        public void operate(CCRenderState state) {}
+    };
+
+    private static Map<String, CCModel> models() {
+        CCModel box = CCModel.quadModel(24).generateBlock(0, new Cuboid6(0.1, 0.2, 0.3, 0.9, 0.7, 0.8))
+                .computeNormals().computeLightCoords();
+        int[] colours = box.getOrAllocate(CCRenderState.colourAttrib);
+        int[] lighting = box.getOrAllocate(CCRenderState.lightingAttrib);
+        int[] sides = box.getOrAllocate(CCRenderState.sideAttrib);
+        for (int i = 0; i < 24; i++) {
+            colours[i] = 0x10203040 * (i + 1) | 0xFF;
+            lighting[i] = 0xF000F0 - i;
+            sides[i] = i / 4;
+            box.verts[i].uv.tex = i % 3;
+        }
+
+        CCModel triangles = CCModel.newModel(4, 6);
+        for (int i = 0; i < 6; i++) triangles.verts[i] = new Vertex5(i / 16D, -i * 1E-7, 1 / 3D, 0.5 - i, i * 0.75);
+        Vector3[] normals = triangles.getOrAllocate(CCRenderState.normalAttrib);
+        for (int i = 0; i < 6; i += 2) normals[i] = new Vector3(0, i % 4 == 0 ? 1 : -1, 0);
+        // on the grid, for the interned light coordinates
+        CCModel indexed = CCModel.quadModel(24).generateBlock(0, new Cuboid6(0, 0.25, 0, 1, 0.5, 1)).computeNormals()
+                .computeLightCoordIndices();
+
+        Map<String, CCModel> models = new LinkedHashMap<>();
+        models.put("box", box);
+        models.put("triangles \u00e9", triangles);
+        models.put("indexed", indexed);
+        models.put("empty", CCModel.quadModel(0));
+        return models;
+    }
+
+    static void assertSameModels(Map<String, CCModel> expected, Map<String, CCModel> actual) {
+        assertArrayEquals(expected.keySet().toArray(), actual.keySet().toArray());
+        for (Map.Entry<String, CCModel> e : expected.entrySet()) assertSameModel(e.getValue(), actual.get(e.getKey()));
+    }
+
+    static void assertSameModel(CCModel expected, CCModel actual) {
+        assertEquals(expected.vertexMode, actual.vertexMode);
+        assertEquals(expected.verts.length, actual.verts.length);
+        for (int i = 0; i < expected.verts.length; i++) {
+            Vertex5 e = expected.verts[i], a = actual.verts[i];
+            assertEquals(e.vec, a.vec, "vertex " + i);
+            assertEquals(e.uv, a.uv, "uv " + i);
+            assertEquals(e.uv.tex, a.uv.tex, "tex " + i);
+        }
+
+        int count = Math.max(expected.attributes.size(), actual.attributes.size());
+        for (int a = 0; a < count; a++) {
+            Object e = a < expected.attributes.size() ? expected.attributes.get(a) : null;
+            Object r = a < actual.attributes.size() ? actual.attributes.get(a) : null;
+            if (e instanceof LC[]) {
+                LC[] el = (LC[]) e, rl = (LC[]) r;
+                assertEquals(el.length, rl.length);
+                for (int i = 0; i < el.length; i++) {
+                    String message = "attribute " + a + " vertex " + i;
+                    assertEquals(el[i].side, rl[i].side, message);
+                    assertArrayEquals(
+                            new float[] { el[i].fa, el[i].fb, el[i].fc, el[i].fd },
+                            new float[] { rl[i].fa, rl[i].fb, rl[i].fc, rl[i].fd },
+                            message);
+                }
+            } else if (e instanceof Object[]) assertArrayEquals((Object[]) e, (Object[]) r, "attribute " + a);
+            else if (e instanceof int[]) assertArrayEquals((int[]) e, (int[]) r, "attribute " + a);
+            else if (e instanceof short[]) assertArrayEquals((short[]) e, (short[]) r, "attribute " + a);
+            else assertNull(r, "attribute " + a);
+        }
+    }
+
+    @Test
+    public void roundTripKeepsVerticesAndAttributes() throws IOException {
+        Map<String, CCModel> models = models();
+        Map<String, CCModel> read = CCModelSerializer
+                .readModels(ByteBuffer.wrap(CCModelSerializer.writeModels(models)));
+        assertSameModels(models, read);
+        assertSameModels(read, CCModelSerializer.readModels(ByteBuffer.wrap(CCModelSerializer.writeModels(read))));
+    }
+
+    @Test
+    public void customAttributesAreNotWritten() {
+        CCModel box = CCModel.quadModel(24).generateBlock(0, Cuboid6.full);
+        box.getOrAllocate(customAttrib);
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> CCModelSerializer.writeModels(Collections.singletonMap("box", box)));
+    }
+
+    @Test
+    public void invalidDataThrows() {
+        byte[] data = CCModelSerializer.writeModels(models());
+        assertThrows(IOException.class, () -> CCModelSerializer.readModels(ByteBuffer.wrap(new byte[] { 1, 2, 3 })));
+        assertThrows(
+                IOException.class,
+                () -> CCModelSerializer.readModels(ByteBuffer.wrap(data, 0, data.length - 1).slice()));
+
+        // the single slot of a model with only normals, replaced with an attribute id that doesn't exist
+        CCModel m = CCModel.quadModel(4).generateBlock(0, 0, 0, 0, 1, 1, 1, 0x3E).computeNormals();
+        byte[] normals = CCModelSerializer.writeModels(Collections.singletonMap("", m));
+        ByteBuffer.wrap(normals).putInt(4 * 4 + 1 + 4 + 1 + 4 * 40 + 4, 99);
+        assertThrows(IOException.class, () -> CCModelSerializer.readModels(ByteBuffer.wrap(normals)));
+    }
+}
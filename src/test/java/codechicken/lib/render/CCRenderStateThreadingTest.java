@@ -0,0 +1,144 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.lighting.LightModel;
+import codechicken.lib.lighting.PlanarLightModel;
+import codechicken.lib.render.uv.UVTranslation;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.TransformationList;
+import codechicken.lib.vec.Translation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Renders different models with different attributes on many threads at once and checks every result against a single
+ * threaded render. Attribute bindings and active flags live in the pipeline of each render state, so rendering doesn't
+ * write to shared attribute state.
+ */
+public class CCRenderStateThreadingTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, new Cuboid6(0.1, 0.2, 0.3, 0.9, 0.7, 0.8))
+            .computeNormals().computeLightCoords();
+    private static final CCModel colouredBox = coloured(CCModel.quadModel(24).generateBlock(0, Cuboid6.full));
+    private static final CCModel sphere = CCModelLibrary.icosahedron7;
+    private static final CCModel sidedBox = sided(CCModel.quadModel(24).generateBlock(0, Cuboid6.full));
+
+    private static final int SCENES = 8;
+
+    private static CCModel coloured(CCModel m) {
+        int[] colours = m.getOrAllocate(CCRenderState.colourAttrib);
+        int[] lighting = m.getOrAllocate(CCRenderState.lightingAttrib);
+        for (int i = 0; i < colours.length; i++) {
+            colours[i] = 0x10203040 * (i + 1) | 0xFF;
+            lighting[i] = i * 0x00100010;
+        }
+        return m;
+    }
+
+    private static CCModel sided(CCModel m) {
+        int[] sides = m.getOrAllocate(CCRenderState.sideAttrib);
+        for (int i = 0; i < sides.length; i++) sides[i] = i / 4;
+        return m;
+    }
+
+    /**
+     * Renders scene into a new sink, each scene uses a different model and set of attributes
+     */
+    private static int[] render(CCRenderState state, int scene, boolean batching) {
+        PackedVertexSink sink = new PackedVertexSink(16);
+        state.resetInstance();
+        state.sink = sink;
+        state.useBatching = batching;
+        sink.startDrawing(7);
+
+        TransformationList t = new TransformationList(
+                new Scale(0.5 + scene * 0.125),
+                Rotation.sideOrientation(scene % 6, scene % 4).at(Vector3.center),
+                new Translation(scene, -scene, scene * 2));
+        switch (scene) {
+            case 0:
+                state.useNormals = true;
+                box.render(state, t, PlanarLightModel.standardLightModel);
+                break;
+            case 1:
+                sphere.render(state, t, ColourMultiplier.instance(0x80C0FFFF), new UVTranslation(0.25, 0.5));
+                break;
+            case 2:
+                colouredBox.render(state, t);
+                break;
+            case 3:
+                state.useNormals = true;
+                sidedBox.render(state, t);
+                break;
+            case 4:
+                state.baseColour = 0x40FF40FF;
+                state.useNormals = true;
+                sphere.render(state, t, LightModel.standardLightModel);
+                break;
+            case 5:
+                state.alphaOverride = 128;
+                colouredBox.render(state, t, ColourMultiplier.instance(0xFF0000FF));
+                break;
+            case 6:
+                state.useNormals = true;
+                box.render(state, t, new UVTranslation(1, 0));
+                break;
+            default:
+                sidedBox.render(state, t, PlanarLightModel.standardLightModel);
+        }
+        sink.draw();
+        return Arrays.copyOf(sink.buffer, sink.size());
+    }
+
+    @Test
+    public void concurrentRendersMatchSingleThreaded() throws InterruptedException {
+        int[][] expected = new int[SCENES][];
+        CCRenderState main = CCRenderState.instance();
+        for (int s = 0; s < SCENES; s++) {
+            expected[s] = render(main, s, false);
+            assertArrayEquals(expected[s], render(main, s, true), "batched scene " + s);
+        }
+
+        List<String> failures = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int offset = i;
+            Thread thread = new Thread(() -> {
+                CCRenderState state = CCRenderState.instance();
+                try {
+                    start.await();
+                    for (int r = 0; r < ROUNDS; r++) {
+                        // each thread goes through the scenes in a different order
+                        int scene = (r + offset) % SCENES;
+                        boolean batching = (r / SCENES + offset) % 2 == 0;
+                        if (!Arrays.equals(expected[scene], render(state, scene, batching)))
+                            failures.add("thread " + offset + " round " + r + " scene " + scene);
+                    }
+                } catch (Throwable t) {
+                    failures.add("thread " + offset + ": " + t);
+                }
+            }, "CCRenderStateThreadingTest-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(new ArrayList<String>(), new ArrayList<>(failures));
+    }
+}
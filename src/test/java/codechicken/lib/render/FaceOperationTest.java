@@ -0,0 +1,168 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.TestBlockAccess;
+import codechicken.lib.lighting.SimpleBrightnessModel;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Translation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Checks the order face operations run in, culling by face operations and OcclusionCuller, and that the per face
+ * SimpleBrightnessModel matches a per vertex lookup.
+ */
+public class FaceOperationTest {
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, Cuboid6.full).computeNormals();
+    private static final CCModel inset = CCModel.quadModel(24)
+            .generateBlock(0, new Cuboid6(0.25, 0.25, 0.25, 0.75, 0.75, 0.75)).computeNormals();
+    /**
+     * Axis aligned normals that differ within each face
+     */
+    private static final CCModel mixedSides = box.copy();
+
+    static {
+        Vector3[] normals = mixedSides.normals();
+        for (int i = 0; i < normals.length; i++) normals[i] = Rotation.axes[i * 5 % 6].copy();
+    }
+
+    /**
+     * Registered before the face operation, so it is sorted first unless its requirement is kept
+     */
+    private static final int dependentIndex = CCRenderState.registerOperation();
+    private static final int faceIndex = CCRenderState.registerOperation();
+    private static final StringBuilder calls = new StringBuilder();
+
+    /**
+     * Culls every other face
+     */
+    private static final CCRenderState.IFaceOperation faceOp = new CCRenderState.IFaceOperation() {
+
+        private int faces;
+
+        @Override
+        public boolean load(CCRenderState state) {
+            faces = 0;
+            return true;
+        }
+
+        @Override
+        public boolean operateFace(CCRenderState state) {
+            calls.append('f');
+            return faces++ % 2 == 0;
+        }
+
+        @Override
+        public void operate(CCRenderState state) {
+            calls.append('F');
+        }
+
+        @Override
+        public int operationID() {
+            return faceIndex;
+        }
+    };
+
+    private static final CCRenderState.IVertexOperation dependentOp = new CCRenderState.IVertexOperation() {
+
+        @Override
+        public boolean load(CCRenderState state) {
+            state.pipeline.addRequirement(faceIndex);
+            return true;
+        }
+
+        @Override
+        public void operate(CCRenderState state) {
+            calls.append('V');
+        }
+
+        @Override
+        public int operationID() {
+            return dependentIndex;
+        }
+    };
+
+    private static int[] render(CCModel model, CCRenderState.IVertexOperation... ops) {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.useNormals = true;
+        PackedVertexSink sink = new PackedVertexSink();
+        state.sink = sink;
+        try {
+            sink.startDrawing(7);
+            model.render(state, ops);
+            return Arrays.copyOf(sink.buffer, sink.vertexCount * PackedVertexSink.STRIDE);
+        } finally {
+            state.sink = TessellatorVertexSink.instance;
+        }
+    }
+
+    @Test
+    public void faceStageRunsInDependencyOrder() {
+        calls.setLength(0);
+        int[] buffer = render(box, dependentOp, faceOp);
+
+        // culled faces stop at the face stage, kept faces run the face operation before the one requiring it
+        StringBuilder expected = new StringBuilder();
+        for (int face = 0; face < 6; face++) expected.append(face % 2 == 0 ? "fFVFVFVFV" : "f");
+        assertEquals(expected.toString(), calls.toString());
+        assertEquals(12 * PackedVertexSink.STRIDE, buffer.length);
+    }
+
+    @Test
+    public void occlusionCullerDropsHiddenBoundaryFaces() {
+        TestBlockAccess world = new TestBlockAccess().set(3, 5, 7, TestBlockAccess.stone)
+                .set(4, 6, 7, TestBlockAccess.stone).set(5, 5, 7, TestBlockAccess.stone);
+        Translation t = new Translation(4, 5, 7);
+        OcclusionCuller culler = OcclusionCuller.instance();
+
+        culler.locate(world, 4, 5, 7);
+        int[] culled = render(box, t, culler);
+        // up, west and east are covered
+        assertEquals(12 * PackedVertexSink.STRIDE, culled.length);
+        culler.locate(world, 4, 5, 7);
+        assertArrayEquals(render(inset, t), render(inset, t, culler), "faces inside the block are kept");
+
+        culler.locate(new TestBlockAccess(), 4, 5, 7);
+        assertArrayEquals(render(box, t), render(box, t, culler), "nothing is culled in the open");
+    }
+
+    @Test
+    public void faceBrightnessMatchesVertexLookup() {
+        TestBlockAccess world = new TestBlockAccess().set(4, 6, 7, TestBlockAccess.stone);
+        SimpleBrightnessModel model = SimpleBrightnessModel.instance();
+        // the model as a vertex operation, looking up every vertex
+        CCRenderState.IVertexOperation perVertex = new CCRenderState.IVertexOperation() {
+
+            @Override
+            public boolean load(CCRenderState state) {
+                state.pipeline.addDependency(CCRenderState.sideAttrib);
+                return true;
+            }
+
+            @Override
+            public void operate(CCRenderState state) {
+                state.setBrightnessInstance(model.sample(state.side));
+            }
+
+            @Override
+            public int operationID() {
+                return SimpleBrightnessModel.operationIndex;
+            }
+        };
+
+        for (CCModel m : new CCModel[] { box, mixedSides }) {
+            model.locate(world, 4, 5, 7);
+            int[] expected = render(m, perVertex);
+            model.locate(world, 4, 5, 7);
+            assertArrayEquals(expected, render(m, model));
+        }
+    }
+}
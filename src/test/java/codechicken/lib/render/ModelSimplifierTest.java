@@ -0,0 +1,95 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Vector3;
+
+public class ModelSimplifierTest {
+
+    private static final int GRID = 16;
+
+    /**
+     * A gently curved GRID x GRID plane of triangles facing up, with continuous uvs and no normals, so only the
+     * boundary positions are locked
+     */
+    private static CCModel plane() {
+        CCModel m = CCModel.triModel(GRID * GRID * 6);
+        int i = 0;
+        for (int x = 0; x < GRID; x++) for (int z = 0; z < GRID; z++) {
+            Vertex5 a = vertex(x, z), b = vertex(x, z + 1), c = vertex(x + 1, z + 1), d = vertex(x + 1, z);
+            m.verts[i++] = a;
+            m.verts[i++] = b;
+            m.verts[i++] = c;
+            m.verts[i++] = a.copy();
+            m.verts[i++] = c.copy();
+            m.verts[i++] = d;
+        }
+        return m;
+    }
+
+    private static Vertex5 vertex(int x, int z) {
+        double y = 0.05 * Math.sin(x * 0.7) * Math.cos(z * 0.5);
+        return new Vertex5(x, y, z, (double) x / GRID, (double) z / GRID);
+    }
+
+    private static Vector3 faceNormal(CCModel m, int face) {
+        Vector3 a = m.verts[face * m.vp].vec, b = m.verts[face * m.vp + 1].vec, c = m.verts[face * m.vp + 2].vec;
+        return b.copy().subtract(a).crossProduct(c.copy().subtract(a));
+    }
+
+    private static void assertSameVertices(CCModel expected, CCModel actual) {
+        assertEquals(expected.vp, actual.vp);
+        assertEquals(expected.verts.length, actual.verts.length);
+        for (int i = 0; i < expected.verts.length; i++) {
+            assertEquals(expected.verts[i].vec, actual.verts[i].vec, "position " + i);
+            assertEquals(expected.verts[i].uv, actual.verts[i].uv, "uv " + i);
+        }
+    }
+
+    @Test
+    public void reachesTriangleTarget() {
+        CCModel plane = plane();
+        int triangles = plane.verts.length / 3;
+
+        CCModel simplified = ModelSimplifier.simplify(plane, 0.25);
+        assertEquals(3, simplified.vp);
+        assertTrue(
+                simplified.verts.length / 3 <= Math.ceil(triangles * 0.25),
+                simplified.verts.length / 3 + " of " + triangles + " triangles");
+    }
+
+    @Test
+    public void planeCollapsesWithoutFlippedNormals() {
+        CCModel simplified = ModelSimplifier.simplify(plane(), 100, Double.POSITIVE_INFINITY);
+        assertTrue(simplified.verts.length / 3 <= 100);
+        for (int f = 0; f < simplified.verts.length / 3; f++) {
+            Vector3 n = faceNormal(simplified, f);
+            assertTrue(n.y > 0, "face " + f + " normal " + n);
+        }
+    }
+
+    @Test
+    public void seamedIcosahedronIsUnchanged() {
+        // every face gets its own uvs, so every position is on a uv seam and can't be moved
+        CCModel icosahedron = CCModelLibrary.icosahedron4.copy();
+        for (int i = 0; i < icosahedron.verts.length; i++)
+            icosahedron.verts[i].uv.set(i / 3 / 20D, i % 3 / 3D);
+
+        assertSameVertices(icosahedron, ModelSimplifier.simplify(icosahedron, 0.1));
+    }
+
+    @Test
+    public void unsimplifiedQuadModelRoundTrips() {
+        CCModel box = CCModel.quadModel(24).generateBlock(0, new Cuboid6(0.1, 0.2, 0.3, 0.9, 0.7, 0.8))
+                .computeNormals();
+        CCModel simplified = ModelSimplifier.simplify(box, 1);
+
+        assertSameVertices(box, simplified);
+        Vector3[] normals = box.normals(), simplifiedNormals = simplified.normals();
+        for (int i = 0; i < normals.length; i++) assertEquals(normals[i], simplifiedNormals[i], "normal " + i);
+    }
+}
@@ -0,0 +1,93 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Renders each kind of ModelVariant and the copy it is the counterpart of, and compares the output vertex for vertex.
+ */
+public class ModelVariantTest {
+
+    private static final CCModel box = coloured(
+            CCModel.quadModel(24).generateBlock(0, new Cuboid6(0.1, 0.2, 0.3, 0.9, 0.7, 0.8)).computeNormals());
+    private static final CCModel icosahedron = coloured(CCModelLibrary.icosahedron4.copy());
+    private static final Vector3 point = new Vector3(0.5, 0.25, 0.5);
+
+    private static CCModel coloured(CCModel m) {
+        int[] colours = m.getOrAllocate(CCRenderState.colourAttrib);
+        for (int i = 0; i < colours.length; i++) colours[i] = 0x10203040 * (i + 1) | 0xFF;
+        return m;
+    }
+
+    private static int[] render(CCRenderState.IVertexSource model, boolean batching) {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.useNormals = true;
+        state.useBatching = batching;
+        PackedVertexSink sink = new PackedVertexSink();
+        state.sink = sink;
+        try {
+            sink.startDrawing(model.getVertsPerFace() == 4 ? 7 : 4);
+            state.setPipelineInstance(model, 0, model.getVertexCount());
+            state.renderInstance();
+            return Arrays.copyOf(sink.buffer, sink.vertexCount * PackedVertexSink.STRIDE);
+        } finally {
+            state.sink = TessellatorVertexSink.instance;
+        }
+    }
+
+    private static void assertSameOutput(CCModel expected, CCRenderState.IVertexSource actual, String message) {
+        assertEquals(expected.getVertexCount(), actual.getVertexCount(), message);
+        for (int b = 0; b < 2; b++)
+            assertArrayEquals(render(expected, b == 1), render(actual, b == 1), message + (b == 1 ? " batched" : ""));
+    }
+
+    @Test
+    public void variantMatchesCopy() {
+        for (CCModel m : new CCModel[] { box, icosahedron }) assertSameOutput(m.copy(), m.variant(), "vp " + m.vp);
+    }
+
+    @Test
+    public void sidedVariantMatchesSidedCopy() {
+        for (CCModel m : new CCModel[] { box, icosahedron }) for (int s1 = 0; s1 < 6; s1++)
+            for (int s2 = 0; s2 < 6; s2++) assertSameOutput(
+                    m.sidedCopy(s1, s2, point),
+                    m.sidedVariant(s1, s2, point),
+                    "vp " + m.vp + " side " + s1 + " to " + s2);
+    }
+
+    @Test
+    public void twoFacedVariantMatchesTwoFacedCopy() {
+        for (CCModel m : new CCModel[] { box, icosahedron }) {
+            assertSameOutput(m.twoFacedCopy(), m.twoFacedVariant(), "vp " + m.vp);
+            ModelVariant sided = new ModelVariant(m, m.sidedVariant(0, 3, point).transform, true);
+            assertSameOutput(sided.materialize(), sided, "sided vp " + m.vp);
+        }
+    }
+
+    @Test
+    public void sidedVariantsMatchSidedModels() {
+        CCModel[] models = new CCModel[6];
+        CCRenderState.IVertexSource[] variants = new CCRenderState.IVertexSource[6];
+        models[2] = box;
+        variants[2] = box;
+        CCModel.generateSidedModels(models, 2, point);
+        CCModel.generateSidedVariants(variants, 2, point);
+        for (int s = 0; s < 6; s++) assertSameOutput(models[s], variants[s], "side " + s);
+
+        models = new CCModel[6];
+        variants = new CCRenderState.IVertexSource[6];
+        models[4] = box;
+        variants[4] = box;
+        CCModel.generateSidedModelsH(models, 4, point);
+        CCModel.generateSidedVariantsH(variants, 4, point);
+        for (int s = 2; s < 6; s++) assertSameOutput(models[s], variants[s], "horizontal side " + s);
+    }
+}
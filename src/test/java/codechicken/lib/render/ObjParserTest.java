@@ -0,0 +1,222 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.vec.RedundantTransformation;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Parses the obj fixtures with parseObjModels and with the regex parser it replaced, and compares the models bit for
+ * bit. Malformed lines must fail with the same exception and message.
+ */
+public class ObjParserTest {
+
+    private static final String[] fixtures = { "crate.obj", "numbers.obj" };
+
+    private static final Matcher vertMatcher = Pattern.compile("v(?: ([\\d\\.+-]+))+").matcher("");
+    private static final Matcher uvwMatcher = Pattern.compile("vt(?: ([\\d\\.+-]+))+").matcher("");
+    private static final Matcher normalMatcher = Pattern.compile("vn(?: ([\\d\\.+-]+))+").matcher("");
+    private static final Matcher polyMatcher = Pattern.compile("f(?: ((?:\\d*)(?:/\\d*)?(?:/\\d*)?))+")
+            .matcher("");
+
+    /**
+     * The regex based parser as it was before ObjLine
+     */
+    private static Map<String, CCModel> parseReference(InputStream input, int vertexMode, Transformation coordSystem)
+            throws IOException {
+        if (coordSystem == null) coordSystem = new RedundantTransformation();
+        int vp = vertexMode == 7 ? 4 : 3;
+
+        HashMap<String, CCModel> modelMap = new HashMap<String, CCModel>();
+        ArrayList<Vector3> verts = new ArrayList<Vector3>();
+        ArrayList<Vector3> uvs = new ArrayList<Vector3>();
+        ArrayList<Vector3> normals = new ArrayList<Vector3>();
+        ArrayList<int[]> polys = new ArrayList<int[]>();
+        String modelName = "unnamed";
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.replaceAll("\\s+", " ").trim();
+            if (line.startsWith("#") || line.length() == 0) continue;
+
+            if (line.startsWith("v ")) {
+                CCModel.assertMatch(vertMatcher, line);
+                double[] values = CCModel.parseDoubles(line.substring(2), " ");
+                CCModel.illegalAssert(values.length >= 3, "Vertices must have x, y and z components");
+                Vector3 vert = new Vector3(values[0], values[1], values[2]);
+                coordSystem.apply(vert);
+                verts.add(vert);
+                continue;
+            }
+            if (line.startsWith("vt ")) {
+                CCModel.assertMatch(uvwMatcher, line);
+                double[] values = CCModel.parseDoubles(line.substring(3), " ");
+                CCModel.illegalAssert(values.length >= 2, "Tex Coords must have u, and v components");
+                uvs.add(new Vector3(values[0], 1 - values[1], 0));
+                continue;
+            }
+            if (line.startsWith("vn ")) {
+                CCModel.assertMatch(normalMatcher, line);
+                double[] values = CCModel.parseDoubles(line.substring(3), " ");
+                CCModel.illegalAssert(values.length >= 3, "Normals must have x, y and z components");
+                Vector3 norm = new Vector3(values[0], values[1], values[2]).normalize();
+                coordSystem.applyN(norm);
+                normals.add(norm);
+                continue;
+            }
+            if (line.startsWith("f ")) {
+                CCModel.assertMatch(polyMatcher, line);
+                String[] av = line.substring(2).split(" ");
+                CCModel.illegalAssert(av.length >= 3, "Polygons must have at least 3 vertices");
+                int[][] polyVerts = new int[av.length][3];
+                for (int i = 0; i < av.length; i++) {
+                    String[] as = av[i].split("/");
+                    for (int p = 0; p < as.length; p++)
+                        if (as[p].length() > 0) polyVerts[i][p] = Integer.parseInt(as[p]);
+                }
+                if (vp == 3) CCModel.triangulate(polys, polyVerts);
+                else CCModel.quadulate(polys, polyVerts);
+            }
+            if (line.startsWith("g ")) {
+                if (!polys.isEmpty()) {
+                    modelMap.put(modelName, CCModel.createModel(verts, uvs, normals, vertexMode, polys));
+                    polys.clear();
+                }
+                modelName = line.substring(2);
+            }
+        }
+
+        if (!polys.isEmpty()) modelMap.put(modelName, CCModel.createModel(verts, uvs, normals, vertexMode, polys));
+
+        return modelMap;
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = ObjParserTest.class.getResourceAsStream("obj/" + name)) {
+            assertNotNull(in, name);
+            return CCModelSerializer.readFully(in);
+        }
+    }
+
+    private static long[] bits(Vector3 v) {
+        return new long[] { Double.doubleToRawLongBits(v.x), Double.doubleToRawLongBits(v.y),
+                Double.doubleToRawLongBits(v.z) };
+    }
+
+    /**
+     * Compares with the raw bits of every double, so -0.0 and 0.0 or values one ulp apart differ
+     */
+    private static void assertIdentical(Map<String, CCModel> expected, Map<String, CCModel> actual, String message) {
+        assertEquals(new TreeSet<>(expected.keySet()), new TreeSet<>(actual.keySet()), message);
+        for (Map.Entry<String, CCModel> e : expected.entrySet()) {
+            CCModel em = e.getValue(), am = actual.get(e.getKey());
+            assertEquals(em.verts.length, am.verts.length, message);
+            assertEquals(em.hasAttribute(CCRenderState.normalAttrib), am.hasAttribute(CCRenderState.normalAttrib));
+            for (int i = 0; i < em.verts.length; i++) {
+                String where = message + " " + e.getKey() + " vertex " + i;
+                assertArrayEquals(bits(em.verts[i].vec), bits(am.verts[i].vec), where);
+                assertArrayEquals(
+                        new long[] { Double.doubleToRawLongBits(em.verts[i].uv.u),
+                                Double.doubleToRawLongBits(em.verts[i].uv.v) },
+                        new long[] { Double.doubleToRawLongBits(am.verts[i].uv.u),
+                                Double.doubleToRawLongBits(am.verts[i].uv.v) },
+                        where + " uv");
+                if (em.hasAttribute(CCRenderState.normalAttrib))
+                    assertArrayEquals(bits(em.normals()[i]), bits(am.normals()[i]), where + " normal");
+            }
+        }
+    }
+
+    private static void assertSameParse(byte[] data, String message) throws IOException {
+        Transformation[] systems = { null, new Scale(1 / 16D).with(Rotation.sideRotations[3]) };
+        for (Transformation t : systems) for (int vertexMode : new int[] { 4, 7 }) {
+            String where = message + " mode " + vertexMode + (t != null ? " transformed" : "");
+            Map<String, CCModel> expected = parseReference(new ByteArrayInputStream(data), vertexMode, t);
+            assertIdentical(expected, CCModel.parseObjModels(new ByteArrayInputStream(data), vertexMode, t), where);
+        }
+    }
+
+    private static void assertSameFailure(String obj) {
+        byte[] data = obj.getBytes(StandardCharsets.UTF_8);
+        Exception expected = assertThrows(
+                RuntimeException.class,
+                () -> parseReference(new ByteArrayInputStream(data), 7, null),
+                obj);
+        Exception actual = assertThrows(
+                RuntimeException.class,
+                () -> CCModel.parseObjModels(new ByteArrayInputStream(data), 7, null),
+                obj);
+        assertEquals(expected.getClass(), actual.getClass(), obj);
+        assertEquals(expected.getMessage(), actual.getMessage(), obj);
+    }
+
+    @Test
+    public void fixturesMatchRegexParser() throws IOException {
+        for (String name : fixtures) assertSameParse(fixture(name), name);
+    }
+
+    @Test
+    public void fastDecimalsAreExact() throws IOException {
+        // signs, bare dots, the most significant digits and the largest power of ten on the fast path, and the first
+        // values past it that go to Double.parseDouble
+        String[] values = { "-0", "+0", "-0.0", "+.5", "-.5", "7.", "-7.", "0.1", "-0.3", "123456789012345",
+                "-12345678901234.5", "0.000000000000000000001", "-0.0000000000000000000001", "1234567890123456",
+                "0.1234567890123456", "000000000000000000000000.5", "4.35", "2.675", "9007199254740993" };
+        StringBuilder obj = new StringBuilder();
+        for (String value : values) {
+            String unsigned = value.replace("-", "").replace("+", "");
+            obj.append("v ").append(value).append(" +").append(unsigned).append(" -").append(unsigned).append('\n');
+        }
+        for (int i = 0; i < values.length; i++) obj.append("vt ").append(values[i]).append(' ')
+                .append(values[values.length - 1 - i]).append('\n');
+        obj.append("vn 0 1 0\n");
+        for (int i = 1; i + 3 <= values.length; i += 3)
+            obj.append("f ").append(i).append('/').append(i).append("/1 ").append(i + 1).append('/').append(i + 1)
+                    .append("/1 ").append(i + 2).append('/').append(i + 2).append("/1\n");
+        assertSameParse(obj.toString().getBytes(StandardCharsets.UTF_8), obj.toString());
+    }
+
+    @Test
+    public void malformedLinesFailTheSame() {
+        String quad = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n";
+        // exponents are not accepted by either parser
+        assertSameFailure(quad + "v 1e3 0 0\n");
+        assertSameFailure(quad + "vt 1E-3 0\n");
+        assertSameFailure(quad + "vn 0 -1e0 0\n");
+        // numbers allowed through by the character check but not by Double.parseDouble
+        assertSameFailure(quad + "v +-1 0 0\n");
+        assertSameFailure(quad + "v 1.2.3 0 0\n");
+        assertSameFailure(quad + "v - 0 0\n");
+        assertSameFailure(quad + "v . 0 0\n");
+        assertSameFailure(quad + "v 0 0\n");
+        assertSameFailure(quad + "vt 0\n");
+        assertSameFailure(quad + "f 1/1/1/1 2 3 4\n");
+        assertSameFailure(quad + "f 1 2\n");
+        assertSameFailure(quad + "f 1 2 3 99999999999\n");
+        assertSameFailure(quad + "f 1 2 3 5\n");
+        assertSameFailure(quad + "f 1 -2 3 4\n");
+    }
+}
@@ -0,0 +1,116 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.vec.Cuboid6;
+
+/**
+ * Checks how often operations are loaded when the pipeline is rebuilt, and which resolved pipelines the cache keeps.
+ */
+public class PipelineCacheTest {
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, Cuboid6.full).computeNormals();
+    private static final int SWITCHES = 9;
+
+    /**
+     * An op that counts its loads and returns a settable load result
+     */
+    private static class SwitchOp implements CCRenderState.IVertexOperation {
+
+        private final int operationIndex = CCRenderState.registerOperation();
+        boolean loaded = true;
+        int loads;
+
+        @Override
+        public boolean load(CCRenderState state) {
+            loads++;
+            return loaded;
+        }
+
+        @Override
+        public void operate(CCRenderState state) {}
+
+        @Override
+        public int operationID() {
+            return operationIndex;
+        }
+    }
+
+    /**
+     * Depends on the side attribute only when asked to. This breaks the assumption the cache makes about dependencies,
+     * so whether the side attribute is active tells a cached pipeline from a resolved one
+     */
+    private static class ProbeOp extends SwitchOp {
+
+        boolean wantSide;
+
+        @Override
+        public boolean load(CCRenderState state) {
+            if (wantSide) state.pipeline.addDependency(CCRenderState.sideAttrib);
+            return super.load(state);
+        }
+    }
+
+    private static final SwitchOp[] switches = new SwitchOp[SWITCHES];
+    private static final ProbeOp probe = new ProbeOp();
+
+    static {
+        for (int i = 0; i < SWITCHES; i++) switches[i] = new SwitchOp();
+    }
+
+    private static CCRenderState build(int mask) {
+        CCRenderState state = CCRenderState.instance();
+        CCRenderState.IVertexOperation[] ops = new CCRenderState.IVertexOperation[SWITCHES + 1];
+        for (int i = 0; i < SWITCHES; i++) {
+            switches[i].loaded = (mask & 1 << i) != 0;
+            ops[i] = switches[i];
+        }
+        ops[SWITCHES] = probe;
+        state.setPipelineInstance(box, 0, box.verts.length, ops);
+        return state;
+    }
+
+    @Test
+    public void opsLoadOncePerRebuild() {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.pipeline.useCache = true;
+        probe.wantSide = true;
+        int loads = probe.loads;
+
+        build(0x1F0);
+        assertEquals(loads + 1, probe.loads, "miss");
+        assertTrue(CCRenderState.sideAttrib.isActive(state));
+        build(0x1F0);
+        assertEquals(loads + 2, probe.loads, "hit");
+        assertTrue(CCRenderState.sideAttrib.isActive(state));
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsed() {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.pipeline.useCache = true;
+
+        // a pipeline with the side attribute, kept in use while 300 others are resolved
+        probe.wantSide = true;
+        build(0);
+        for (int mask = 1; mask <= 300; mask++) {
+            build(mask);
+            if (mask % 100 == 0) {
+                probe.wantSide = false;
+                assertTrue(CCRenderState.sideAttrib.isActive(build(0)), "kept after " + mask + " others");
+                probe.wantSide = true;
+            }
+        }
+
+        // the least recently used pipelines were evicted, so they are resolved again
+        probe.wantSide = false;
+        assertFalse(CCRenderState.sideAttrib.isActive(build(1)));
+        state.resetInstance();
+    }
+}
@@ -0,0 +1,291 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import codechicken.lib.vec.BlockCoord;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Converts a small QB model with and without MERGETEXTURES, and compares the vertices and packed images with the output
+ * of the serial implementation, saved in qb/*.txt. Repeated conversions, which run on the common ForkJoinPool, must
+ * give identical results.
+ */
+public class QBImporterTest {
+
+    private static final int red = 0xE02020FF, green = 0x20E020FF, blue = 0x2020E0FF, white = 0xF0F0F0FF;
+    private static final int[] colours = { 0, red, green, blue, white };
+    private static final String colourNames = ".RGBW";
+
+    private static class Matrix {
+
+        final String name;
+        final BlockCoord pos;
+        final int[][][] data;
+
+        Matrix(String name, BlockCoord pos, int[][][] data) {
+            this.name = name;
+            this.pos = pos;
+            this.data = data;
+        }
+
+        int get(int x, int y, int z) {
+            if (x < 0 || y < 0 || z < 0 || x >= data.length || y >= data[0].length || z >= data[0][0].length) return 0;
+            return data[x][y][z];
+        }
+    }
+
+    /**
+     * A slab with a hole and a two coloured top, an L of stairs that rectangulates into overlapping cuboids, and two
+     * identical posts whose faces are shared when textures are merged
+     */
+    private static List<Matrix> matrices() {
+        List<Matrix> list = new ArrayList<>();
+        int[][][] slab = new int[4][2][3];
+        for (int x = 0; x < 4; x++) for (int z = 0; z < 3; z++) {
+            slab[x][0][z] = x == 1 && z == 1 ? 0 : blue;
+            slab[x][1][z] = x < 2 ? red : green;
+        }
+        list.add(new Matrix("slab", new BlockCoord(0, 0, 0), slab));
+
+        int[][][] stairs = new int[3][3][2];
+        for (int x = 0; x < 3; x++) for (int y = 0; y < 3 - x; y++)
+            for (int z = 0; z < 2; z++) stairs[x][y][z] = (x + y + z) % 2 == 0 ? white : red;
+        list.add(new Matrix("stairs", new BlockCoord(5, 0, -2), stairs));
+
+        int[][][] post = new int[1][3][1];
+        post[0][0][0] = green;
+        post[0][1][0] = white;
+        post[0][2][0] = blue;
+        list.add(new Matrix("post", new BlockCoord(-2, 0, 0), post));
+        list.add(new Matrix("post2", new BlockCoord(-2, 0, 4), post));
+        return list;
+    }
+
+    private static void writeTni(DataOutputStream dout, int i) throws IOException {
+        dout.writeInt(Integer.reverseBytes(i));
+    }
+
+    private static byte[] qb(List<Matrix> matrices, boolean compressed) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        dout.writeInt(0x01010000); // version
+        dout.writeInt(0); // RGBA
+        dout.writeInt(0); // left handed
+        dout.writeInt(compressed ? 1 : 0);
+        dout.writeInt(0); // visibility not encoded
+        writeTni(dout, matrices.size());
+        for (Matrix m : matrices) {
+            byte[] name = m.name.getBytes(StandardCharsets.US_ASCII);
+            dout.writeByte(name.length);
+            dout.write(name);
+            int sx = m.data.length, sy = m.data[0].length, sz = m.data[0][0].length;
+            writeTni(dout, sx);
+            writeTni(dout, sy);
+            writeTni(dout, sz);
+            writeTni(dout, m.pos.x);
+            writeTni(dout, m.pos.y);
+            writeTni(dout, m.pos.z);
+            for (int z = 0; z < sz; z++) {
+                // runs of equal voxels in x then y order, each slice ending with the next slice flag
+                for (int i = 0; i < sx * sy;) {
+                    int data = m.data[i % sx][i / sx][z], run = 1;
+                    while (i + run < sx * sy && m.data[(i + run) % sx][(i + run) / sx][z] == data) run++;
+                    if (compressed && run > 1) {
+                        dout.writeInt(Integer.reverseBytes(2));
+                        writeTni(dout, run);
+                        dout.writeInt(data);
+                        i += run;
+                    } else {
+                        dout.writeInt(data);
+                        i++;
+                    }
+                }
+                if (compressed) dout.writeInt(Integer.reverseBytes(6));
+            }
+        }
+        return bout.toByteArray();
+    }
+
+    private static class Result {
+
+        final Map<String, CCModel> models;
+        final Map<String, BufferedImage> images;
+
+        Result(Map<String, CCModel> models, Map<String, BufferedImage> images) {
+            this.models = models;
+            this.images = images;
+        }
+    }
+
+    private static Result convert(byte[] qb, int flags, File dir) throws IOException {
+        QBImporter.RasterisedModel m = QBImporter.loadQB(new ByteArrayInputStream(qb)).toRasterisedModel(flags);
+        File[] old = dir.listFiles();
+        if (old != null) for (File f : old) f.delete();
+        m.exportImages("merged", dir);
+
+        Map<String, BufferedImage> images = new HashMap<>();
+        for (File f : dir.listFiles()) images.put(f.getName().replace(".png", ""), ImageIO.read(f));
+        return new Result(m.getModels(), images);
+    }
+
+    private static int side(Vector3 n) {
+        if (n.y != 0) return n.y < 0 ? 0 : 1;
+        if (n.z != 0) return n.z < 0 ? 2 : 3;
+        return n.x < 0 ? 4 : 5;
+    }
+
+    /**
+     * Checks every voxel face of every quad is on a solid voxel, and every exposed voxel face is covered
+     */
+    private static void assertCovered(Matrix mat, CCModel model) {
+        HashSet<List<Integer>> covered = new HashSet<>();
+        Vector3[] normals = model.normals();
+        for (int q = 0; q < model.verts.length; q += 4) {
+            Vector3 v0 = model.verts[q].vec;
+            Vector3 a = model.verts[q + 1].vec.copy().subtract(v0), b = model.verts[q + 3].vec.copy().subtract(v0);
+            int na = (int) Math.round(a.mag()), nb = (int) Math.round(b.mag());
+            Vector3 n = normals[q];
+            int side = side(n);
+            for (int i = 0; i < na; i++) for (int j = 0; j < nb; j++) {
+                Vector3 p = v0.copy().add(a.copy().multiply((i + 0.5) / na)).add(b.copy().multiply((j + 0.5) / nb))
+                        .subtract(n.copy().multiply(0.5));
+                int x = (int) Math.floor(p.x) - mat.pos.x, y = (int) Math.floor(p.y) - mat.pos.y,
+                        z = (int) Math.floor(p.z) - mat.pos.z;
+                assertNotEquals(0, mat.get(x, y, z), mat.name + " voxel " + x + "," + y + "," + z + " side " + side);
+                covered.add(Arrays.asList(x, y, z, side));
+            }
+        }
+
+        for (int x = 0; x < mat.data.length; x++) for (int y = 0; y < mat.data[0].length; y++)
+            for (int z = 0; z < mat.data[0][0].length; z++) for (int s = 0; s < 6; s++) {
+                BlockCoord o = BlockCoord.sideOffsets[s];
+                if (mat.get(x, y, z) != 0 && mat.get(x + o.x, y + o.y, z + o.z) == 0) assertTrue(
+                        covered.contains(Arrays.asList(x, y, z, s)),
+                        mat.name + " voxel " + x + "," + y + "," + z + " side " + s + " is not covered");
+            }
+    }
+
+    /**
+     * The vertices of each model and the pixels of each image as text, with a letter per colour
+     */
+    private static String describe(Result result) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : new TreeSet<>(result.models.keySet())) {
+            sb.append("model ").append(name).append('\n');
+            for (Vertex5 v : result.models.get(name).verts) sb.append(v.vec.x).append(' ').append(v.vec.y).append(' ')
+                    .append(v.vec.z).append(' ').append(v.uv.u).append(' ').append(v.uv.v).append('\n');
+        }
+        for (String name : new TreeSet<>(result.images.keySet())) {
+            BufferedImage img = result.images.get(name);
+            sb.append("image ").append(name).append(' ').append(img.getWidth()).append('x').append(img.getHeight())
+                    .append('\n');
+            for (int v = 0; v < img.getHeight(); v++) {
+                for (int u = 0; u < img.getWidth(); u++) {
+                    int argb = img.getRGB(u, v);
+                    char c = '?';
+                    for (int i = 0; i < colours.length; i++)
+                        if (argb == (colours[i] >>> 8 | colours[i] << 24)) c = colourNames.charAt(i);
+                    sb.append(c);
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String golden(String name) throws IOException {
+        try (InputStream in = QBImporterTest.class.getResourceAsStream("qb/" + name)) {
+            assertNotNull(in, name);
+            return new String(CCModelSerializer.readFully(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long[] bits(CCModel m) {
+        long[] bits = new long[m.verts.length * 5];
+        for (int i = 0; i < m.verts.length; i++) {
+            Vertex5 v = m.verts[i];
+            double[] d = { v.vec.x, v.vec.y, v.vec.z, v.uv.u, v.uv.v };
+            for (int k = 0; k < 5; k++) bits[i * 5 + k] = Double.doubleToLongBits(d[k]);
+        }
+        return bits;
+    }
+
+    private static int[] pixels(BufferedImage img) {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+
+    private static void assertSameResult(Result expected, Result actual, String message) {
+        assertEquals(expected.models.keySet(), actual.models.keySet(), message);
+        for (String name : expected.models.keySet())
+            assertArrayEquals(bits(expected.models.get(name)), bits(actual.models.get(name)), message + " " + name);
+        assertEquals(expected.images.keySet(), actual.images.keySet(), message);
+        for (String name : expected.images.keySet()) {
+            BufferedImage e = expected.images.get(name), a = actual.images.get(name);
+            assertEquals(e.getWidth(), a.getWidth(), message + " " + name);
+            assertEquals(e.getHeight(), a.getHeight(), message + " " + name);
+            assertArrayEquals(pixels(e), pixels(a), message + " " + name);
+        }
+    }
+
+    @Test
+    public void separateTextures(@TempDir Path dir) throws IOException {
+        List<Matrix> matrices = matrices();
+        byte[] qb = qb(matrices, false);
+        Result result = convert(qb, 0, dir.toFile());
+
+        assertEquals(golden("separate.txt"), describe(result));
+        for (Matrix mat : matrices) assertCovered(mat, result.models.get(mat.name));
+        assertSameResult(result, convert(qb(matrices, true), 0, dir.toFile()), "compressed");
+        for (int i = 0; i < 4; i++) assertSameResult(result, convert(qb, 0, dir.toFile()), "run " + i);
+    }
+
+    @Test
+    public void mergedTextures(@TempDir Path dir) throws IOException {
+        List<Matrix> matrices = matrices();
+        byte[] qb = qb(matrices, false);
+        Result separate = convert(qb, 0, dir.toFile());
+        Result result = convert(qb, QBImporter.MERGETEXTURES, dir.toFile());
+
+        assertEquals(golden("merged.txt"), describe(result));
+        for (Matrix mat : matrices) assertCovered(mat, result.models.get(mat.name));
+        // the posts have the same faces, so they share their place in the image
+        long[] post = bits(result.models.get("post")), post2 = bits(result.models.get("post2"));
+        for (int i = 0; i < post.length; i++) if (i % 5 >= 3) assertEquals(post[i], post2[i], "uv " + i);
+
+        // the merged image holds each distinct face once, so it is no bigger than the separate images together
+        BufferedImage img = result.images.get("merged");
+        int area = 0;
+        for (BufferedImage separateImg : separate.images.values())
+            area += separateImg.getWidth() * separateImg.getHeight();
+        assertTrue(img.getWidth() * img.getHeight() <= area);
+
+        for (int i = 0; i < 4; i++)
+            assertSameResult(result, convert(qb, QBImporter.MERGETEXTURES, dir.toFile()), "run " + i);
+    }
+}
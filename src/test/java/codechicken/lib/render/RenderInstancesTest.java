@@ -0,0 +1,92 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.colour.ColourRGBA;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.TransformationList;
+import codechicken.lib.vec.Translation;
+
+/**
+ * Compares CCModel.renderInstances with rendering each instance on its own.
+ */
+public class RenderInstancesTest {
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, new Cuboid6(0.1, 0.2, 0.3, 0.9, 0.7, 0.8))
+            .computeNormals();
+    private static final int COUNT = 7;
+
+    /**
+     * Long enough to be applied as a compiled matrix
+     */
+    private final TransformationList list = new TransformationList(
+            new Scale(0.5),
+            new Rotation(0.3, 0, 1, 0),
+            new Translation(0.25, 0, 0),
+            new Rotation(1.2, 1, 0, 0));
+    private final double[] positions = new double[COUNT * 3];
+    private final int[] colours = new int[COUNT];
+    private final int[] brightness = new int[COUNT];
+
+    public RenderInstancesTest() {
+        for (int i = 0; i < COUNT; i++) {
+            positions[i * 3] = i * 1.5;
+            positions[i * 3 + 1] = -i;
+            positions[i * 3 + 2] = 1000 + i * 0.25;
+            colours[i] = 0x10305070 * (i + 1) | 0xFF;
+            brightness[i] = 0xF00000 | i << 4;
+        }
+    }
+
+    private static int[] render(boolean batching, Runnable renderer) {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.useNormals = true;
+        state.useBatching = batching;
+        PackedVertexSink sink = new PackedVertexSink();
+        state.sink = sink;
+        try {
+            sink.startDrawing(7);
+            renderer.run();
+            return Arrays.copyOf(sink.buffer, sink.size());
+        } finally {
+            state.sink = TessellatorVertexSink.instance;
+        }
+    }
+
+    @Test
+    public void instancesMatchSeparateRenders() {
+        for (int b = 0; b < 2; b++) {
+            boolean batching = b == 1;
+            // the pipeline holds one transformation, so the list is applied to a copy
+            CCModel transformed = box.copy().apply(list);
+            int[] expected = render(batching, () -> {
+                CCRenderState state = CCRenderState.instance();
+                for (int i = 0; i < COUNT; i++) {
+                    state.setBrightnessInstance(brightness[i]);
+                    transformed.render(
+                            state,
+                            new Translation(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]),
+                            ColourMultiplier.instance(ColourRGBA.multiply(0xFF8040FF, colours[i])));
+                }
+            });
+            int[] actual = render(
+                    batching,
+                    () -> box.renderInstances(
+                            CCRenderState.instance(),
+                            positions,
+                            colours,
+                            brightness,
+                            COUNT,
+                            list,
+                            ColourMultiplier.instance(0xFF8040FF)));
+            assertArrayEquals(expected, actual, batching ? "batched" : "per vertex");
+        }
+    }
+}
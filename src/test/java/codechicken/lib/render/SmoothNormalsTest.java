@@ -0,0 +1,165 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Compares smoothNormals with the pairwise grouping it replaced, on models with coincident and near-coincident
+ * vertices. Normals must match bit for bit.
+ */
+public class SmoothNormalsTest {
+
+    /**
+     * Groups every vertex with the first group whose first position matches, scanning all groups as the old
+     * implementation did, then averages like smoothNormals(epsilon, maxAngle)
+     */
+    private static CCModel smoothReference(CCModel model, double epsilon, double maxAngle) {
+        Vector3[] normals = model.normals();
+        ArrayList<Vector3> positions = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> groups = new ArrayList<>();
+        nextvert: for (int k = 0; k < model.verts.length; k++) {
+            Vector3 vec = model.verts[k].vec;
+            for (int g = 0; g < positions.size(); g++) {
+                Vector3 pos = positions.get(g);
+                boolean equal = epsilon > 0
+                        ? Math.abs(pos.x - vec.x) <= epsilon && Math.abs(pos.y - vec.y) <= epsilon
+                                && Math.abs(pos.z - vec.z) <= epsilon
+                        : pos.x == vec.x && pos.y == vec.y && pos.z == vec.z;
+                if (equal) {
+                    groups.get(g).add(k);
+                    continue nextvert;
+                }
+            }
+
+            positions.add(vec);
+            groups.add(new ArrayList<>());
+            groups.get(groups.size() - 1).add(k);
+        }
+
+        Vector3[] orig = new Vector3[normals.length];
+        for (int k = 0; k < normals.length; k++) orig[k] = normals[k].copy();
+        double cosMax = Math.cos(Math.toRadians(maxAngle));
+        for (ArrayList<Integer> group : groups) {
+            if (group.size() <= 1) continue;
+
+            if (maxAngle >= 180) {
+                Vector3 new_n = new Vector3();
+                for (int k : group) new_n.add(normals[k]);
+
+                new_n.normalize();
+                for (int k : group) normals[k].set(new_n);
+                continue;
+            }
+            for (int a : group) {
+                Vector3 na = orig[a];
+                double sx = 0, sy = 0, sz = 0;
+                int count = 0;
+                for (int b : group) {
+                    Vector3 nb = orig[b];
+                    if (b != a && na.x * nb.x + na.y * nb.y + na.z * nb.z < cosMax * na.mag() * nb.mag()) continue;
+
+                    sx += nb.x;
+                    sy += nb.y;
+                    sz += nb.z;
+                    count++;
+                }
+                if (count > 1) normals[a].set(sx, sy, sz).normalize();
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Boxes sharing corners and edges, with some vertices moved by less than, exactly and just over 1/64, some by
+     * amounts near the precision of a double, and zeros of both signs
+     */
+    private static CCModel model() {
+        CCModel m = CCModel.quadModel(24 * 4);
+        m.generateBlock(0, Cuboid6.full);
+        m.generateBlock(24, new Cuboid6(1, 0, 0, 2, 1, 1));
+        m.generateBlock(48, new Cuboid6(0, 1, 0, 1, 1.5, 0.5));
+        m.generateBlock(72, new Cuboid6(0.25, 0.25, 0.25, 0.75, 0.75, 0.75));
+        m.computeNormals();
+
+        Random rand = new Random(42);
+        double[] offsets = { 1 / 64D, -1 / 64D, 1 / 128D, 1 / 64D + 1E-12, 1E-15, -1E-300, Math.ulp(1D), 0.01, 0.02 };
+        for (int i = 0; i < m.verts.length; i++) {
+            Vector3 vec = m.verts[i].vec;
+            switch (rand.nextInt(4)) {
+                case 0:
+                    vec.x += offsets[rand.nextInt(offsets.length)];
+                    break;
+                case 1:
+                    vec.z -= offsets[rand.nextInt(offsets.length)];
+                    break;
+                case 2:
+                    if (vec.y == 0) vec.y = -0D;
+                    break;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * A 10x10x10 grid of touching boxes, large enough that zeros of either sign land in different table buckets unless
+     * they hash the same
+     */
+    private static CCModel grid() {
+        CCModel m = CCModel.quadModel(24 * 1000);
+        for (int i = 0; i < 1000; i++) m.generateBlock(i * 24, new Cuboid6(0, 0, 0, 1, 1, 1).add(
+                new Vector3(i % 10, i / 10 % 10, i / 100)));
+        m.computeNormals();
+
+        Random rand = new Random(7);
+        for (int i = 0; i < m.verts.length; i++) {
+            Vector3 vec = m.verts[i].vec;
+            if (vec.x == 0 && rand.nextBoolean()) vec.x = -0D;
+            if (vec.z == 0 && rand.nextBoolean()) vec.z = -0D;
+            if (rand.nextInt(8) == 0) vec.y += 1E-6;
+        }
+        return m;
+    }
+
+    private static long[] bits(Vector3[] normals) {
+        long[] bits = new long[normals.length * 3];
+        for (int i = 0; i < normals.length; i++) {
+            bits[i * 3] = Double.doubleToRawLongBits(normals[i].x);
+            bits[i * 3 + 1] = Double.doubleToRawLongBits(normals[i].y);
+            bits[i * 3 + 2] = Double.doubleToRawLongBits(normals[i].z);
+        }
+        return bits;
+    }
+
+    private static void assertSameNormals(CCModel model, double epsilon, double maxAngle) {
+        Vector3[] expected = smoothReference(model.copy(), epsilon, maxAngle).normals();
+        Vector3[] actual = model.copy().smoothNormals(epsilon, maxAngle).normals();
+        assertArrayEquals(bits(expected), bits(actual), "epsilon " + epsilon + " max angle " + maxAngle);
+    }
+
+    @Test
+    public void matchesPairwiseGrouping() {
+        CCModel[] models = { model(), CCModelLibrary.icosahedron4.copy(), CCModelLibrary.icosahedron7.copy() };
+        for (CCModel m : models) {
+            assertSameNormals(m, 0, 180);
+            assertArrayEquals(
+                    bits(smoothReference(m.copy(), 0, 180).normals()),
+                    bits(m.copy().smoothNormals().normals()));
+            for (double epsilon : new double[] { 0, 1E-9, 1 / 64D, 0.01, 0.3 })
+                for (double maxAngle : new double[] { 180, 89, 45, 0 }) assertSameNormals(m, epsilon, maxAngle);
+        }
+    }
+
+    @Test
+    public void largeModelMatchesPairwiseGrouping() {
+        CCModel m = grid();
+        assertSameNormals(m, 0, 180);
+        assertSameNormals(m, 1E-5, 60);
+    }
+}
@@ -0,0 +1,123 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import net.minecraft.client.renderer.Tessellator;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.lighting.LightModel;
+import codechicken.lib.lighting.PlanarLightModel;
+import codechicken.lib.render.uv.UVTranslation;
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Scale;
+import codechicken.lib.vec.TransformationList;
+import codechicken.lib.vec.Translation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Renders the same scenes into Tessellator.instance through {@link TessellatorVertexSink#instance}, which writes to the
+ * raw buffer directly, and through another TessellatorVertexSink, which goes through addVertexWithUV, and compares the
+ * raw buffers and the rest of the Tessellator state. The Tessellator is discarded without calling draw, which needs a
+ * GL context.
+ */
+public class TessellatorWriterTest {
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, new Cuboid6(0.1, 0.2, 0.3, 0.9, 0.7, 0.8))
+            .computeNormals().computeLightCoords();
+    private static final CCModel colouredBox = coloured(CCModel.quadModel(24).generateBlock(0, Cuboid6.full));
+    private static final CCModel sphere = CCModelLibrary.icosahedron7;
+
+    private static final int SCENES = 4;
+
+    private static CCModel coloured(CCModel m) {
+        int[] colours = m.getOrAllocate(CCRenderState.colourAttrib);
+        int[] lighting = m.getOrAllocate(CCRenderState.lightingAttrib);
+        for (int i = 0; i < colours.length; i++) {
+            colours[i] = 0x10203040 * (i + 1) | 0xFF;
+            lighting[i] = i * 0x00100010;
+        }
+        return m;
+    }
+
+    /**
+     * Stops drawing and drops the raw buffer, so the next render grows it from the same size
+     */
+    private static void discard(Tessellator tess) {
+        tess.isDrawing = false;
+        tess.rawBuffer = null;
+        tess.rawBufferSize = 0;
+    }
+
+    /**
+     * Renders a few models into Tessellator.instance after prefill vertices added through the Tessellator
+     *
+     * @return The state of the Tessellator afterwards
+     */
+    private static Object[] render(CCRenderState.IVertexSink sink, int scene, int prefill, boolean batching) {
+        Tessellator tess = Tessellator.instance;
+        discard(tess);
+        tess.startDrawing(7);
+        tess.setTranslation(0.5, -64, 1.25);
+        for (int i = 0; i < prefill; i++) tess.addVertexWithUV(i, 0, 0, 0, 0);
+
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.sink = sink;
+        state.useBatching = batching;
+        try {
+            TransformationList t = new TransformationList(
+                    new Scale(0.5 + scene * 0.125),
+                    Rotation.sideOrientation(scene % 6, scene % 4).at(Vector3.center),
+                    new Translation(scene, -scene, scene * 2));
+            switch (scene) {
+                case 0:
+                    state.useNormals = true;
+                    box.render(state, t, PlanarLightModel.standardLightModel);
+                    sphere.render(state, t, ColourMultiplier.instance(0x80C0FFFF), new UVTranslation(0.25, 0.5));
+                    break;
+                case 1:
+                    colouredBox.render(state, t);
+                    state.alphaOverride = 128;
+                    colouredBox.render(state, t, ColourMultiplier.instance(0xFF0000FF));
+                    break;
+                case 2:
+                    state.baseColour = 0x40FF40FF;
+                    state.useNormals = true;
+                    sphere.render(state, t, LightModel.standardLightModel);
+                    // a vertex range, and a setter on the Tessellator between render calls
+                    box.render(state, 4, 12, t);
+                    tess.setBrightness(0x00F000F0);
+                    box.render(state, t, new UVTranslation(1, 0));
+                    break;
+                default:
+                    tess.disableColor();
+                    colouredBox.render(state, t, ColourMultiplier.instance(0x8080FFFF));
+                    state.useNormals = true;
+                    box.render(state, t);
+            }
+        } finally {
+            state.sink = TessellatorVertexSink.instance;
+        }
+        Object[] result = TessellatorWriter.state(tess);
+        discard(tess);
+        return result;
+    }
+
+    @Test
+    public void directWritesMatchAddVertex() {
+        assertTrue(TessellatorWriter.AVAILABLE, "Tessellator behaviour not recognised");
+
+        TessellatorVertexSink forwarding = new TessellatorVertexSink();
+        for (int scene = 0; scene < SCENES; scene++) for (int b = 0; b < 2; b++) {
+            // enough prefill that the render crosses a buffer growth, alternating which path runs first
+            int prefill = (0x10000 << scene * 2 + b) / PackedVertexSink.STRIDE - 40;
+            boolean directFirst = (scene + b) % 2 == 0;
+            Object[] first = render(directFirst ? TessellatorVertexSink.instance : forwarding, scene, prefill, b == 1);
+            Object[] second = render(directFirst ? forwarding : TessellatorVertexSink.instance, scene, prefill, b == 1);
+            assertArrayEquals(first, second, "scene " + scene + (b == 1 ? " batched" : ""));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package codechicken.lib.render.uv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import net.minecraft.util.IIcon;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.VertexBatch;
+
+/**
+ * Checks the compiled uv path of IconTransformation and UVTransformationList against apply, and that it follows icon
+ * changes.
+ */
+public class IconTransformationTest {
+
+    /**
+     * Interpolates like TextureAtlasSprite
+     */
+    private static class TestIcon implements IIcon {
+
+        float minU, maxU, minV, maxV;
+
+        TestIcon(float minU, float maxU, float minV, float maxV) {
+            set(minU, maxU, minV, maxV);
+        }
+
+        void set(float minU, float maxU, float minV, float maxV) {
+            this.minU = minU;
+            this.maxU = maxU;
+            this.minV = minV;
+            this.maxV = maxV;
+        }
+
+        @Override
+        public int getIconWidth() {
+            return 16;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return 16;
+        }
+
+        @Override
+        public float getMinU() {
+            return minU;
+        }
+
+        @Override
+        public float getMaxU() {
+            return maxU;
+        }
+
+        @Override
+        public float getInterpolatedU(double d) {
+            float f = maxU - minU;
+            return minU + f * ((float) d / 16.0F);
+        }
+
+        @Override
+        public float getMinV() {
+            return minV;
+        }
+
+        @Override
+        public float getMaxV() {
+            return maxV;
+        }
+
+        @Override
+        public float getInterpolatedV(double d) {
+            float f = maxV - minV;
+            return minV + f * ((float) d / 16.0F);
+        }
+
+        @Override
+        public String getIconName() {
+            return "test";
+        }
+    }
+
+    /**
+     * Loads t and runs it on random uvs through operate and operateBatch, comparing each with apply
+     *
+     * @param delta 0 for bit identical results
+     */
+    private static void assertOperatesLikeApply(UVTransformation t, double delta) {
+        CCRenderState state = CCRenderState.instance();
+        t.load(state);
+        Random rand = new Random(7);
+        VertexBatch batch = new VertexBatch();
+        batch.count = VertexBatch.SIZE;
+        for (int i = 0; i < batch.count; i++) {
+            batch.u[i] = rand.nextDouble() * 2 - 0.5;
+            batch.v[i] = rand.nextDouble() * 2 - 0.5;
+        }
+        double[] u = batch.u.clone(), v = batch.v.clone();
+        t.operateBatch(state, batch);
+
+        for (int i = 0; i < batch.count; i++) {
+            UV expected = new UV(u[i], v[i]);
+            t.apply(expected);
+            state.vert.uv.set(u[i], v[i]);
+            t.operate(state);
+            assertEquals(expected.u, state.vert.uv.u, delta);
+            assertEquals(expected.v, state.vert.uv.v, delta);
+            assertEquals(expected.u, batch.u[i], delta);
+            assertEquals(expected.v, batch.v[i], delta);
+        }
+    }
+
+    @Test
+    public void iconIsBitIdentical() {
+        TestIcon icon = new TestIcon(0.3125F, 0.375F, 0.0625F, 0.09375F);
+        IconTransformation t = new IconTransformation(icon);
+        assertOperatesLikeApply(t, 0);
+
+        // a texture reload moves the icon
+        icon.set(0.71F, 0.7399F, 0.1F, 0.1313F);
+        assertOperatesLikeApply(t, 0);
+
+        t.icon = new TestIcon(0.5F, 0.5625F, 0.5F, 0.5625F);
+        assertOperatesLikeApply(t, 0);
+    }
+
+    @Test
+    public void listFollowsIcon() {
+        TestIcon icon = new TestIcon(0.3125F, 0.375F, 0.0625F, 0.09375F);
+        UVTransformationList list = new UVTransformationList(
+                new UVTranslation(0.25, -0.5),
+                new UVScale(0.5, 2),
+                new UVRotation(0.7),
+                new IconTransformation(icon));
+        assertOperatesLikeApply(list, 1E-7);
+
+        icon.set(0.71F, 0.7399F, 0.1F, 0.1313F);
+        assertOperatesLikeApply(list, 1E-7);
+
+        list.with(new UVTranslation(1, 0)); // no longer ends with the icon
+        assertOperatesLikeApply(list, 1E-7);
+    }
+}
@@ -0,0 +1,88 @@
+package codechicken.lib.vec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.render.CCModel;
+import codechicken.lib.render.CCRenderState;
+import codechicken.lib.render.PackedVertexSink;
+import codechicken.lib.render.TessellatorVertexSink;
+
+public class TransformationListTest {
+
+    private static final CCModel box = CCModel.quadModel(24).generateBlock(0, Cuboid6.full).computeNormals();
+
+    private static PackedVertexSink render(TransformationList list, boolean batching) {
+        CCRenderState state = CCRenderState.instance();
+        state.resetInstance();
+        state.useNormals = true;
+        state.useBatching = batching;
+        PackedVertexSink sink = new PackedVertexSink();
+        state.sink = sink;
+        try {
+            sink.startDrawing(7);
+            box.render(state, list);
+            return sink;
+        } finally {
+            state.sink = TessellatorVertexSink.instance;
+        }
+    }
+
+    private static float renderX(TransformationList list) {
+        return Float.intBitsToFloat(render(list, false).buffer[0]);
+    }
+
+    @Test
+    public void memberChangesAreSeenOnTheNextRender() {
+        Translation translation = new Translation(1, 0, 0);
+        Scale scale = new Scale(2);
+        TransformationList list = new TransformationList(scale, translation);
+        float x = (float) box.verts[0].vec.x;
+
+        assertEquals(x * 2 + 1, renderX(list));
+        translation.vec.x = 5;
+        assertEquals(x * 2 + 5, renderX(list));
+        scale.factor.x = 3;
+        assertEquals(x * 3 + 5, renderX(list));
+    }
+
+    @Test
+    public void cachedMatrixIsUsedLikeApply() {
+        Translation translation = new Translation(1, 0, 0);
+        TransformationList list = new TransformationList(new Scale(2), translation);
+        float x = (float) box.verts[0].vec.x;
+
+        list.compile();
+        translation.vec.x = 5;
+        Vector3 v = box.verts[0].vec.copy().apply(list);
+        assertEquals((float) v.x, renderX(list));
+        assertEquals(x * 2 + 1, renderX(list));
+    }
+
+    @Test
+    public void longListsRenderLikeApply() {
+        TransformationList list = new TransformationList(
+                new Translation(0.25, -1, 3),
+                new Rotation(0.7, 0, 1, 0),
+                new Scale(1.5, 0.5, 2),
+                new Rotation(-1.1, 1, 0, 0),
+                Rotation.sideOrientation(3, 1).at(Vector3.center));
+        for (int b = 0; b < 2; b++) {
+            PackedVertexSink sink = render(list, b == 1);
+            for (int i = 0; i < box.verts.length; i++) {
+                Vector3 v = box.verts[i].vec.copy().apply(list);
+                int offset = i * PackedVertexSink.STRIDE;
+                assertEquals((float) v.x, Float.intBitsToFloat(sink.buffer[offset]), "x " + i);
+                assertEquals((float) v.y, Float.intBitsToFloat(sink.buffer[offset + 1]), "y " + i);
+                assertEquals((float) v.z, Float.intBitsToFloat(sink.buffer[offset + 2]), "z " + i);
+
+                Vector3 n = box.normals()[i].copy();
+                list.applyN(n);
+                int packed = (byte) (int) (n.x * 127) & 255 | ((byte) (int) (n.y * 127) & 255) << 8
+                        | ((byte) (int) (n.z * 127) & 255) << 16;
+                assertEquals(packed, sink.buffer[offset + 6], "normal " + i);
+            }
+        }
+    }
+}